@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.List;
+import org.recast4j.detour.ClosestPointOnPolyResult;
+import org.recast4j.detour.FindNearestPolyResult;
+import org.recast4j.detour.NavMeshQuery;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.Result;
+import org.recast4j.detour.crowd.PathCorridor;
+
+/**
+ * Keeps the poly corridor of an agent that chases a moving target. Instead 
+ * of a new findPath every time the agent or target moves, the detour 
+ * PathCorridor is repaired locally: the moved end walks along the surface 
+ * from where it was to where it is now and the polys it crossed are merged 
+ * into the corridor.
+ * 
+ * moveAlongSurface stops at walls rather than failing, so a repair counts as 
+ * failed when the end it reached is more than repairTolerance from where it 
+ * should be. An end that moved more than repairDistance is not repaired at 
+ * all. A repaired corridor is also checked for polys the filter no longer 
+ * passes, like a door that closed or a tile that was rebuilt, over the next 
+ * CHECK_LOOKAHEAD polys. In any of these cases the corridor is replanned 
+ * from scratch.
+ * 
+ * Uses the query and filter it was made with, so only use it on the thread 
+ * that owns the query.
+ */
+public class AgentCorridor {
+
+    //Max corners returned by getCorners.
+    private static final int MAX_CORNERS = 8;
+    //Polys ahead of the agent checked after every repair, as in DetourCrowd.
+    private static final int CHECK_LOOKAHEAD = 10;
+    
+    private final NavMeshQuery query;
+    private final QueryFilter filter;
+    private final float[] extents;
+    private final float repairDistance;
+    private final float repairTolerance;
+    private final PathCorridor corridor;
+    private boolean valid;
+    private int repairs;
+    private int replans;
+
+    /**
+     * @param query The query to search with.
+     * @param filter The filter to search with.
+     * @param extents The half extents to find the polys of replanned ends.
+     * @param repairDistance How far an end may move and still be repaired.
+     * @param repairTolerance How far a repaired end may be from where it 
+     * should be before the repair counts as failed.
+     */
+    public AgentCorridor(NavMeshQuery query, QueryFilter filter, float[] extents, float repairDistance, float repairTolerance) {
+        this.query = query;
+        this.filter = filter;
+        this.extents = extents;
+        this.repairDistance = repairDistance;
+        this.repairTolerance = repairTolerance;
+        this.corridor = new PathCorridor();
+    }
+    
+    /**
+     * Moves the corridor ends to the agent and target, repairing it when 
+     * they moved a short distance and replanning otherwise.
+     * 
+     * @param agentPos The agent position.
+     * @param targetPos The target position.
+     * @return True if there is a corridor to follow.
+     */
+    public boolean update(float[] agentPos, float[] targetPos) {
+        if (valid 
+        &&  distanceSqr(corridor.getPos(), agentPos) <= repairDistance * repairDistance
+        &&  distanceSqr(corridor.getTarget(), targetPos) <= repairDistance * repairDistance) {
+            
+            corridor.movePosition(agentPos, query, filter);
+            corridor.moveTargetPosition(targetPos, query, filter);
+            
+            if (distanceSqr(corridor.getPos(), agentPos) <= repairTolerance * repairTolerance
+            &&  distanceSqr(corridor.getTarget(), targetPos) <= repairTolerance * repairTolerance
+            &&  corridor.isValid(CHECK_LOOKAHEAD, query, filter)) {
+                repairs++;
+                return true;
+            }
+        }
+        
+        return replan(agentPos, targetPos);
+    }
+    
+    /**
+     * Finds a new corridor from scratch.
+     * 
+     * @param agentPos The agent position.
+     * @param targetPos The target position.
+     * @return True if a corridor was found.
+     */
+    public boolean replan(float[] agentPos, float[] targetPos) {
+        replans++;
+        valid = false;
+        
+        Result<FindNearestPolyResult> start = query.findNearestPoly(agentPos, extents, filter);
+        Result<FindNearestPolyResult> end = query.findNearestPoly(targetPos, extents, filter);
+        if (!start.status.isSuccess() || !end.status.isSuccess() 
+        ||   start.result.getNearestRef() == 0 || end.result.getNearestRef() == 0) {
+            return false;
+        }
+        
+        float[] startPos = start.result.getNearestPos();
+        float[] endPos = end.result.getNearestPos();
+        Result<List<Long>> path = query.findPath(start.result.getNearestRef(), end.result.getNearestRef(), startPos, endPos, filter);
+        if (!path.succeeded() || path.result.isEmpty()) {
+            return false;
+        }
+        
+        corridor.reset(start.result.getNearestRef(), startPos);
+        //A partial path ends at the closest poly so aim at a point in it.
+        float[] target = endPos;
+        if (path.status.isPartial()) {
+            Result<ClosestPointOnPolyResult> closest = query.closestPointOnPoly(path.result.get(path.result.size() - 1), endPos);
+            if (closest.succeeded()) {
+                target = closest.result.getClosest();
+            }
+        }
+        corridor.setCorridor(target, path.result);
+        valid = true;
+        return true;
+    }
+    
+    /**
+     * Fills a buffer with the next corners of the corridor as points to walk 
+     * to, not including the agent position.
+     * 
+     * @param out The buffer to fill, empty if there is no corridor.
+     */
+    public void getCorners(PathBuffer out) {
+        out.clear();
+        if (!valid) {
+            return;
+        }
+        out.setStraightPath(corridor.findCorners(MAX_CORNERS, query, filter));
+    }
+    
+    /**
+     * @return The query the corridor searches with.
+     */
+    public NavMeshQuery getQuery() {
+        return query;
+    }
+    
+    /**
+     * @return The polys of the corridor.
+     */
+    public List<Long> getPath() {
+        return corridor.getPath();
+    }
+    
+    /**
+     * @return True if there is a corridor.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+    
+    /**
+     * @return The number of local repairs done.
+     */
+    public int getRepairCount() {
+        return repairs;
+    }
+    
+    /**
+     * @return The number of full replans done.
+     */
+    public int getReplanCount() {
+        return replans;
+    }
+    
+    //Ignores height since the corridor ends sit on the poly, not the agent.
+    private static float distanceSqr(float[] a, float[] b) {
+        float dx = a[0] - b[0];
+        float dz = a[2] - b[2];
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import static com.jme3.recast4j.demo.AreaModifications.MAX_AREAS;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.recast4j.detour.DefaultQueryFilter;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A* over the poly links with a choice of heuristic: the straight line 
+ * distance like detour's findPath, or the ALT bound from LandmarkTables. 
+ * Costs are from the filter between poly centers, the same measure the 
+ * tables were built with, so the corridor can differ slightly from detour's 
+ * which measures between portal points. Feed the corridor to 
+ * findStraightPath as usual.
+ * 
+ * The tables must be built with every area at cost 1. Both heuristics are 
+ * scaled by the filter's cheapest area cost when that is below 1, otherwise 
+ * a filter that makes roads cheaper would get a heuristic that overestimates 
+ * and corridors that aren't the shortest. See heuristicScale.
+ * 
+ * The g costs, parents and closed marks are stamped with the search they 
+ * were written in, so a search only pays for the polys it touches and the 
+ * OpenList is reused by every search.
+ * 
+ * Not thread safe, use one per thread. Searches may run on any snapshot of 
+ * the navMesh the tables were built for, since snapshots keep the poly refs. 
+ * Flags are read from the navMesh searched, not the one the tables saw.
+ */
+public class AltPathFinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AltPathFinder.class.getName());
+    
+    public static final int HEURISTIC_EUCLIDEAN = 0;
+    public static final int HEURISTIC_LANDMARKS = 1;
+    //Same scale detour uses to keep the straight line heuristic below the cost.
+    private static final float H_SCALE = 0.999f;
+    
+    private final LandmarkTables tables;
+    private final PolyIndex polys;
+    private final float[] g;
+    private final int[] parent;
+    //g and parent are only valid where seen is the current search.
+    private final int[] seen;
+    private final int[] closed;
+    private int search;
+    //Keyed on f. Stale entries are skipped by the closed marks.
+    private final OpenList open = new OpenList();
+    
+    private final float[] center = new float[3];
+    private final float[] pa = new float[3];
+    private final float[] pb = new float[3];
+    private final float[] goal = new float[3];
+    private int expansions;
+
+    /**
+     * @param tables The landmark tables, which also give the poly numbering.
+     */
+    public AltPathFinder(LandmarkTables tables) {
+        this.tables = tables;
+        this.polys = tables.getPolyIndex();
+        this.g = new float[polys.size()];
+        this.parent = new int[polys.size()];
+        this.seen = new int[polys.size()];
+        this.closed = new int[polys.size()];
+    }
+    
+    /**
+     * Finds the poly corridor between two polys with the heuristic scaled 
+     * for the filter, see heuristicScale.
+     * 
+     * @param navMesh The navMesh to search.
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param filter The filter to use.
+     * @param heuristic HEURISTIC_EUCLIDEAN or HEURISTIC_LANDMARKS.
+     * @return The polys from start to end, an empty list if the end can't be 
+     * reached or null if the tables can't answer.
+     */
+    public List<Long> findPath(NavMesh navMesh, long startRef, long endRef, QueryFilter filter, int heuristic) {
+        return findPath(navMesh, startRef, endRef, filter, heuristic, heuristicScale(filter));
+    }
+    
+    /**
+     * Finds the poly corridor between two polys. 
+     * 
+     * The tables can't answer when either poly or a poly the search reached 
+     * isn't in their numbering, which happens once a tile was rebuilt after 
+     * they were built, or when scale isn't above 0. A corridor that skipped 
+     * such a poly could go around a shorter way through the rebuilt tile, so 
+     * the search gives up as soon as it meets one.
+     * 
+     * @param navMesh The navMesh to search.
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param filter The filter to use.
+     * @param heuristic HEURISTIC_EUCLIDEAN or HEURISTIC_LANDMARKS.
+     * @param scale Multiplies the heuristic, from heuristicScale for the 
+     * filter the costs really come from.
+     * @return The polys from start to end, an empty list if the end can't be 
+     * reached or null if the tables can't answer.
+     */
+    public List<Long> findPath(NavMesh navMesh, long startRef, long endRef, QueryFilter filter, int heuristic, float scale) {
+        int start = polys.index(startRef);
+        int end = polys.index(endRef);
+        expansions = 0;
+        if (start == -1 || end == -1 || !(scale > 0)) {
+            return null;
+        }
+        
+        //Stamp 0 is what the arrays start with, so it's never a search.
+        if (++search == 0) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            search = 1;
+        }
+        open.clear();
+        polys.getCenter(end, goal);
+        
+        g[start] = 0;
+        parent[start] = -1;
+        seen[start] = search;
+        open.push(estimate(start, end, heuristic) * scale, start);
+        
+        while (!open.isEmpty()) {
+            int a = open.pop();
+            if (closed[a] == search) {
+                continue;
+            }
+            if (a == end) {
+                break;
+            }
+            closed[a] = search;
+            expansions++;
+            
+            long refA = polys.getRef(a);
+            MeshTile tileA = navMesh.getTile(navMesh.decodePolyIdTile(refA));
+            int polyA = polys.getTilePoly(a);
+            Poly pA = tileA.data.polys[polyA];
+            polys.getCenter(a, pa);
+            
+            for (int link = PolyLinks.first(tileA, polyA); !PolyLinks.isEnd(link); link = PolyLinks.next(tileA, link)) {
+                long refB = PolyLinks.ref(tileA, link);
+                int b = polys.index(refB);
+                if (b == -1) {
+                    //A poly newer than the tables, neither a path nor no path 
+                    //would be a sure thing.
+                    return null;
+                }
+                if (closed[b] == search) {
+                    continue;
+                }
+                MeshTile tileB = navMesh.getTile(navMesh.decodePolyIdTile(refB));
+                Poly pB = tileB.data.polys[polys.getTilePoly(b)];
+                if (!filter.passFilter(refB, tileB, pB)) {
+                    continue;
+                }
+                
+                polys.getCenter(b, pb);
+                float cost = g[a] + filter.getCost(pa, pb, 0, null, null, refA, tileA, pA, refB, tileB, pB);
+                if (seen[b] != search || cost < g[b]) {
+                    seen[b] = search;
+                    g[b] = cost;
+                    parent[b] = a;
+                    open.push(cost + estimate(b, end, heuristic) * scale, b);
+                }
+            }
+        }
+        
+        if (seen[end] != search) {
+            return Collections.<Long>emptyList();
+        }
+        
+        List<Long> path = new ArrayList<>();
+        for (int i = end; i != -1; i = parent[i]) {
+            path.add(polys.getRef(i));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+    
+    /**
+     * The tables are built at an area cost of 1, so a heuristic from them is 
+     * only a lower bound for a filter whose areas all cost at least 1. For a 
+     * cheaper area it has to shrink by the same factor.
+     * 
+     * @param filter The filter the costs come from.
+     * @return The cheapest area cost of the filter capped at 1, or 0 if the 
+     * filter's costs can't be read, which means don't use the tables.
+     */
+    public static float heuristicScale(QueryFilter filter) {
+        float min;
+        if (filter instanceof CompiledQueryFilter) {
+            min = ((CompiledQueryFilter) filter).getMinAreaCost();
+        } else if (filter instanceof DefaultQueryFilter) {
+            min = Float.MAX_VALUE;
+            for (float cost: CompiledQueryFilter.readAreaCosts((DefaultQueryFilter) filter, new float[MAX_AREAS])) {
+                min = Math.min(min, cost);
+            }
+        } else {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, min));
+    }
+    
+    private float estimate(int n, int end, int heuristic) {
+        if (heuristic == HEURISTIC_LANDMARKS) {
+            return tables.heuristic(n, end);
+        }
+        polys.getCenter(n, center);
+        float dx = center[0] - goal[0];
+        float dy = center[1] - goal[1];
+        float dz = center[2] - goal[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz) * H_SCALE;
+    }
+    
+    /**
+     * @return The tables the finder was made for.
+     */
+    public LandmarkTables getTables() {
+        return tables;
+    }
+    
+    /**
+     * @return The polys expanded by the last search.
+     */
+    public int getExpansions() {
+        return expansions;
+    }
+    
+    /**
+     * Runs the same random poly pairs with both heuristics and logs the 
+     * expansions and time per search.
+     * 
+     * @param navMesh The navMesh to search.
+     * @param tables The landmark tables.
+     * @param filter The filter to search with.
+     * @param pairs The number of searches per heuristic.
+     */
+    public static void benchmark(NavMesh navMesh, LandmarkTables tables, QueryFilter filter, int pairs) {
+        PolyIndex polys = tables.getPolyIndex();
+        if (polys.size() < 2) {
+            return;
+        }
+        AltPathFinder finder = new AltPathFinder(tables);
+        String[] names = {"euclidean", "landmarks"};
+        
+        for (int heuristic = HEURISTIC_EUCLIDEAN; heuristic <= HEURISTIC_LANDMARKS; heuristic++) {
+            //Same seed so both heuristics search the same pairs.
+            Random random = new Random(42);
+            long expanded = 0;
+            long nanos = 0;
+            int found = 0;
+            for (int i = 0; i < pairs; i++) {
+                long start = polys.getRef(random.nextInt(polys.size()));
+                long end = polys.getRef(random.nextInt(polys.size()));
+                long time = System.nanoTime();
+                List<Long> path = finder.findPath(navMesh, start, end, filter, heuristic);
+                nanos += System.nanoTime() - time;
+                expanded += finder.getExpansions();
+                if (path != null && !path.isEmpty()) {
+                    found++;
+                }
+            }
+            LOG.info("A* {} pairs [{}] found [{}] avg expansions [{}] avg micros [{}]", 
+                    names[heuristic], pairs, found, expanded / pairs, nanos / pairs / 1000);
+        }
+    }
+}
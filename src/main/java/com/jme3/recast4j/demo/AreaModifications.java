@@ -22,6 +22,8 @@
  */
 package com.jme3.recast4j.demo;
 
+import java.util.Arrays;
+
 import org.recast4j.recast.AreaModification;
 
 public class AreaModifications {
@@ -53,4 +55,77 @@ public class AreaModifications {
     public static final int POLYFLAGS_DISABLED = 0x10; // Disabled polygon
     public static final int POLYFLAGS_ALL = 0xffff; // All abilities.
 
+    /**
+     * Detour stores the area in 6 bits so there can never be more than 64 
+     * area types.
+     */
+    public static final int MAX_AREAS = 64;
+    
+    /**
+     * Area to ability flags lookup, indexed by area type. Every build path 
+     * uses this table so the mapping only has to be changed here. Areas with 
+     * no entry get no flags which makes them unreachable by any filter.
+     */
+    private static final int[] AREA_FLAGS = new int[MAX_AREAS];
+    
+    /**
+     * Area to default traversal cost lookup, indexed by area type. Areas with 
+     * no entry cost 1.0f.
+     */
+    private static final float[] AREA_COSTS = new float[MAX_AREAS];
+    
+    static {
+        AREA_FLAGS[POLYAREA_TYPE_GROUND]    = POLYFLAGS_WALK;
+        AREA_FLAGS[POLYAREA_TYPE_GRASS]     = POLYFLAGS_WALK;
+        AREA_FLAGS[POLYAREA_TYPE_ROAD]      = POLYFLAGS_WALK;
+        AREA_FLAGS[POLYAREA_TYPE_WATER]     = POLYFLAGS_SWIM;
+        AREA_FLAGS[POLYAREA_TYPE_DOOR]      = POLYFLAGS_WALK | POLYFLAGS_DOOR;
+        AREA_FLAGS[POLYAREA_TYPE_JUMP]      = POLYFLAGS_JUMP;
+        
+        Arrays.fill(AREA_COSTS, 1.0f);
+    }
+    
+    /**
+     * Looks up the ability flags for an area type.
+     * 
+     * @param area The area type.
+     * @return The flags for the area or 0 if the area has no flags.
+     */
+    public static int getAreaFlags(int area) {
+        return AREA_FLAGS[area & (MAX_AREAS - 1)];
+    }
+    
+    /**
+     * Looks up the default traversal cost for an area type.
+     * 
+     * @param area The area type.
+     * @return The cost for the area.
+     */
+    public static float getAreaCost(int area) {
+        return AREA_COSTS[area & (MAX_AREAS - 1)];
+    }
+    
+    /**
+     * Creates a copy of the default area costs that can be modified and passed 
+     * to a query filter.
+     * 
+     * @return A new array of MAX_AREAS costs.
+     */
+    public static float[] getAreaCosts() {
+        return Arrays.copyOf(AREA_COSTS, MAX_AREAS);
+    }
+    
+    /**
+     * Sets the ability flags for each poly from its area type.
+     * 
+     * @param areas The area of each poly.
+     * @param flags The flags of each poly, written to.
+     * @param polyCount The number of polys.
+     */
+    public static void setFlagsFromAreas(int[] areas, int[] flags, int polyCount) {
+        for (int i = 0; i < polyCount; ++i) {
+            flags[i] = AREA_FLAGS[areas[i] & (MAX_AREAS - 1)];
+        }
+    }
+
 }
@@ -0,0 +1,348 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.recast4j.Detour.BetterDefaultQueryFilter;
+import static com.jme3.recast4j.demo.AreaModifications.*;
+import org.recast4j.detour.DefaultQueryFilter;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.Poly;
+
+/**
+ * A query filter whose include/exclude flags and area costs are compiled into 
+ * one immutable table together with a fingerprint of its contents. Equal 
+ * filters get equal fingerprints wherever they were created, so PathCache and 
+ * FlowFields share entries between them, and any change gives a new 
+ * fingerprint so stale entries are simply never matched again.
+ * 
+ * The filter can be changed at runtime, for example making all roads cheaper 
+ * at night with one scaleAreaCosts call, without creating a new filter or 
+ * handing it to the crowd again. Every change builds a new table and swaps it 
+ * in, so searches on other threads always see a complete table. A search 
+ * running while a change is made may use both the old and new costs.
+ * 
+ * Like BetterDefaultQueryFilter, polys without any flags pass when the 
+ * filter includes POLYFLAGS_ALL and excludes nothing, so the default filter 
+ * still walks navMeshes that were built without flags.
+ * 
+ * Extends DefaultQueryFilter so it can be used wherever one is expected, but 
+ * none of its state is used.
+ */
+public class CompiledQueryFilter extends DefaultQueryFilter {
+
+    private volatile Table table;
+
+    /**
+     * Creates a filter that includes all flags with the default area costs.
+     */
+    public CompiledQueryFilter() {
+        this(POLYFLAGS_ALL, 0, getAreaCosts());
+    }
+
+    /**
+     * @param includeFlags Flags a poly needs at least one of.
+     * @param excludeFlags Flags a poly must have none of.
+     * @param areaCosts The cost of each area type. Areas past the end of the 
+     * array cost 1.0f.
+     */
+    public CompiledQueryFilter(int includeFlags, int excludeFlags, float[] areaCosts) {
+        float[] costs = new float[MAX_AREAS];
+        copyCosts(areaCosts, costs);
+        this.table = new Table(includeFlags, excludeFlags, costs);
+    }
+
+    /**
+     * Compiles an existing filter. Its area costs aren't exposed so they are 
+     * read back through getCost, see readAreaCosts.
+     * 
+     * @param filter The filter to copy.
+     * @return A new filter with the same flags and costs.
+     */
+    public static CompiledQueryFilter compile(DefaultQueryFilter filter) {
+        if (filter instanceof CompiledQueryFilter) {
+            Table t = ((CompiledQueryFilter) filter).table;
+            return new CompiledQueryFilter(t.includeFlags, t.excludeFlags, t.costs);
+        }
+        return new CompiledQueryFilter(filter.getIncludeFlags(), filter.getExcludeFlags(), readAreaCosts(filter, new float[MAX_AREAS]));
+    }
+
+    @Override
+    public boolean passFilter(long ref, MeshTile tile, Poly poly) {
+        Table t = table;
+        if (poly.flags == 0) {
+            return t.passUnflagged;
+        }
+        return (poly.flags & t.includeFlags) != 0 && (poly.flags & t.excludeFlags) == 0;
+    }
+
+    @Override
+    public float getCost(float[] pa, float[] pb, long prevRef, MeshTile prevTile, Poly prevPoly, long curRef, 
+            MeshTile curTile, Poly curPoly, long nextRef, MeshTile nextTile, Poly nextPoly) {
+        float dx = pb[0] - pa[0];
+        float dy = pb[1] - pa[1];
+        float dz = pb[2] - pa[2];
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz) * table.costs[curPoly.getArea()];
+    }
+
+    @Override
+    public int getIncludeFlags() {
+        return table.includeFlags;
+    }
+
+    @Override
+    public synchronized void setIncludeFlags(int flags) {
+        setFlags(flags, table.excludeFlags);
+    }
+
+    @Override
+    public int getExcludeFlags() {
+        return table.excludeFlags;
+    }
+
+    @Override
+    public synchronized void setExcludeFlags(int flags) {
+        setFlags(table.includeFlags, flags);
+    }
+
+    /**
+     * Sets both flags with a single change.
+     * 
+     * @param includeFlags Flags a poly needs at least one of.
+     * @param excludeFlags Flags a poly must have none of.
+     */
+    public synchronized void setFlags(int includeFlags, int excludeFlags) {
+        table = new Table(includeFlags, excludeFlags, table.costs);
+    }
+
+    /**
+     * Sets both flags and all area costs with a single change, so searches 
+     * never see the new flags with the old costs.
+     * 
+     * @param includeFlags Flags a poly needs at least one of.
+     * @param excludeFlags Flags a poly must have none of.
+     * @param areaCosts The cost of each area type. Areas past the end of the 
+     * array cost 1.0f.
+     */
+    public synchronized void set(int includeFlags, int excludeFlags, float[] areaCosts) {
+        float[] costs = new float[MAX_AREAS];
+        copyCosts(areaCosts, costs);
+        table = new Table(includeFlags, excludeFlags, costs);
+    }
+
+    /**
+     * @param area The area type.
+     * @return The cost of the area.
+     */
+    public float getAreaCost(int area) {
+        return table.costs[area];
+    }
+
+    /**
+     * @return The cheapest area cost, which bounds how far below the 
+     * distance a path cost can be.
+     */
+    public float getMinAreaCost() {
+        return table.minCost;
+    }
+
+    /**
+     * @param store The array to copy the MAX_AREAS costs into.
+     * @return store.
+     */
+    public float[] getAreaCosts(float[] store) {
+        System.arraycopy(table.costs, 0, store, 0, MAX_AREAS);
+        return store;
+    }
+
+    /**
+     * @param area The area type.
+     * @param cost The new cost of the area.
+     */
+    public synchronized void setAreaCost(int area, float cost) {
+        float[] costs = table.costs.clone();
+        costs[area] = cost;
+        publish(costs);
+    }
+
+    /**
+     * Replaces all area costs with a single change.
+     * 
+     * @param areaCosts The cost of each area type. Areas past the end of the 
+     * array cost 1.0f.
+     */
+    public synchronized void setAreaCosts(float[] areaCosts) {
+        float[] costs = new float[MAX_AREAS];
+        copyCosts(areaCosts, costs);
+        publish(costs);
+    }
+
+    /**
+     * Sets the cost of every area in a mask with a single change.
+     * 
+     * @param areaMask Bit n set changes area n.
+     * @param cost The new cost.
+     */
+    public synchronized void setAreaCosts(long areaMask, float cost) {
+        float[] costs = table.costs.clone();
+        for (int area = 0; area < MAX_AREAS; area++) {
+            if ((areaMask & (1L << area)) != 0) {
+                costs[area] = cost;
+            }
+        }
+        publish(costs);
+    }
+
+    /**
+     * Multiplies the cost of every area in a mask with a single change, e.g. 
+     * scaleAreaCosts(1L << POLYAREA_TYPE_ROAD, 0.5f) makes roads cheaper.
+     * 
+     * @param areaMask Bit n set changes area n.
+     * @param factor The factor to multiply the costs by.
+     */
+    public synchronized void scaleAreaCosts(long areaMask, float factor) {
+        float[] costs = table.costs.clone();
+        for (int area = 0; area < MAX_AREAS; area++) {
+            if ((areaMask & (1L << area)) != 0) {
+                costs[area] *= factor;
+            }
+        }
+        publish(costs);
+    }
+
+    /**
+     * @return The fingerprint of the current flags and costs, see 
+     * fingerprint(int, int, boolean, float[]).
+     */
+    public long getFingerprint() {
+        return table.fingerprint;
+    }
+
+    private void publish(float[] costs) {
+        Table t = table;
+        table = new Table(t.includeFlags, t.excludeFlags, costs);
+    }
+
+    private static void copyCosts(float[] src, float[] dst) {
+        int count = Math.min(src.length, MAX_AREAS);
+        System.arraycopy(src, 0, dst, 0, count);
+        for (int i = count; i < MAX_AREAS; i++) {
+            dst[i] = 1.0f;
+        }
+    }
+
+    /**
+     * Fingerprints filter contents. A DefaultQueryFilter and a 
+     * CompiledQueryFilter with the same flags, costs and handling of polys 
+     * without flags get the same fingerprint.
+     * 
+     * @param includeFlags The include flags.
+     * @param excludeFlags The exclude flags.
+     * @param passUnflagged True if polys without flags pass the filter.
+     * @param costs The MAX_AREAS area costs.
+     * @return The fingerprint.
+     */
+    public static long fingerprint(int includeFlags, int excludeFlags, boolean passUnflagged, float[] costs) {
+        long hash = includeFlags;
+        hash = hash * 31 + excludeFlags;
+        hash = hash * 31 + (passUnflagged ? 1 : 0);
+        for (int area = 0; area < MAX_AREAS; area++) {
+            hash = hash * 31 + Float.floatToIntBits(costs[area]);
+        }
+        //Keep clear of the fingerprint of filters that can't be cached.
+        return hash == PathCache.UNCACHEABLE ? hash + 1 : hash;
+    }
+
+    /**
+     * @param includeFlags The include flags.
+     * @param excludeFlags The exclude flags.
+     * @return True if BetterDefaultQueryFilter lets polys without flags 
+     * through with these flags.
+     */
+    public static boolean passesUnflagged(int includeFlags, int excludeFlags) {
+        return includeFlags == POLYFLAGS_ALL && excludeFlags == 0;
+    }
+
+    /**
+     * @param filter The filter.
+     * @return True if the filter lets polys without flags through with its 
+     * current flags. Only BetterDefaultQueryFilter and CompiledQueryFilter 
+     * ever do.
+     */
+    public static boolean passesUnflagged(DefaultQueryFilter filter) {
+        if (filter instanceof CompiledQueryFilter) {
+            return ((CompiledQueryFilter) filter).table.passUnflagged;
+        }
+        return filter instanceof BetterDefaultQueryFilter 
+                && passesUnflagged(filter.getIncludeFlags(), filter.getExcludeFlags());
+    }
+
+    /**
+     * Reads the area costs of a DefaultQueryFilter. They aren't exposed but 
+     * getCost is the distance times the cost of the current poly's area, so 
+     * probe a unit step for each area.
+     * 
+     * @param filter The filter to read.
+     * @param store The array to store the MAX_AREAS costs in.
+     * @return store.
+     */
+    public static float[] readAreaCosts(DefaultQueryFilter filter, float[] store) {
+        float[] pa = new float[3];
+        float[] pb = {1, 0, 0};
+        Poly probe = new Poly(0, 3);
+        for (int area = 0; area < MAX_AREAS; area++) {
+            probe.setArea(area);
+            store[area] = filter.getCost(pa, pb, 0, null, null, 0, null, probe, 0, null, null);
+        }
+        return store;
+    }
+
+    /**
+     * The compiled flags and costs. Never changed once created.
+     */
+    private static class Table {
+        private final int includeFlags;
+        private final int excludeFlags;
+        private final float[] costs;
+        private final float minCost;
+        private final boolean passUnflagged;
+        private final long fingerprint;
+
+        private Table(int includeFlags, int excludeFlags, float[] costs) {
+            this.includeFlags = includeFlags;
+            this.excludeFlags = excludeFlags;
+            this.costs = costs;
+            float min = Float.MAX_VALUE;
+            for (float cost: costs) {
+                min = Math.min(min, cost);
+            }
+            this.minCost = min;
+            this.passUnflagged = passesUnflagged(includeFlags, excludeFlags);
+            this.fingerprint = fingerprint(includeFlags, excludeFlags, passUnflagged, costs);
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.jme3.recast4j.demo.states.tutorial.CrowdState;
 import com.jme3.recast4j.demo.states.UtilState;
 import com.jme3.recast4j.demo.states.LemurConfigState;
 import com.jme3.recast4j.demo.states.NavState;
+import com.jme3.recast4j.demo.states.PathServiceState;
+import com.jme3.recast4j.demo.states.SlicedPathSchedulerState;
 import com.jme3.recast4j.demo.states.ThirdPersonCamState;
 import com.jme3.renderer.RenderManager;
 import com.jme3.scene.Geometry;
@@ -56,6 +58,8 @@ public class DemoApplication extends SimpleApplication {
                 new DebugKeysAppState(),
                 new UtilState(),
                 new NavState(),
+                new PathServiceState(),
+                new SlicedPathSchedulerState(),
                 new CrowdManagerAppstate(new CrowdManager()),
                 new LemurConfigState(),
                 /*new CrowdState(),*/
@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.recast4j.detour.MeshData;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.jme3.recast4j.demo.AreaModifications.*;
+
+/**
+ * Maps each door to the exact door area polys that sit in its opening so 
+ * opening or closing a door is a single bulk flag write. The polys are found 
+ * once per tile when the tile is added to the navMesh and are refreshed 
+ * whenever that tile is rebuilt. Rebuilt tiles get their door flags from the 
+ * area table so the current state of each door is written back to them. 
+ * Register updateTiles as the first TileChangeListener of the editor so the 
+ * door flags are back in place before anything else looks at a rebuilt tile.
+ * 
+ * A poly only ever belongs to one door, the door whose footprint center is 
+ * closest, so double doors each get their own polys.
+ */
+public class DoorRegistry {
+    
+    private static final Logger LOG = LoggerFactory.getLogger(DoorRegistry.class.getName());
+    
+    //The flags that say a door is open.
+    public static final int DOOR_OPEN = POLYFLAGS_WALK | POLYFLAGS_DOOR;
+    //The flags that say a door is closed, i.e. open flags and POLYFLAGS_DISABLED.
+    public static final int DOOR_CLOSED = DOOR_OPEN | POLYFLAGS_DISABLED;
+    
+    private final Map<Spatial, Door> doors;
+    private final List<DoorListener> listeners;
+    private final float heightTolerance;
+    //The tile data each tile index was last searched with. A tile whose data 
+    //is still the same object only had its flags edited and keeps its refs.
+    private MeshData[] scanned = new MeshData[0];
+    
+    /**
+     * @param heightTolerance How far above or below a door's bounds a poly 
+     * center may be and still belong to the door. The agents max climb is a 
+     * good value.
+     */
+    public DoorRegistry(float heightTolerance) {
+        this.heightTolerance = heightTolerance;
+        this.doors = new LinkedHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * Registers a door. The footprint of the door is its world bounds with the 
+     * thickness widened to the width of the door so the polys on either side 
+     * of a closed door are included. Doors start open since that's what the 
+     * area table sets for door polys.
+     * 
+     * @param door The spatial that identifies the door.
+     * @param bounds The world bounds of the door opening.
+     */
+    public void register(Spatial door, BoundingBox bounds) {
+        float extent = Math.max(bounds.getXExtent(), bounds.getZExtent());
+        doors.put(door, new Door(bounds.getCenter(), extent, bounds.getYExtent()));
+    }
+    
+    /**
+     * Finds the polys of every registered door in every tile of the navMesh.
+     * 
+     * @param navMesh The navMesh to search.
+     */
+    public void updateAll(NavMesh navMesh) {
+        for (int i = 0; i < navMesh.getMaxTiles(); i++) {
+            updateTile(navMesh, navMesh.getTile(i));
+        }
+    }
+    
+    /**
+     * Refreshes the door polys of the changed tiles that were added or rebuilt 
+     * since they were last searched. Tiles that only had flags edited, 
+     * including by a door, are skipped.
+     * 
+     * @param navMesh The navMesh the tiles belong to.
+     * @param tiles The indices of the changed tiles.
+     */
+    public void updateTiles(NavMesh navMesh, int[] tiles) {
+        for (int index: tiles) {
+            MeshTile tile = navMesh.getTile(index);
+            if (tile != null && (index >= scanned.length || scanned[index] != tile.data)) {
+                updateTile(navMesh, tile);
+            }
+        }
+    }
+    
+    /**
+     * Refreshes the door polys of a single tile. Must be called every time a 
+     * tile is added or rebuilt. Refs from the old version of the tile are 
+     * dropped, the tile is searched for door area polys and closed doors have 
+     * their flags written to the new polys.
+     * 
+     * @param navMesh The navMesh the tile belongs to.
+     * @param tile The tile that was added or rebuilt.
+     */
+    public void updateTile(NavMesh navMesh, MeshTile tile) {
+        for (Door door: doors.values()) {
+            door.removeTile(navMesh, tile.index);
+        }
+        
+        MeshData data = tile.data;
+        if (tile.index >= scanned.length) {
+            scanned = Arrays.copyOf(scanned, Math.max(tile.index + 1, navMesh.getMaxTiles()));
+        }
+        scanned[tile.index] = data;
+        
+        if (data == null || data.header == null || doors.isEmpty()) {
+            return;
+        }
+        
+        long base = navMesh.getPolyRefBase(tile);
+        float[] center = new float[3];
+        
+        for (int i = 0; i < data.header.polyCount; i++) {
+            Poly p = data.polys[i];
+            if (p.getType() == Poly.DT_POLYTYPE_OFFMESH_CONNECTION || p.getArea() != POLYAREA_TYPE_DOOR) {
+                continue;
+            }
+            
+            //Poly center.
+            Arrays.fill(center, 0);
+            for (int j = 0; j < p.vertCount; j++) {
+                int v = p.verts[j] * 3;
+                center[0] += data.verts[v];
+                center[1] += data.verts[v + 1];
+                center[2] += data.verts[v + 2];
+            }
+            center[0] /= p.vertCount;
+            center[1] /= p.vertCount;
+            center[2] /= p.vertCount;
+            
+            //Closest door that contains the center owns the poly.
+            Door owner = null;
+            float best = Float.MAX_VALUE;
+            for (Door door: doors.values()) {
+                float dist = door.distanceSq(center, heightTolerance);
+                if (dist < best) {
+                    best = dist;
+                    owner = door;
+                }
+            }
+            
+            if (owner != null) {
+                long ref = base | i;
+                owner.add(ref);
+                if (!owner.open) {
+                    navMesh.setPolyFlags(ref, DOOR_CLOSED);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Opens or closes a door by writing the flags of all its polys in a single 
+     * batch.
+     * 
+     * @param editor The editor for the navMesh to write to.
+     * @param door The registered door.
+     * @param open True to open the door, false to close it.
+     * @return False if the door is not registered, has no polys or its polys 
+     * don't all share the same flags.
+     */
+    public boolean setOpen(NavMeshEditor editor, Spatial door, boolean open) {
+        Door entry = doors.get(door);
+        if (entry == null || entry.count == 0) {
+            LOG.error("No polys registered for door [{}].", door == null ? null : door.getName());
+            return false;
+        }
+        
+        //All polys of a door must be in the same state or something other than 
+        //the door has written to them and toggling would leave it half open.
+        NavMesh navMesh = editor.getNavMesh();
+        int flags = navMesh.getPolyFlags(entry.refs[0]).result;
+        for (int i = 1; i < entry.count; i++) {
+            if (navMesh.getPolyFlags(entry.refs[i]).result != flags) {
+                LOG.error("All poly flags are not the same for door [{}].", door.getName());
+                return false;
+            }
+        }
+        
+        editor.setPolyFlags(entry.refs, entry.count, open ? DOOR_OPEN : DOOR_CLOSED);
+        entry.open = open;
+        
+        long[] polys = getPolys(door);
+        for (DoorListener listener: listeners) {
+            listener.onDoorChanged(door, polys, open);
+        }
+        return true;
+    }
+    
+    /**
+     * @param door The registered door.
+     * @return True if the door is open or not registered.
+     */
+    public boolean isOpen(Spatial door) {
+        Door entry = doors.get(door);
+        return entry == null || entry.open;
+    }
+    
+    /**
+     * @param door The registered door.
+     * @return A copy of the poly refs of the door. Empty if not registered.
+     */
+    public long[] getPolys(Spatial door) {
+        Door entry = doors.get(door);
+        return entry == null ? new long[0] : Arrays.copyOf(entry.refs, entry.count);
+    }
+    
+    /**
+     * @param listener Notified after a door's flags change.
+     */
+    public void addDoorListener(DoorListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeDoorListener(DoorListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Notified when a door is opened or closed so anything holding paths or 
+     * corridors through the door's polys can update them.
+     */
+    public interface DoorListener {
+        
+        /**
+         * @param door The door that changed.
+         * @param polys The poly refs of the door.
+         * @param open The new state of the door.
+         */
+        void onDoorChanged(Spatial door, long[] polys, boolean open);
+    }
+    
+    private static class Door {
+        private final Vector3f center;
+        private final float extentXZ;
+        private final float extentY;
+        private long[] refs = new long[8];
+        private int count;
+        private boolean open = true;
+
+        private Door(Vector3f center, float extentXZ, float extentY) {
+            this.center = center.clone();
+            this.extentXZ = extentXZ;
+            this.extentY = extentY;
+        }
+        
+        /**
+         * @return The squared XZ distance from the footprint center or 
+         * Float.MAX_VALUE if pos is outside the footprint.
+         */
+        private float distanceSq(float[] pos, float heightTolerance) {
+            float dx = pos[0] - center.x;
+            float dz = pos[2] - center.z;
+            if (Math.abs(dx) > extentXZ 
+            ||  Math.abs(dz) > extentXZ 
+            ||  Math.abs(pos[1] - center.y) > extentY + heightTolerance) {
+                return Float.MAX_VALUE;
+            }
+            return dx * dx + dz * dz;
+        }
+        
+        private void add(long ref) {
+            if (count == refs.length) {
+                refs = Arrays.copyOf(refs, count * 2);
+            }
+            refs[count++] = ref;
+        }
+        
+        //Removes the refs that belong to the tile at tileIndex.
+        private void removeTile(NavMesh navMesh, int tileIndex) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (navMesh.decodePolyIdTile(refs[i]) != tileIndex) {
+                    refs[n++] = refs[i];
+                }
+            }
+            count = n;
+        }
+    }
+}
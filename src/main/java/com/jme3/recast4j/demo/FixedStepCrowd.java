@@ -0,0 +1,376 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.recast4j.Detour.Crowd.Crowd;
+import com.jme3.recast4j.Detour.Crowd.MovementApplicationType;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.crowd.CrowdAgent;
+import org.recast4j.detour.crowd.CrowdAgentParams;
+import org.recast4j.detour.crowd.ObstacleAvoidanceQuery.ObstacleAvoidanceParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Crowd that can be stepped on its own thread at a fixed rate instead of 
+ * by the CrowdManager with the frame's tpf. The crowd's cost then no longer 
+ * adds to the frame time and agents behave the same at any frame rate.
+ * 
+ * Until startSimulation is called it behaves exactly like a Crowd. Once 
+ * started, the CrowdManager's update does nothing and its applyMovements 
+ * moves the spatials to positions interpolated between the last two steps, 
+ * so movement stays smooth when the frame rate and step rate differ. This 
+ * lags the simulation by up to one step.
+ * 
+ * Each step writes the agent positions and velocities into a frame that is 
+ * swapped with the one the render thread reads, so a step never waits for 
+ * the render thread. There are three frames: the one being read, the latest 
+ * finished one and the one being written. Applying a frame holds the crowd's 
+ * lock, since the proximity detector and formation handler read and reset 
+ * the agents, so the render thread may wait for a step to finish.
+ * 
+ * An agent that stops gets one more frame carrying it from its last moving 
+ * position to where it stopped. If the render thread misses that frame, the 
+ * spatial is moved to where the agent stopped once it sees it isn't moving.
+ * 
+ * Agents must only be changed through this class while the simulation runs, 
+ * its methods lock out the step. Code that reads agents from the render 
+ * thread, like getActiveAgents, should hold the crowd's lock as well if it 
+ * needs consistent values.
+ */
+public class FixedStepCrowd extends Crowd {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FixedStepCrowd.class.getName());
+    
+    //Steps this far behind are dropped rather than run back to back.
+    private static final int MAX_CATCH_UP_STEPS = 4;
+    
+    private final int maxAgents;
+    private volatile Thread simulation;
+    private float stepTime;
+    private long stepNanos;
+    
+    //Written by the simulation thread.
+    private Frame back;
+    //Position of each agent at the previous step, simulation thread only.
+    private final float[] lastPos;
+    private final boolean[] hasLast;
+    //The latest finished frame, handed between the threads.
+    private final AtomicReference<Frame> ready;
+    //Read by the render thread.
+    private Frame front;
+    //Agents whose spatial was moved by the last applied frame, render thread only.
+    private final boolean[] shown;
+    //Scratch for applyMovements.
+    private final Vector3f newPos = new Vector3f();
+    private final Vector3f newVel = new Vector3f();
+    
+    /**
+     * @param applicationType How movement is applied to the spatials.
+     * @param maxAgents The max number of agents.
+     * @param maxAgentRadius The max radius of an agent.
+     * @param navMesh The navMesh to walk.
+     */
+    public FixedStepCrowd(MovementApplicationType applicationType, int maxAgents, float maxAgentRadius, NavMesh navMesh) throws NoSuchFieldException, IllegalAccessException {
+        super(applicationType, maxAgents, maxAgentRadius, navMesh);
+        this.maxAgents = maxAgents;
+        this.lastPos = new float[maxAgents * 3];
+        this.hasLast = new boolean[maxAgents];
+        this.back = new Frame(maxAgents);
+        this.ready = new AtomicReference<>(new Frame(maxAgents));
+        this.front = new Frame(maxAgents);
+        this.shown = new boolean[maxAgents];
+    }
+    
+    /**
+     * @param applicationType How movement is applied to the spatials.
+     * @param maxAgents The max number of agents.
+     * @param maxAgentRadius The max radius of an agent.
+     * @param navMesh The navMesh to walk.
+     * @param queryFilterFactory The query filter for each filter type.
+     */
+    public FixedStepCrowd(MovementApplicationType applicationType, int maxAgents, float maxAgentRadius, NavMesh navMesh, 
+            IntFunction<QueryFilter> queryFilterFactory) throws NoSuchFieldException, IllegalAccessException {
+        super(applicationType, maxAgents, maxAgentRadius, navMesh, queryFilterFactory);
+        this.maxAgents = maxAgents;
+        this.lastPos = new float[maxAgents * 3];
+        this.hasLast = new boolean[maxAgents];
+        this.back = new Frame(maxAgents);
+        this.ready = new AtomicReference<>(new Frame(maxAgents));
+        this.front = new Frame(maxAgents);
+        this.shown = new boolean[maxAgents];
+    }
+    
+    /**
+     * Starts stepping the crowd on its own thread. Does nothing if it is 
+     * already running.
+     * 
+     * @param stepsPerSecond The fixed step rate, e.g. 30.
+     */
+    public synchronized void startSimulation(int stepsPerSecond) {
+        if (simulation != null) {
+            return;
+        }
+        stepTime = 1f / stepsPerSecond;
+        stepNanos = 1000000000L / stepsPerSecond;
+        //Nothing left over from an earlier run.
+        Arrays.fill(hasLast, false);
+        Arrays.fill(shown, false);
+        ready.get().fresh = false;
+        
+        Thread thread = new Thread(this::simulate, "Crowd Simulation");
+        //Never keep the application alive just to step a crowd.
+        thread.setDaemon(true);
+        simulation = thread;
+        thread.start();
+    }
+    
+    /**
+     * Stops the simulation thread and waits for its last step to finish. The 
+     * CrowdManager updates the crowd with tpf again from the next frame.
+     */
+    public void stopSimulation() {
+        Thread thread;
+        synchronized (this) {
+            thread = simulation;
+            simulation = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * @return True if the crowd is stepped on its own thread.
+     */
+    public boolean isSimulating() {
+        return simulation != null;
+    }
+    
+    private void simulate() {
+        long next = System.nanoTime();
+        while (simulation == Thread.currentThread()) {
+            step();
+            
+            next += stepNanos;
+            long now = System.nanoTime();
+            if (now - next > MAX_CATCH_UP_STEPS * stepNanos) {
+                LOG.warn("Crowd simulation behind by [{}] ms, dropping steps.", (now - next) / 1000000);
+                next = now;
+            }
+            while (next - now > 0 && simulation == Thread.currentThread()) {
+                LockSupport.parkNanos(next - now);
+                now = System.nanoTime();
+            }
+        }
+    }
+    
+    /**
+     * Runs one step and publishes the agent positions.
+     */
+    private void step() {
+        synchronized (this) {
+            super.update(stepTime);
+            capture(back);
+        }
+        back.time = System.nanoTime();
+        back.fresh = true;
+        back = ready.getAndSet(back);
+    }
+    
+    /**
+     * Copies the positions and velocities of the moving agents into a frame, 
+     * along with where they were at the previous step. Agents that stopped 
+     * during the step are included one last time so their spatials get to 
+     * where they stopped.
+     */
+    private void capture(Frame frame) {
+        for (int i = 0; i < maxAgents; i++) {
+            CrowdAgent agent = getAgent(i);
+            boolean moving = isMoving(agent);
+            //Just stopped, but a removed agent has nowhere to go.
+            boolean stopped = !moving && hasLast[i] && agent.active;
+            frame.moving[i] = moving || stopped;
+            if (!moving) {
+                hasLast[i] = false;
+                if (!stopped) {
+                    continue;
+                }
+            }
+            
+            int p = i * 3;
+            //A new or restarted agent has nothing to come from.
+            if (!hasLast[i] && moving) {
+                System.arraycopy(agent.npos, 0, lastPos, p, 3);
+                hasLast[i] = true;
+            }
+            System.arraycopy(lastPos, p, frame.prevPos, p, 3);
+            System.arraycopy(agent.npos, 0, frame.pos, p, 3);
+            System.arraycopy(agent.vel, 0, frame.vel, p, 3);
+            System.arraycopy(agent.npos, 0, lastPos, p, 3);
+        }
+    }
+    
+    @Override
+    public void update(float tpf) {
+        //The simulation thread steps the crowd.
+        if (simulation == null) {
+            super.update(tpf);
+        }
+    }
+    
+    @Override
+    protected void applyMovements() {
+        if (simulation == null) {
+            super.applyMovements();
+            return;
+        }
+        
+        //Take the latest finished frame if there is a new one.
+        if (ready.get().fresh) {
+            front = ready.getAndSet(front);
+            front.fresh = false;
+        }
+        
+        //The proximity detector and formation handler read and reset the 
+        //agents whatever the application type, so keep the step out.
+        synchronized (this) {
+            applyFrame(front);
+        }
+    }
+    
+    /**
+     * Moves every spatial to its agent's position, interpolated between the 
+     * last two steps by how much time has passed since the frame was made. 
+     * Spatials of agents that stopped in a frame that was never applied are 
+     * moved to where the agent stopped. Called with the crowd's lock held.
+     */
+    private void applyFrame(Frame frame) {
+        float alpha = FastMath.clamp((float) (System.nanoTime() - frame.time) / stepNanos, 0f, 1f);
+        for (int i = 0; i < maxAgents; i++) {
+            if (spatialMap[i] == null) {
+                shown[i] = false;
+                continue;
+            }
+            if (!frame.moving[i]) {
+                CrowdAgent agent = getAgent(i);
+                //The lock is held so the agent can't be moving again yet.
+                if (shown[i] && agent.active && !isMoving(agent)) {
+                    newPos.set(agent.npos[0], agent.npos[1], agent.npos[2]);
+                    applyMovement(agent, newPos, newVel.set(0, 0, 0));
+                }
+                shown[i] = false;
+                continue;
+            }
+            shown[i] = true;
+            int p = i * 3;
+            newPos.set(FastMath.interpolateLinear(alpha, frame.prevPos[p], frame.pos[p]), 
+                    FastMath.interpolateLinear(alpha, frame.prevPos[p + 1], frame.pos[p + 1]), 
+                    FastMath.interpolateLinear(alpha, frame.prevPos[p + 2], frame.pos[p + 2]));
+            newVel.set(frame.vel[p], frame.vel[p + 1], frame.vel[p + 2]);
+            applyMovement(getAgent(i), newPos, newVel);
+        }
+    }
+    
+    @Override
+    public synchronized CrowdAgent createAgent(Vector3f pos, CrowdAgentParams params) {
+        return super.createAgent(pos, params);
+    }
+    
+    @Override
+    public synchronized void removeAgent(CrowdAgent agent) {
+        super.removeAgent(agent);
+    }
+    
+    @Override
+    public synchronized boolean requestMoveToTarget(Vector3f to) {
+        return super.requestMoveToTarget(to);
+    }
+    
+    @Override
+    public synchronized boolean requestMoveToTarget(CrowdAgent crowdAgent, Vector3f to) {
+        return super.requestMoveToTarget(crowdAgent, to);
+    }
+    
+    @Override
+    public synchronized boolean requestMoveTarget(int idx, long ref, float[] pos) {
+        return super.requestMoveTarget(idx, ref, pos);
+    }
+    
+    @Override
+    public synchronized boolean requestMoveVelocity(int idx, float[] vel) {
+        return super.requestMoveVelocity(idx, vel);
+    }
+    
+    @Override
+    public synchronized boolean resetMoveTarget(int idx) {
+        return super.resetMoveTarget(idx);
+    }
+    
+    @Override
+    public synchronized void updateAgentParameters(int idx, CrowdAgentParams params) {
+        super.updateAgentParameters(idx, params);
+    }
+    
+    @Override
+    public synchronized void setObstacleAvoidanceParams(int idx, ObstacleAvoidanceParams params) {
+        super.setObstacleAvoidanceParams(idx, params);
+    }
+    
+    /**
+     * The agent state after one step.
+     */
+    private static class Frame {
+        private final float[] prevPos;
+        private final float[] pos;
+        private final float[] vel;
+        private final boolean[] moving;
+        private long time;
+        //True until the render thread has taken it.
+        private volatile boolean fresh;
+
+        private Frame(int maxAgents) {
+            this.prevPos = new float[maxAgents * 3];
+            this.pos = new float[maxAgents * 3];
+            this.vel = new float[maxAgents * 3];
+            this.moving = new boolean[maxAgents];
+        }
+    }
+}
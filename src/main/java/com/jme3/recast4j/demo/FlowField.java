@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * The way to one goal poly from every poly of the navMesh, so any number of 
+ * agents heading to the same place can look up where to go instead of each 
+ * finding its own path.
+ * 
+ * Built with a single Dijkstra search run backwards from the goal over the 
+ * poly links. For every poly reached it stores the next poly toward the goal 
+ * and the middle of the portal into it, in primitive arrays indexed by the 
+ * PolyIndex. Lookups are O(1).
+ * 
+ * The field also keeps the tiles the search reached or looked into, so a 
+ * change to any other tile can't affect it, see touchesAny().
+ * 
+ * Costs come from the filter, walking from poly center to poly center. 
+ * Offmesh connections are one way, but the search follows links backwards, 
+ * so a one way connection may be used in the wrong direction. Build fields 
+ * with a filter that excludes them if that matters.
+ */
+public class FlowField {
+
+    private final PolyIndex polys;
+    private final long goalRef;
+    private final long[] next;
+    private final float[] cost;
+    private final float[] portals;
+    //Tiles with a poly that was reached or a link the search looked at.
+    private final BitSet tiles;
+    //Scratch for setPortal.
+    private final float[] mid = new float[3];
+
+    private FlowField(PolyIndex polys, long goalRef) {
+        this.polys = polys;
+        this.goalRef = goalRef;
+        int total = polys.size();
+        this.next = new long[total];
+        this.cost = new float[total];
+        this.portals = new float[total * 3];
+        this.tiles = new BitSet();
+        Arrays.fill(cost, Float.MAX_VALUE);
+    }
+    
+    /**
+     * Runs the reverse search from the goal. Only polys passing the filter 
+     * are entered. Indexes the whole navMesh first, so keep a PolyIndex and 
+     * use the other build methods when building more than one field.
+     * 
+     * @param navMesh The navMesh to search. Must not change during the build.
+     * @param goalRef The goal poly.
+     * @param filter The filter to use.
+     * @return The field, or null if the goal is not a valid poly.
+     */
+    public static FlowField build(NavMesh navMesh, long goalRef, QueryFilter filter) {
+        return build(PolyIndex.build(navMesh), goalRef, filter);
+    }
+    
+    /**
+     * Same as above reusing an index, for building many fields at once.
+     * 
+     * @param polys The index of the navMesh. Must be current.
+     * @param goalRef The goal poly.
+     * @param filter The filter to use.
+     * @return The field, or null if the goal is not a valid poly.
+     */
+    public static FlowField build(PolyIndex polys, long goalRef, QueryFilter filter) {
+        return build(polys, goalRef, filter, new OpenList());
+    }
+    
+    /**
+     * Same as above also reusing the open list, for building fields one 
+     * after another on one thread.
+     * 
+     * @param polys The index of the navMesh. Must be current.
+     * @param goalRef The goal poly.
+     * @param filter The filter to use.
+     * @param open The open list to search with, emptied first.
+     * @return The field, or null if the goal is not a valid poly.
+     */
+    public static FlowField build(PolyIndex polys, long goalRef, QueryFilter filter, OpenList open) {
+        int goal = polys.index(goalRef);
+        if (goal == -1) {
+            return null;
+        }
+        FlowField field = new FlowField(polys, goalRef);
+        field.search(goal, filter, open);
+        return field;
+    }
+    
+    private void search(int goal, QueryFilter filter, OpenList open) {
+        float[] pa = new float[3];
+        float[] pb = new float[3];
+        
+        cost[goal] = 0;
+        next[goal] = goalRef;
+        polys.getCenter(goal, pa);
+        System.arraycopy(pa, 0, portals, goal * 3, 3);
+        
+        //Stale entries are skipped when popped.
+        open.clear();
+        open.push(0, goal);
+        
+        while (!open.isEmpty()) {
+            int a = open.pop();
+            if (open.getPoppedKey() > cost[a]) {
+                continue;
+            }
+            
+            long refA = polys.getRef(a);
+            MeshTile tileA = polys.getTile(a);
+            int polyA = polys.getTilePoly(a);
+            Poly pA = tileA.data.polys[polyA];
+            polys.getCenter(a, pa);
+            tiles.set(tileA.index);
+            
+            for (int link = PolyLinks.first(tileA, polyA); !PolyLinks.isEnd(link); link = PolyLinks.next(tileA, link)) {
+                long refB = PolyLinks.ref(tileA, link);
+                int b = polys.index(refB);
+                if (b == -1) {
+                    continue;
+                }
+                MeshTile tileB = polys.getTile(b);
+                int polyB = polys.getTilePoly(b);
+                Poly pB = tileB.data.polys[polyB];
+                //Even a poly the filter turns away is watched, new flags 
+                //could let it in.
+                tiles.set(tileB.index);
+                if (!filter.passFilter(refB, tileB, pB)) {
+                    continue;
+                }
+                
+                //Agents walk from B to A so cost the move that way round.
+                polys.getCenter(b, pb);
+                float c = cost[a] + filter.getCost(pb, pa, 0, null, null, refB, tileB, pB, refA, tileA, pA);
+                if (c < cost[b]) {
+                    cost[b] = c;
+                    next[b] = refA;
+                    setPortal(b, tileB, polyB, refA, pa);
+                    open.push(c, b);
+                }
+            }
+        }
+    }
+    
+    //The middle of B's portal into A, or A's center if the link has no edge.
+    private void setPortal(int b, MeshTile tileB, int polyB, long refA, float[] centerA) {
+        for (int link = PolyLinks.first(tileB, polyB); !PolyLinks.isEnd(link); link = PolyLinks.next(tileB, link)) {
+            if (PolyLinks.ref(tileB, link) == refA && PolyLinks.portalMid(tileB, polyB, link, mid)) {
+                System.arraycopy(mid, 0, portals, b * 3, 3);
+                return;
+            }
+        }
+        System.arraycopy(centerA, 0, portals, b * 3, 3);
+    }
+    
+    /**
+     * @param ref The poly the agent is on.
+     * @return The next poly toward the goal, the goal itself when on the 
+     * goal poly, or 0 if the goal can't be reached from this poly.
+     */
+    public long getNextPoly(long ref) {
+        int i = polys.index(ref);
+        return i == -1 ? 0 : next[i];
+    }
+    
+    /**
+     * Gets the direction to walk in on the xz plane, toward the portal into 
+     * the next poly.
+     * 
+     * @param ref The poly the agent is on.
+     * @param pos The agent position.
+     * @param out Receives the normalized direction.
+     * @return False if the goal can't be reached or the agent is on the goal 
+     * poly, in which case it should steer to its exact target itself.
+     */
+    public boolean getDirection(long ref, float[] pos, float[] out) {
+        int i = polys.index(ref);
+        if (i == -1 || next[i] == 0 || ref == goalRef) {
+            return false;
+        }
+        float dx = portals[i * 3] - pos[0];
+        float dz = portals[i * 3 + 2] - pos[2];
+        float len = (float) Math.sqrt(dx * dx + dz * dz);
+        if (len < 1e-6f) {
+            return false;
+        }
+        out[0] = dx / len;
+        out[1] = 0;
+        out[2] = dz / len;
+        return true;
+    }
+    
+    /**
+     * @param ref The poly the agent is on.
+     * @return The cost to the goal or Float.MAX_VALUE if unreachable.
+     */
+    public float getCost(long ref) {
+        int i = polys.index(ref);
+        return i == -1 ? Float.MAX_VALUE : cost[i];
+    }
+    
+    /**
+     * @param i A poly index of the PolyIndex the field was built with.
+     * @return The cost to the goal or Float.MAX_VALUE if unreachable.
+     */
+    public float getCostAt(int i) {
+        return cost[i];
+    }
+    
+    /**
+     * A tile the search never reached or looked into can only change the 
+     * field by linking to one it did, and a tile only links to the tiles 
+     * around it. So if neither a changed tile nor any tile around it is 
+     * touched, the field is still right.
+     * 
+     * @param changed Tile indices.
+     * @return True if the search reached or looked into any of the tiles.
+     */
+    public boolean touchesAny(BitSet changed) {
+        return tiles.intersects(changed);
+    }
+    
+    /**
+     * @return The goal poly.
+     */
+    public long getGoalRef() {
+        return goalRef;
+    }
+}
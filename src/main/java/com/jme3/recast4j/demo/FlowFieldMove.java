@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.recast4j.Detour.Crowd.Crowd;
+import java.util.ArrayList;
+import java.util.List;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.crowd.CrowdAgent;
+import org.recast4j.detour.crowd.CrowdAgent.MoveRequestState;
+
+/**
+ * Moves the agents of a crowd to one goal by steering them along a FlowField 
+ * instead of having the crowd find a path for each of them. Every update 
+ * each agent looks up the direction from the poly it is on, O(1), and is 
+ * given a velocity request the crowd still runs through separation and 
+ * obstacle avoidance. Once an agent reaches the goal poly it is handed a 
+ * normal move request for the last stretch to the exact goal position. 
+ * Agents the goal can't be reached from are stopped.
+ * 
+ * The field is looked up from the FlowFields every update, so a field dropped 
+ * because a tile changed is rebuilt and the agents follow the new one.
+ * 
+ * An agent given some other move request while steering is let go.
+ * 
+ * Must only be used from the thread that owns the crowd's navMesh.
+ */
+public class FlowFieldMove {
+
+    private final Crowd crowd;
+    private final FlowFields fields;
+    private final long goalRef;
+    private final float[] goalPos;
+    private final QueryFilter filter;
+    private final List<CrowdAgent> agents;
+    //Set after the first update, when every agent has a velocity request.
+    private boolean steering;
+    
+    private final float[] dir = new float[3];
+    private final float[] vel = new float[3];
+
+    /**
+     * Takes every active agent of the crowd.
+     * 
+     * @param crowd The crowd to move.
+     * @param fields The flow fields of the crowd's navMesh.
+     * @param goalRef The goal poly.
+     * @param goalPos The goal position, on the goal poly.
+     * @param filter The filter to build the field with.
+     */
+    public FlowFieldMove(Crowd crowd, FlowFields fields, long goalRef, float[] goalPos, QueryFilter filter) {
+        this.crowd = crowd;
+        this.fields = fields;
+        this.goalRef = goalRef;
+        this.goalPos = goalPos.clone();
+        this.filter = filter;
+        synchronized (crowd) {
+            this.agents = new ArrayList<>(crowd.getActiveAgents());
+        }
+    }
+    
+    /**
+     * Sets the velocity of every agent still steering by the field.
+     * 
+     * @return False once no agent is steering by the field anymore.
+     */
+    public boolean update() {
+        //Built outside the lock so a fixed step crowd isn't held up.
+        FlowField field = fields.get(goalRef, filter);
+        if (field == null) {
+            agents.clear();
+            return false;
+        }
+        
+        //A fixed step crowd steps under its own lock.
+        synchronized (crowd) {
+            for (int i = agents.size() - 1; i >= 0; i--) {
+                CrowdAgent agent = agents.get(i);
+                if (!agent.active 
+                || (steering && agent.targetState != MoveRequestState.DT_CROWDAGENT_TARGET_VELOCITY)) {
+                    agents.remove(i);
+                    continue;
+                }
+                
+                long ref = agent.corridor.getFirstPoly();
+                if (field.getDirection(ref, agent.npos, dir)) {
+                    float speed = agent.params.maxSpeed;
+                    vel[0] = dir[0] * speed;
+                    vel[1] = 0;
+                    vel[2] = dir[2] * speed;
+                    crowd.requestMoveVelocity(agent.idx, vel);
+                } else {
+                    //On the goal poly, or nowhere to go.
+                    if (field.getNextPoly(ref) != 0) {
+                        crowd.requestMoveTarget(agent.idx, goalRef, goalPos);
+                    } else {
+                        crowd.resetMoveTarget(agent.idx);
+                    }
+                    agents.remove(i);
+                }
+            }
+        }
+        steering = true;
+        return !agents.isEmpty();
+    }
+    
+    /**
+     * @return The number of agents still steering by the field.
+     */
+    public int getAgentCount() {
+        return agents.size();
+    }
+    
+    /**
+     * @return The crowd being moved.
+     */
+    public Crowd getCrowd() {
+        return crowd;
+    }
+}
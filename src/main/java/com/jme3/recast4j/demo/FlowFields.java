@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * Caches FlowFields by goal poly and filter. Like the PathCache, fields are 
+ * dropped per tile: when tiles change, whether rebuilt or with new flags, 
+ * only the fields that reached or looked into one of them, or into a tile 
+ * next to one, are dropped and rebuilt on their next use. Fields for goals 
+ * elsewhere on the navMesh are kept.
+ * 
+ * All fields are built with one PolyIndex, which is only rebuilt when a 
+ * changed tile was rebuilt, added or removed, and one OpenList.
+ * 
+ * Must only be used from the thread that owns the navMesh.
+ */
+public class FlowFields implements NavMeshEditor.TileChangeListener {
+
+    private final NavMesh navMesh;
+    private final Map<Key, FlowField> fields;
+    //Null when a tile was rebuilt, indexed again on the next build.
+    private PolyIndex polys;
+    private final OpenList open = new OpenList();
+    private int builds;
+    private int invalidations;
+
+    /**
+     * @param navMesh The navMesh to build fields for.
+     * @param maxFields The number of fields kept, least recently used are 
+     * dropped first.
+     */
+    public FlowFields(NavMesh navMesh, int maxFields) {
+        this.navMesh = navMesh;
+        this.fields = new LinkedHashMap<Key, FlowField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FlowField> eldest) {
+                return size() > maxFields;
+            }
+        };
+    }
+    
+    /**
+     * Gets the field for a goal, building it if needed.
+     * 
+     * @param goalRef The goal poly.
+     * @param filter The filter. Fields are shared by filters with the same 
+     * fingerprint. Fields for filters that can't be fingerprinted are built 
+     * every call and never kept.
+     * @return The field or null if goalRef is not a valid poly.
+     */
+    public FlowField get(long goalRef, QueryFilter filter) {
+        long filterKey = PathCache.fingerprint(filter);
+        Key key = new Key(goalRef, filterKey);
+        FlowField field = filterKey == PathCache.UNCACHEABLE ? null : fields.get(key);
+        if (field == null) {
+            if (polys == null) {
+                polys = PolyIndex.build(navMesh);
+            }
+            field = FlowField.build(polys, goalRef, filter, open);
+            builds++;
+            if (field != null && filterKey != PathCache.UNCACHEABLE) {
+                fields.put(key, field);
+            }
+        }
+        return field;
+    }
+
+    @Override
+    public void onTilesChanged(int[] tiles) {
+        if (polys != null) {
+            for (int index: tiles) {
+                if (!polys.isCurrent(index)) {
+                    polys = null;
+                    break;
+                }
+            }
+        }
+        if (fields.isEmpty()) {
+            return;
+        }
+        
+        BitSet changed = new BitSet();
+        for (int index: tiles) {
+            changed.set(index);
+            //A rebuilt tile relinks with the tiles around it.
+            MeshTile tile = navMesh.getTile(index);
+            if (tile == null || tile.data == null || tile.data.header == null) {
+                continue;
+            }
+            for (int y = tile.data.header.y - 1; y <= tile.data.header.y + 1; y++) {
+                for (int x = tile.data.header.x - 1; x <= tile.data.header.x + 1; x++) {
+                    for (MeshTile neighbour: navMesh.getTilesAt(x, y)) {
+                        changed.set(neighbour.index);
+                    }
+                }
+            }
+        }
+        
+        int before = fields.size();
+        fields.values().removeIf(field -> field.touchesAny(changed));
+        invalidations += before - fields.size();
+    }
+    
+    /**
+     * @return The number of fields built, to compare against lookups.
+     */
+    public int getBuildCount() {
+        return builds;
+    }
+    
+    /**
+     * @return The number of fields dropped because a tile they use changed.
+     */
+    public int getInvalidations() {
+        return invalidations;
+    }
+    
+    private static class Key {
+        private final long goalRef;
+        private final long filterKey;
+
+        private Key(long goalRef, long filterKey) {
+            this.goalRef = goalRef;
+            this.filterKey = filterKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return goalRef == other.goalRef && filterKey == other.filterKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(goalRef) * 31 + Long.hashCode(filterKey);
+        }
+    }
+}
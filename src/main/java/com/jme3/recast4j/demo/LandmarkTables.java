@@ -0,0 +1,198 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * Distance tables for the ALT (A*, landmarks, triangle inequality) 
+ * heuristic. A few landmark polys spread over the map each get a table with 
+ * the cost from every poly to the landmark. For any poly n, goal g and 
+ * landmark L the triangle inequality gives 
+ * 
+ * cost(n, g) >= cost(n, L) - cost(g, L)
+ * 
+ * and the best of these over all landmarks is a lower bound that knows about 
+ * the water and door detours, where the straight line distance doesn't.
+ * 
+ * Landmarks are picked farthest point first on the poly centers, then the 
+ * tables are computed in parallel, one reverse Dijkstra each. Costs are 
+ * stored as unsigned shorts in steps of the largest cost / 65534, one 
+ * short per poly per landmark, rounded so the heuristic stays a lower bound.
+ * 
+ * The tables stay a lower bound for any filter that is at least as strict 
+ * and at least as costly as the one they were built with, so build them with 
+ * a filter that lets every poly through at the lowest area cost used. Flag 
+ * edits like doors then never invalidate them; rebuilt tiles do.
+ */
+public class LandmarkTables {
+
+    private static final int UNREACHABLE = 0xffff;
+    
+    private final PolyIndex polys;
+    private final long[] landmarks;
+    private final short[][] tables;
+    private final float step;
+
+    private LandmarkTables(PolyIndex polys, long[] landmarks, short[][] tables, float step) {
+        this.polys = polys;
+        this.landmarks = landmarks;
+        this.tables = tables;
+        this.step = step;
+    }
+    
+    /**
+     * Picks the landmarks and computes their tables.
+     * 
+     * @param navMesh The navMesh. Must not change during the build, so use a 
+     * snapshot when building off the render thread.
+     * @param count The number of landmarks.
+     * @param filter The filter, which should let every poly through.
+     * @return The tables.
+     */
+    public static LandmarkTables build(NavMesh navMesh, int count, QueryFilter filter) {
+        PolyIndex polys = PolyIndex.build(navMesh);
+        int[] picks = pickLandmarks(polys, Math.min(count, polys.size()));
+        
+        FlowField[] fields = IntStream.range(0, picks.length).parallel()
+                .mapToObj(l -> FlowField.build(polys, polys.getRef(picks[l]), filter))
+                .toArray(FlowField[]::new);
+        
+        float max = 0;
+        for (FlowField field: fields) {
+            for (int i = 0; i < polys.size(); i++) {
+                float c = field.getCostAt(i);
+                if (c != Float.MAX_VALUE) {
+                    max = Math.max(max, c);
+                }
+            }
+        }
+        float step = max > 0 ? max / (UNREACHABLE - 1) : 1;
+        
+        long[] landmarks = new long[picks.length];
+        short[][] tables = new short[picks.length][polys.size()];
+        for (int l = 0; l < picks.length; l++) {
+            landmarks[l] = polys.getRef(picks[l]);
+            for (int i = 0; i < polys.size(); i++) {
+                float c = fields[l].getCostAt(i);
+                int q = c == Float.MAX_VALUE ? UNREACHABLE : Math.min((int) (c / step), UNREACHABLE - 1);
+                tables[l][i] = (short) q;
+            }
+        }
+        return new LandmarkTables(polys, landmarks, tables, step);
+    }
+    
+    /**
+     * Farthest point picking on the xz plane: each landmark is the poly 
+     * farthest from the ones picked so far. The first is the poly farthest 
+     * from poly 0, so it lies on the edge of the map.
+     */
+    private static int[] pickLandmarks(PolyIndex polys, int count) {
+        int[] picks = new int[count];
+        if (count == 0) {
+            return picks;
+        }
+        float[] nearest = new float[polys.size()];
+        Arrays.fill(nearest, Float.MAX_VALUE);
+        
+        int current = farthest(polys, 0, nearest.clone());
+        for (int k = 0; k < count; k++) {
+            picks[k] = current;
+            current = farthest(polys, current, nearest);
+        }
+        return picks;
+    }
+    
+    /**
+     * Lowers each poly's nearest distance by its distance to the given poly.
+     * 
+     * @return The poly with the largest nearest distance.
+     */
+    private static int farthest(PolyIndex polys, int from, float[] nearest) {
+        float[] a = new float[3];
+        float[] b = new float[3];
+        polys.getCenter(from, a);
+        int farthest = 0;
+        for (int i = 0; i < polys.size(); i++) {
+            polys.getCenter(i, b);
+            float dx = a[0] - b[0];
+            float dz = a[2] - b[2];
+            float d = dx * dx + dz * dz;
+            nearest[i] = Math.min(nearest[i], d);
+            if (nearest[i] > nearest[farthest]) {
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+    
+    /**
+     * The ALT lower bound of the cost from poly n to the goal.
+     * 
+     * @param n The poly index.
+     * @param goal The goal poly index.
+     * @return The lower bound, 0 if no landmark helps.
+     */
+    public float heuristic(int n, int goal) {
+        float h = 0;
+        for (short[] table: tables) {
+            int qn = table[n] & 0xffff;
+            int qg = table[goal] & 0xffff;
+            if (qn == UNREACHABLE || qg == UNREACHABLE) {
+                continue;
+            }
+            //cost(n) >= qn * step and cost(goal) < (qg + 1) * step.
+            h = Math.max(h, (qn - qg - 1) * step);
+        }
+        return h;
+    }
+    
+    /**
+     * @return The poly numbering the tables use.
+     */
+    public PolyIndex getPolyIndex() {
+        return polys;
+    }
+    
+    /**
+     * @return The landmark polys.
+     */
+    public long[] getLandmarks() {
+        return landmarks;
+    }
+    
+    /**
+     * @return The memory used by the tables in bytes.
+     */
+    public int getTableBytes() {
+        return tables.length * polys.size() * 2;
+    }
+}
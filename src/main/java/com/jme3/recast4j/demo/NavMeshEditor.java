@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies poly flag and area edits in bulk and keeps a version counter for 
+ * every tile slot of the navMesh. Edits are collected in a Batch, sorted by 
+ * tile and written straight into the tile data so each tile is resolved once 
+ * no matter how many of its polys change. Every tile touched by an apply, or 
+ * rebuilt and reported with markTilesChanged, gets its version bumped and 
+ * listeners are told which tiles changed so caches, corridors and debug 
+ * meshes only have to refresh those tiles.
+ * 
+ * Must only be used from the thread that owns the navMesh.
+ */
+public class NavMeshEditor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NavMeshEditor.class.getName());
+    
+    private static final int OP_SET_FLAGS = 0;
+    private static final int OP_ADD_FLAGS = 1;
+    private static final int OP_REMOVE_FLAGS = 2;
+    private static final int OP_SET_AREA = 3;
+    
+    private final NavMesh navMesh;
+    private final int[] tileVersions;
+    private final List<TileChangeListener> listeners;
+
+    /**
+     * @param navMesh The navMesh to edit.
+     */
+    public NavMeshEditor(NavMesh navMesh) {
+        this.navMesh = navMesh;
+        this.tileVersions = new int[navMesh.getMaxTiles()];
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * @return A new empty batch of edits for this navMesh.
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+    
+    /**
+     * Sets the same flags on many polys at once.
+     * 
+     * @param refs The poly refs.
+     * @param count The number of refs to use.
+     * @param flags The flags to set.
+     * @return The number of polys changed.
+     */
+    public int setPolyFlags(long[] refs, int count, int flags) {
+        Batch batch = new Batch();
+        for (int i = 0; i < count; i++) {
+            batch.setFlags(refs[i], flags);
+        }
+        return batch.apply();
+    }
+    
+    /**
+     * Bumps the version of tiles that were changed outside the editor, for 
+     * example a tile rebuilt by the tile cache, and notifies listeners.
+     * 
+     * @param tiles The tile indices that changed.
+     */
+    public void markTilesChanged(int... tiles) {
+        for (int tile: tiles) {
+            tileVersions[tile]++;
+        }
+        fireTilesChanged(tiles);
+    }
+    
+    /**
+     * @param tileIndex The tile slot index, MeshTile.index.
+     * @return The number of times the tile has changed.
+     */
+    public int getTileVersion(int tileIndex) {
+        return tileVersions[tileIndex];
+    }
+    
+    /**
+     * @param ref A poly ref.
+     * @return The version of the tile the poly belongs to.
+     */
+    public int getTileVersionByRef(long ref) {
+        return tileVersions[navMesh.decodePolyIdTile(ref)];
+    }
+    
+    /**
+     * @return The navMesh being edited.
+     */
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+    
+    /**
+     * @param listener Notified with the tile indices after tiles change.
+     */
+    public void addTileChangeListener(TileChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeTileChangeListener(TileChangeListener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void fireTilesChanged(int[] tiles) {
+        for (TileChangeListener listener: listeners) {
+            listener.onTilesChanged(tiles);
+        }
+    }
+    
+    /**
+     * Notified after tiles of the navMesh change.
+     */
+    public interface TileChangeListener {
+        
+        /**
+         * @param tiles The indices of the tiles that changed. Do not modify.
+         */
+        void onTilesChanged(int[] tiles);
+    }
+    
+    /**
+     * A list of flag and area edits. Edits are applied in the order they were 
+     * added for any one poly. A batch can be reused after apply.
+     */
+    public class Batch {
+        private long[] refs = new long[64];
+        private int[] ops = new int[64];
+        private int[] values = new int[64];
+        private int count;
+        
+        private Batch() {
+        }
+        
+        /**
+         * @param ref The poly ref.
+         * @param flags The flags to replace the current flags with.
+         * @return This batch.
+         */
+        public Batch setFlags(long ref, int flags) {
+            return add(ref, OP_SET_FLAGS, flags);
+        }
+        
+        /**
+         * @param ref The poly ref.
+         * @param flags The flags to add to the current flags.
+         * @return This batch.
+         */
+        public Batch addFlags(long ref, int flags) {
+            return add(ref, OP_ADD_FLAGS, flags);
+        }
+        
+        /**
+         * @param ref The poly ref.
+         * @param flags The flags to remove from the current flags.
+         * @return This batch.
+         */
+        public Batch removeFlags(long ref, int flags) {
+            return add(ref, OP_REMOVE_FLAGS, flags);
+        }
+        
+        /**
+         * @param ref The poly ref.
+         * @param area The new area type.
+         * @return This batch.
+         */
+        public Batch setArea(long ref, int area) {
+            return add(ref, OP_SET_AREA, area);
+        }
+        
+        /**
+         * @return The number of edits in the batch.
+         */
+        public int size() {
+            return count;
+        }
+        
+        private Batch add(long ref, int op, int value) {
+            if (count == refs.length) {
+                refs = Arrays.copyOf(refs, count * 2);
+                ops = Arrays.copyOf(ops, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            refs[count] = ref;
+            ops[count] = op;
+            values[count] = value;
+            count++;
+            return this;
+        }
+        
+        /**
+         * Applies every edit, one tile at a time, then clears the batch. 
+         * Edits for refs that are no longer valid are skipped.
+         * 
+         * @return The number of edits applied.
+         */
+        public int apply() {
+            if (count == 0) {
+                return 0;
+            }
+            
+            /**
+             * Sort by tile, keeping the order of edits within a tile, by 
+             * packing the tile index above the edit index.
+             */
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) navMesh.decodePolyIdTile(refs[i]) << 32) | i;
+            }
+            Arrays.sort(order);
+            
+            int[] changed = new int[count];
+            int changedCount = 0;
+            int applied = 0;
+            int i = 0;
+            
+            while (i < count) {
+                int tileIndex = (int) (order[i] >>> 32);
+                MeshTile tile = tileIndex < tileVersions.length ? navMesh.getTile(tileIndex) : null;
+                boolean tileChanged = false;
+                
+                //Everything for this tile.
+                for (; i < count && (int) (order[i] >>> 32) == tileIndex; i++) {
+                    int e = (int) order[i];
+                    long ref = refs[e];
+                    int ip = navMesh.decodePolyIdPoly(ref);
+                    
+                    if (tile == null 
+                    ||  tile.data == null 
+                    ||  tile.salt != navMesh.decodePolyIdSalt(ref) 
+                    ||  ip >= tile.data.header.polyCount) {
+                        LOG.warn("Skipping invalid poly ref [{}].", ref);
+                        continue;
+                    }
+                    
+                    Poly p = tile.data.polys[ip];
+                    switch (ops[e]) {
+                        case OP_SET_FLAGS:
+                            p.flags = values[e];
+                            break;
+                        case OP_ADD_FLAGS:
+                            p.flags |= values[e];
+                            break;
+                        case OP_REMOVE_FLAGS:
+                            p.flags &= ~values[e];
+                            break;
+                        default:
+                            p.setArea(values[e]);
+                    }
+                    tileChanged = true;
+                    applied++;
+                }
+                
+                if (tileChanged) {
+                    tileVersions[tileIndex]++;
+                    changed[changedCount++] = tileIndex;
+                }
+            }
+            
+            count = 0;
+            
+            if (changedCount > 0) {
+                fireTilesChanged(Arrays.copyOf(changed, changedCount));
+            }
+            return applied;
+        }
+    }
+}
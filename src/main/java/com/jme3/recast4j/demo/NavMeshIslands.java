@@ -0,0 +1,381 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.recast4j.detour.DefaultQueryFilter;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * Knows which polys can reach each other so a path request between two 
+ * islands is turned down at once, instead of by an A* that fails only after 
+ * exploring everything it can reach.
+ * 
+ * Islands are kept per include and exclude flag set of DefaultQueryFilters, 
+ * and whether the filter lets polys without flags through, since a closed 
+ * door splits an island for the filters that exclude it. Each set is built 
+ * with its own filter made from those values, so changing the filter that 
+ * asked first doesn't change the set. Other filters can't be looked into 
+ * and are never turned down.
+ * 
+ * Each set is found with union-find in two levels. Inside a tile, polys 
+ * joined by links are merged into tile components, and the links that leave 
+ * the tile are kept per component. The tile components are then merged 
+ * across those border links. When the editor reports changed tiles, whether 
+ * rebuilt or with door flags toggled, only those tiles' components are 
+ * redone; the merge across tiles only has to look at border links.
+ * 
+ * Offmesh connections are merged both ways, so a one way jump can make two 
+ * islands look connected. That only means a request isn't turned down 
+ * early; the search still finds out.
+ * 
+ * Must only be used from the thread that owns the navMesh.
+ */
+public class NavMeshIslands implements NavMeshEditor.TileChangeListener {
+
+    private final NavMesh navMesh;
+    private final Map<FlagFilter, Islands> sets;
+
+    /**
+     * @param navMesh The navMesh.
+     */
+    public NavMeshIslands(NavMesh navMesh) {
+        this.navMesh = navMesh;
+        this.sets = new HashMap<>();
+    }
+    
+    /**
+     * Checks two polys can reach each other. Cheap enough to call before 
+     * every path request.
+     * 
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param filter The filter the path will be found with.
+     * @return False only if there is certainly no path.
+     */
+    public boolean isReachable(long startRef, long endRef, QueryFilter filter) {
+        Islands islands = getIslands(filter);
+        if (islands == null) {
+            return true;
+        }
+        int a = islands.getIsland(startRef);
+        int b = islands.getIsland(endRef);
+        //Unknown polys, such as refs from before a rebuild, can't be ruled out.
+        if (a == Islands.UNKNOWN || b == Islands.UNKNOWN) {
+            return true;
+        }
+        return a != Islands.BLOCKED && a == b;
+    }
+    
+    /**
+     * @param ref A poly.
+     * @param filter The filter.
+     * @return The island id of the poly for the filter, Islands.BLOCKED if 
+     * the filter doesn't pass it or Islands.UNKNOWN if not known.
+     */
+    public int getIsland(long ref, QueryFilter filter) {
+        Islands islands = getIslands(filter);
+        return islands == null ? Islands.UNKNOWN : islands.getIsland(ref);
+    }
+    
+    private Islands getIslands(QueryFilter filter) {
+        if (!(filter instanceof DefaultQueryFilter)) {
+            return null;
+        }
+        DefaultQueryFilter f = (DefaultQueryFilter) filter;
+        FlagFilter key = new FlagFilter(f.getIncludeFlags(), f.getExcludeFlags(), CompiledQueryFilter.passesUnflagged(f));
+        Islands islands = sets.get(key);
+        if (islands == null) {
+            islands = new Islands(navMesh, key);
+            sets.put(key, islands);
+        }
+        return islands;
+    }
+
+    @Override
+    public void onTilesChanged(int[] tiles) {
+        for (Islands islands: sets.values()) {
+            islands.update(tiles);
+        }
+    }
+    
+    /**
+     * Passes polys by a fixed flag set. Never changes, so it doubles as the 
+     * key of its islands.
+     */
+    private static class FlagFilter implements QueryFilter {
+        private final int includeFlags;
+        private final int excludeFlags;
+        private final boolean passUnflagged;
+
+        private FlagFilter(int includeFlags, int excludeFlags, boolean passUnflagged) {
+            this.includeFlags = includeFlags;
+            this.excludeFlags = excludeFlags;
+            this.passUnflagged = passUnflagged;
+        }
+
+        @Override
+        public boolean passFilter(long ref, MeshTile tile, Poly poly) {
+            if (poly.flags == 0) {
+                return passUnflagged;
+            }
+            return (poly.flags & includeFlags) != 0 && (poly.flags & excludeFlags) == 0;
+        }
+
+        @Override
+        public float getCost(float[] pa, float[] pb, long prevRef, MeshTile prevTile, Poly prevPoly, long curRef,
+                MeshTile curTile, Poly curPoly, long nextRef, MeshTile nextTile, Poly nextPoly) {
+            //Islands only ask what passes.
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FlagFilter)) {
+                return false;
+            }
+            FlagFilter other = (FlagFilter) obj;
+            return includeFlags == other.includeFlags && excludeFlags == other.excludeFlags 
+                    && passUnflagged == other.passUnflagged;
+        }
+
+        @Override
+        public int hashCode() {
+            return (includeFlags * 31 + excludeFlags) * 31 + (passUnflagged ? 1 : 0);
+        }
+    }
+    
+    /**
+     * The islands of one flag set.
+     */
+    public static class Islands {
+        
+        public static final int UNKNOWN = -1;
+        public static final int BLOCKED = -2;
+        
+        private final NavMesh navMesh;
+        private final QueryFilter filter;
+        //Per tile slot: the salt when built and each poly's component, -1 if filtered out.
+        private final int[] tileSalt;
+        private final int[][] polyComp;
+        private final int[] compCount;
+        //Per tile slot: packed (component, other poly ref) pairs of border links.
+        private final long[][] borders;
+        //Per tile slot: the first global component.
+        private final int[] compBase;
+        private int[] island;
+
+        private Islands(NavMesh navMesh, QueryFilter filter) {
+            this.navMesh = navMesh;
+            this.filter = filter;
+            int maxTiles = navMesh.getMaxTiles();
+            this.tileSalt = new int[maxTiles];
+            this.polyComp = new int[maxTiles][];
+            this.compCount = new int[maxTiles];
+            this.borders = new long[maxTiles][];
+            this.compBase = new int[maxTiles + 1];
+            
+            for (int t = 0; t < maxTiles; t++) {
+                buildTile(t);
+            }
+            mergeTiles();
+        }
+        
+        private void update(int[] tiles) {
+            for (int t: tiles) {
+                buildTile(t);
+            }
+            mergeTiles();
+        }
+        
+        /**
+         * Finds the components inside one tile and its border links.
+         */
+        private void buildTile(int t) {
+            MeshTile tile = navMesh.getTile(t);
+            if (tile.data == null || tile.data.header == null) {
+                polyComp[t] = new int[0];
+                compCount[t] = 0;
+                borders[t] = new long[0];
+                return;
+            }
+            
+            int polyCount = tile.data.header.polyCount;
+            long base = navMesh.getPolyRefBase(tile);
+            tileSalt[t] = tile.salt;
+            int[] parent = new int[polyCount];
+            boolean[] pass = new boolean[polyCount];
+            for (int p = 0; p < polyCount; p++) {
+                parent[p] = p;
+                pass[p] = filter.passFilter(base | p, tile, tile.data.polys[p]);
+            }
+            
+            long[] border = new long[16];
+            int borderCount = 0;
+            for (int p = 0; p < polyCount; p++) {
+                if (!pass[p]) {
+                    continue;
+                }
+                for (int link = PolyLinks.first(tile, p); !PolyLinks.isEnd(link); link = PolyLinks.next(tile, link)) {
+                    long ref = PolyLinks.ref(tile, link);
+                    if (ref == 0) {
+                        continue;
+                    }
+                    if (navMesh.decodePolyIdTile(ref) == t) {
+                        int q = navMesh.decodePolyIdPoly(ref);
+                        if (pass[q]) {
+                            union(parent, p, q);
+                        }
+                    } else {
+                        if (borderCount * 2 == border.length) {
+                            border = Arrays.copyOf(border, border.length * 2);
+                        }
+                        border[borderCount * 2] = p;
+                        border[borderCount * 2 + 1] = ref;
+                        borderCount++;
+                    }
+                }
+            }
+            
+            //Number the components 0..n-1.
+            int[] comp = new int[polyCount];
+            int[] rootComp = new int[polyCount];
+            Arrays.fill(rootComp, -1);
+            int count = 0;
+            for (int p = 0; p < polyCount; p++) {
+                if (!pass[p]) {
+                    comp[p] = -1;
+                    continue;
+                }
+                int root = find(parent, p);
+                if (rootComp[root] == -1) {
+                    rootComp[root] = count++;
+                }
+                comp[p] = rootComp[root];
+            }
+            
+            //Store border links by component rather than poly.
+            long[] packed = Arrays.copyOf(border, borderCount * 2);
+            for (int i = 0; i < borderCount; i++) {
+                packed[i * 2] = comp[(int) packed[i * 2]];
+            }
+            
+            polyComp[t] = comp;
+            compCount[t] = count;
+            borders[t] = packed;
+        }
+        
+        /**
+         * Merges the tile components across the border links.
+         */
+        private void mergeTiles() {
+            int maxTiles = compCount.length;
+            for (int t = 0; t < maxTiles; t++) {
+                compBase[t + 1] = compBase[t] + compCount[t];
+            }
+            
+            int[] parent = new int[compBase[maxTiles]];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = i;
+            }
+            
+            for (int t = 0; t < maxTiles; t++) {
+                long[] border = borders[t];
+                for (int i = 0; i < border.length; i += 2) {
+                    int comp = (int) border[i];
+                    int other = getComp(border[i + 1]);
+                    if (other >= 0) {
+                        union(parent, compBase[t] + comp, other);
+                    }
+                }
+            }
+            
+            int[] ids = new int[parent.length];
+            for (int i = 0; i < parent.length; i++) {
+                ids[i] = find(parent, i);
+            }
+            island = ids;
+        }
+        
+        //The global component of a poly, -1 if filtered out or not known.
+        private int getComp(long ref) {
+            int t = navMesh.decodePolyIdTile(ref);
+            int p = navMesh.decodePolyIdPoly(ref);
+            if (t < 0 || t >= polyComp.length || navMesh.decodePolyIdSalt(ref) != tileSalt[t] 
+            ||  p >= polyComp[t].length || polyComp[t][p] < 0) {
+                return -1;
+            }
+            return compBase[t] + polyComp[t][p];
+        }
+        
+        /**
+         * @param ref A poly.
+         * @return The island id, BLOCKED if the filter doesn't pass the poly 
+         * or UNKNOWN if the ref is stale.
+         */
+        public int getIsland(long ref) {
+            int t = navMesh.decodePolyIdTile(ref);
+            int p = navMesh.decodePolyIdPoly(ref);
+            if (ref == 0 || t < 0 || t >= polyComp.length || navMesh.decodePolyIdSalt(ref) != tileSalt[t] 
+            ||  p >= polyComp[t].length) {
+                return UNKNOWN;
+            }
+            if (polyComp[t][p] < 0) {
+                return BLOCKED;
+            }
+            return island[compBase[t] + polyComp[t][p]];
+        }
+        
+        private static int find(int[] parent, int i) {
+            while (parent[i] != i) {
+                //Path halving.
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+        
+        private static void union(int[] parent, int a, int b) {
+            int ra = find(parent, a);
+            int rb = find(parent, b);
+            if (ra != rb) {
+                //Lower root wins so ids stay stable between merges.
+                if (ra < rb) {
+                    parent[rb] = ra;
+                } else {
+                    parent[ra] = rb;
+                }
+            }
+        }
+    }
+}
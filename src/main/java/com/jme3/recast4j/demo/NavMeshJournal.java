@@ -0,0 +1,311 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.recast4j.detour.MeshData;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.io.MeshDataReader;
+import org.recast4j.detour.io.MeshDataWriter;
+import org.recast4j.detour.io.MeshSetReader;
+import org.recast4j.detour.io.MeshSetWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves a navMesh as a full MeshSet file plus an append only journal of the 
+ * tiles that changed since. Each save compares the tile versions of a 
+ * snapshot with the versions last written and appends only those tiles. A 
+ * tile that was rebuilt (new ref) is written whole, a tile that only had flag 
+ * or area edits is written as its poly flags and areas. Once the journal 
+ * grows past the compaction size the full file is rewritten and the journal 
+ * emptied.
+ * 
+ * Saves read from a NavMeshSnapshots.Snapshot so they can run on any thread. 
+ * Calls to save and compact are synchronized.
+ */
+public class NavMeshJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NavMeshJournal.class.getName());
+    
+    private static final int RECORD_TILE = 1;
+    private static final int RECORD_FLAGS = 2;
+    private static final int RECORD_REMOVE = 3;
+    //Bytes per poly in a flags record, a short of flags and a byte of area.
+    private static final int FLAGS_BYTES = 3;
+    
+    private final File fullFile;
+    private final File journalFile;
+    private final long compactSize;
+    //What is in fullFile + journalFile. Null until the first full save.
+    private int[] savedVersions;
+    private long[] savedRefs;
+    private long savedSnapshot = -1;
+
+    /**
+     * @param fullFile The full MeshSet file.
+     * @param journalFile The journal of changes since the full file.
+     * @param compactSize Journal size in bytes that triggers a full save.
+     */
+    public NavMeshJournal(File fullFile, File journalFile, long compactSize) {
+        this.fullFile = fullFile;
+        this.journalFile = journalFile;
+        this.compactSize = compactSize;
+    }
+    
+    /**
+     * Appends the tiles that changed since the last save. Does a full save 
+     * instead if there is none yet or the journal is too large.
+     * 
+     * @param snapshot The snapshot to save.
+     * @return The number of tiles written to the journal, -1 for a full save.
+     * @throws IOException If writing fails.
+     */
+    public synchronized int save(NavMeshSnapshots.Snapshot snapshot) throws IOException {
+        if (snapshot.getVersion() == savedSnapshot) {
+            return 0;
+        }
+        
+        if (savedVersions == null || journalFile.length() > compactSize) {
+            compact(snapshot);
+            return -1;
+        }
+        
+        NavMesh navMesh = snapshot.getNavMesh();
+        int written = 0;
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)))) {
+            for (int i = 0; i < savedVersions.length; i++) {
+                if (snapshot.getTileVersion(i) == savedVersions[i]) {
+                    continue;
+                }
+                
+                MeshTile tile = navMesh.getTile(i);
+                long ref = tile.data == null ? 0 : navMesh.getTileRef(tile);
+                
+                if (ref == 0) {
+                    if (savedRefs[i] != 0) {
+                        out.writeByte(RECORD_REMOVE);
+                        out.writeLong(savedRefs[i]);
+                    }
+                } else if (ref != savedRefs[i]) {
+                    writeTile(out, ref, tile.data);
+                } else {
+                    writeFlags(out, ref, tile.data);
+                }
+                
+                savedVersions[i] = snapshot.getTileVersion(i);
+                savedRefs[i] = ref;
+                written++;
+            }
+        }
+        
+        savedSnapshot = snapshot.getVersion();
+        LOG.info("Journaled [{}] tiles, journal size [{}].", written, journalFile.length());
+        return written;
+    }
+    
+    /**
+     * Writes the whole snapshot to the full file and empties the journal.
+     * 
+     * @param snapshot The snapshot to save.
+     * @throws IOException If writing fails.
+     */
+    public synchronized void compact(NavMeshSnapshots.Snapshot snapshot) throws IOException {
+        NavMesh navMesh = snapshot.getNavMesh();
+        
+        //Write to a temp file first so a failed save never loses the old one.
+        File temp = new File(fullFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            new MeshSetWriter().write(out, navMesh, ByteOrder.BIG_ENDIAN, false);
+        }
+        Files.move(temp.toPath(), fullFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        
+        //Everything is in the full file now.
+        new FileOutputStream(journalFile).close();
+        
+        int maxTiles = navMesh.getMaxTiles();
+        savedVersions = new int[maxTiles];
+        savedRefs = new long[maxTiles];
+        for (int i = 0; i < maxTiles; i++) {
+            MeshTile tile = navMesh.getTile(i);
+            savedVersions[i] = snapshot.getTileVersion(i);
+            savedRefs[i] = tile.data == null ? 0 : navMesh.getTileRef(tile);
+        }
+        savedSnapshot = snapshot.getVersion();
+        LOG.info("Compacted navMesh to [{}].", fullFile);
+    }
+    
+    /**
+     * Reads the full file and replays its journal on top. A journal older than 
+     * the full file belongs to an earlier full file that was since overwritten 
+     * by something other than compact() so it is ignored.
+     * 
+     * @param fullFile The full MeshSet file.
+     * @param journalFile The journal of changes since the full file.
+     * @param maxVertsPerPoly The max verts per poly of the navMesh.
+     * @return The navMesh as of the last save.
+     * @throws IOException If reading fails.
+     */
+    public static NavMesh load(File fullFile, File journalFile, int maxVertsPerPoly) throws IOException {
+        NavMesh navMesh;
+        try (FileInputStream in = new FileInputStream(fullFile)) {
+            navMesh = new MeshSetReader().read(in, maxVertsPerPoly);
+        }
+        
+        if (journalFile.exists() && journalFile.lastModified() < fullFile.lastModified()) {
+            LOG.warn("Journal [{}] is older than [{}], ignoring it.", journalFile, fullFile);
+            return navMesh;
+        }
+        
+        int applied = replay(journalFile, navMesh, maxVertsPerPoly);
+        if (applied > 0) {
+            LOG.info("Replayed [{}] journal records onto [{}].", applied, fullFile);
+        }
+        return navMesh;
+    }
+    
+    /**
+     * Applies a journal to a navMesh loaded from the full file. Records are 
+     * applied in order so later records win. Each record is read whole before 
+     * any of it is applied so a partly written last record, from a crash 
+     * during a save, is ignored and leaves the navMesh untouched.
+     * 
+     * @param journalFile The journal to read.
+     * @param navMesh The navMesh read from the full file.
+     * @param maxVertsPerPoly The max verts per poly of the navMesh.
+     * @return The number of records applied.
+     * @throws IOException If reading fails.
+     */
+    public static int replay(File journalFile, NavMesh navMesh, int maxVertsPerPoly) throws IOException {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        
+        int applied = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException ex) {
+                    break;
+                }
+                
+                try {
+                    long ref = in.readLong();
+                    if (type == RECORD_TILE) {
+                        byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        MeshData data = new MeshDataReader().read(new ByteArrayInputStream(bytes), maxVertsPerPoly);
+                        removeTileAt(navMesh, ref);
+                        navMesh.addTile(data, 0, ref);
+                    } else if (type == RECORD_FLAGS) {
+                        byte[] bytes = new byte[in.readInt() * FLAGS_BYTES];
+                        in.readFully(bytes);
+                        applyFlags(bytes, navMesh, ref);
+                    } else if (type == RECORD_REMOVE) {
+                        removeTileAt(navMesh, ref);
+                    } else {
+                        LOG.error("Unknown journal record [{}], stopping replay.", type);
+                        break;
+                    }
+                    applied++;
+                } catch (EOFException ex) {
+                    LOG.warn("Journal ends with a partial record, ignoring it.");
+                    break;
+                }
+            }
+        }
+        return applied;
+    }
+    
+    //Tile record: ref, length, MeshData bytes.
+    private static void writeTile(DataOutputStream out, long ref, MeshData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MeshDataWriter().write(bytes, data, ByteOrder.BIG_ENDIAN, false);
+        out.writeByte(RECORD_TILE);
+        out.writeLong(ref);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+    
+    //Flags record: ref, poly count, then flags and area of each poly.
+    private static void writeFlags(DataOutputStream out, long ref, MeshData data) throws IOException {
+        int polyCount = data.header.polyCount;
+        out.writeByte(RECORD_FLAGS);
+        out.writeLong(ref);
+        out.writeInt(polyCount);
+        for (int i = 0; i < polyCount; i++) {
+            out.writeShort(data.polys[i].flags);
+            out.writeByte(data.polys[i].getArea());
+        }
+    }
+    
+    //Applies the flags and areas of a complete flags record.
+    private static void applyFlags(byte[] bytes, NavMesh navMesh, long ref) {
+        int polyCount = bytes.length / FLAGS_BYTES;
+        MeshTile tile = navMesh.getTile(navMesh.decodePolyIdTile(ref));
+        //Tile must be the one the record was written for.
+        if (tile.data == null 
+        ||  navMesh.getTileRef(tile) != ref 
+        ||  tile.data.header.polyCount != polyCount) {
+            LOG.warn("Skipping flags for missing tile [{}].", ref);
+            return;
+        }
+        
+        for (int i = 0; i < polyCount; i++) {
+            int b = i * FLAGS_BYTES;
+            Poly p = tile.data.polys[i];
+            p.flags = (bytes[b] & 0xff) << 8 | (bytes[b + 1] & 0xff);
+            p.setArea(bytes[b + 2] & 0xff);
+        }
+    }
+    
+    private static void removeTileAt(NavMesh navMesh, long ref) {
+        MeshTile tile = navMesh.getTile(navMesh.decodePolyIdTile(ref));
+        if (tile.data != null) {
+            navMesh.removeTile(navMesh.getTileRef(tile));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.NavMeshQuery;
+
+/**
+ * Listener for the background loading of the NavState navigation mesh. All 
+ * methods are called from the render thread so it is safe to touch the scene 
+ * graph or any AppState from them.
+ */
+public interface NavMeshLoadListener {
+    
+    /**
+     * Called once, as soon as the first tile has been added to the navMesh. 
+     * From this point on the navMesh and query can be used for path finding 
+     * even though tiles further away from the player may still be loading.
+     * 
+     * @param navMesh The navMesh being loaded.
+     * @param query The query object for the navMesh.
+     */
+    public void onNavMeshReady(NavMesh navMesh, NavMeshQuery query);
+    
+    /**
+     * Called every time a tile has been added to the navMesh.
+     * 
+     * @param completed The number of tiles completed so far.
+     * @param total The total number of tiles to load.
+     */
+    public void onProgress(int completed, int total);
+    
+    /**
+     * Called once all tiles have been added to the navMesh.
+     * 
+     * @param navMesh The fully loaded navMesh.
+     */
+    public void onNavMeshLoaded(NavMesh navMesh);
+    
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.NavMeshQuery;
+
+/**
+ * Hands out NavMeshQuery objects so no code has to create its own. A query 
+ * keeps node pools and a priority queue that are cleared at the start of 
+ * every search, so one query can run any number of searches but only one at 
+ * a time, and only for the navMesh it was made with.
+ * 
+ * There are two ways to get one:
+ * 
+ * get() returns the calling thread's query and is meant for searches that 
+ * finish before the method returns, for example on the render thread or on 
+ * a path worker. Snapshots take turns between a few mirror navMeshes, so 
+ * each thread keeps a query per navMesh for the last MAX_THREAD_QUERIES it 
+ * asked for. Older ones are dropped so retired mirrors aren't kept alive.
+ * 
+ * borrow() and release() are for searches that span several calls, like a 
+ * sliced search run a little each frame. Released queries are kept for the 
+ * next borrow as long as they are for the current navMesh. The number kept 
+ * follows the most queries that were out at once since the last trim(), so 
+ * a burst of requests doesn't hold on to queries forever.
+ * 
+ * recast4j grows its node pools on demand, so there is no size to tune per 
+ * query; reusing them is what saves the allocations.
+ */
+public class NavMeshQueryPool {
+
+    //Queries kept per thread: the live navMesh and every snapshot mirror.
+    public static final int MAX_THREAD_QUERIES = NavMeshSnapshots.MAX_MIRRORS + 1;
+    
+    private final ThreadLocal<Map<NavMesh, NavMeshQuery>> threadQueries;
+    private final ArrayDeque<NavMeshQuery> free;
+    private NavMesh freeNavMesh;
+    private int borrowed;
+    private int peakBorrowed;
+    private final AtomicInteger created;
+
+    public NavMeshQueryPool() {
+        this.threadQueries = ThreadLocal.withInitial(() -> new LinkedHashMap<NavMesh, NavMeshQuery>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<NavMesh, NavMeshQuery> eldest) {
+                return size() > MAX_THREAD_QUERIES;
+            }
+        });
+        this.free = new ArrayDeque<>();
+        this.created = new AtomicInteger();
+    }
+    
+    /**
+     * Gets the calling thread's query for a navMesh. It must not be passed 
+     * to other threads. Once the thread has asked for more than 
+     * MAX_THREAD_QUERIES other navMeshes since, the query is dropped, though 
+     * a caller that kept it can still use it.
+     * 
+     * @param navMesh The navMesh to query.
+     * @return The thread's query for the navMesh.
+     */
+    public NavMeshQuery get(NavMesh navMesh) {
+        //NavMesh doesn't override equals so this is by identity.
+        return threadQueries.get().computeIfAbsent(navMesh, this::create);
+    }
+    
+    /**
+     * Takes a query out of the pool. It must be given back with release() 
+     * when the search is done.
+     * 
+     * @param navMesh The navMesh to query.
+     * @return A query nobody else is using.
+     */
+    public synchronized NavMeshQuery borrow(NavMesh navMesh) {
+        //Queries are tied to their navMesh.
+        if (navMesh != freeNavMesh) {
+            free.clear();
+            freeNavMesh = navMesh;
+        }
+        borrowed++;
+        peakBorrowed = Math.max(peakBorrowed, borrowed);
+        return free.isEmpty() ? create(navMesh) : free.pop();
+    }
+    
+    /**
+     * Gives back a query from borrow(). It is dropped if the pool moved on 
+     * to another navMesh or already keeps enough.
+     * 
+     * @param navMesh The navMesh the query was borrowed for.
+     * @param query The query.
+     */
+    public synchronized void release(NavMesh navMesh, NavMeshQuery query) {
+        borrowed--;
+        if (navMesh == freeNavMesh && free.size() < peakBorrowed) {
+            free.push(query);
+        }
+    }
+    
+    /**
+     * Starts a new usage period. Free queries beyond the number out right 
+     * now are dropped.
+     */
+    public synchronized void trim() {
+        peakBorrowed = borrowed;
+        while (free.size() > peakBorrowed) {
+            free.pop();
+        }
+    }
+    
+    /**
+     * @return The number of queries created, to see if reuse is working.
+     */
+    public int getCreatedCount() {
+        return created.get();
+    }
+    
+    /**
+     * @return The number of free queries kept.
+     */
+    public synchronized int getFreeCount() {
+        return free.size();
+    }
+    
+    private NavMeshQuery create(NavMesh navMesh) {
+        created.incrementAndGet();
+        return new NavMeshQuery(navMesh);
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.recast4j.detour.MeshData;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+
+/**
+ * Publishes read only copies of a live navMesh so path queries can run on 
+ * other threads while the live navMesh has tiles added, removed and flags 
+ * edited on the render thread.
+ * 
+ * Each snapshot is backed by a mirror, a NavMesh of its own that owns a copy 
+ * of every tile's data. Linking writes into the tile data (offmesh connection 
+ * end points are snapped into the verts of both tiles) so no data is shared 
+ * between mirrors or with the live navMesh. Publishing doesn't build a new 
+ * NavMesh. It takes the oldest mirror no reader has pinned and brings it up 
+ * to date: tiles that only had flags or areas edited get them copied in 
+ * place, tiles that were added, removed or rebuilt are copied and re-added 
+ * under their old refs, which relinks just that tile and its neighbours. Poly 
+ * refs are the same in every snapshot and in the live navMesh. With one 
+ * reader at a time this settles on two mirrors that take turns.
+ * 
+ * A new mirror, which copies and links every tile, is only made when every 
+ * mirror is pinned and there are fewer than MAX_MIRRORS. At the cap the 
+ * publish waits, the tiles stay dirty and the next publish tries again. 
+ * Unpinned mirrors beyond SPARE_MIRRORS are dropped, so after a burst of 
+ * long queries memory goes back to the current mirror and a spare.
+ * 
+ * Readers on other threads call acquire() once, use that snapshot for the 
+ * whole query, creating their own NavMeshQuery for it, then release() it. A 
+ * mirror is never written to while a snapshot of it is pinned. Writers report 
+ * changed tiles through onTilesChanged and call publish() from the thread 
+ * that owns the live navMesh.
+ */
+public class NavMeshSnapshots implements NavMeshEditor.TileChangeListener {
+
+    //Most mirrors kept at once, counting the current one.
+    public static final int MAX_MIRRORS = 4;
+    //Unpinned mirrors kept for reuse besides the current one.
+    public static final int SPARE_MIRRORS = 1;
+
+    private final NavMesh live;
+    private final AtomicReference<Snapshot> current;
+    //Writer side state, only touched by the owner of the live navMesh.
+    private final long[] tileRefs;
+    private final int[] tileVersions;
+    private final boolean[] dirty;
+    //Snapshots that were replaced, their mirrors are reused once unpinned.
+    private final List<Snapshot> retired;
+    private boolean anyDirty;
+    private long version;
+
+    /**
+     * @param live The navMesh to take snapshots of. Every tile starts dirty 
+     * so the first publish copies all of them.
+     */
+    public NavMeshSnapshots(NavMesh live) {
+        this.live = live;
+        int maxTiles = live.getMaxTiles();
+        this.current = new AtomicReference<>();
+        this.tileRefs = new long[maxTiles];
+        this.tileVersions = new int[maxTiles];
+        this.dirty = new boolean[maxTiles];
+        this.retired = new ArrayList<>();
+        Arrays.fill(dirty, true);
+        this.anyDirty = true;
+    }
+
+    @Override
+    public void onTilesChanged(int[] changed) {
+        for (int tile: changed) {
+            dirty[tile] = true;
+        }
+        anyDirty = true;
+    }
+    
+    /**
+     * The navMesh of the returned snapshot may be rewritten by the next 
+     * publish, so only the thread that owns the live navMesh should use it. 
+     * Other threads must use acquire().
+     * 
+     * @return The latest published snapshot or null if nothing has been 
+     * published yet.
+     */
+    public Snapshot get() {
+        return current.get();
+    }
+    
+    /**
+     * Pins the latest snapshot so its navMesh isn't reused until release() is 
+     * called. Safe to call from any thread.
+     * 
+     * @return The pinned snapshot or null if nothing has been published yet.
+     */
+    public Snapshot acquire() {
+        while (true) {
+            Snapshot snapshot = current.get();
+            if (snapshot == null) {
+                return null;
+            }
+            snapshot.pins.incrementAndGet();
+            //Replaced before the pin landed, the mirror may already be reused.
+            if (current.get() == snapshot) {
+                return snapshot;
+            }
+            snapshot.release();
+        }
+    }
+    
+    /**
+     * @return True if tiles changed since the last publish.
+     */
+    public boolean isDirty() {
+        return anyDirty;
+    }
+    
+    /**
+     * Brings an unpinned mirror up to date with the dirty tiles of the live 
+     * navMesh and publishes it as a new snapshot. Does nothing if no tile 
+     * changed, or if every mirror is pinned and there are MAX_MIRRORS of 
+     * them, in which case isDirty() stays true. Must be called from the 
+     * thread that owns the live navMesh.
+     * 
+     * @return The current snapshot.
+     */
+    public Snapshot publish() {
+        if (!anyDirty) {
+            return current.get();
+        }
+        
+        Mirror mirror = takeUnpinnedMirror();
+        if (mirror == null) {
+            if (getMirrorCount() >= MAX_MIRRORS) {
+                return current.get();
+            }
+            mirror = new Mirror(live);
+        }
+        
+        for (int i = 0; i < dirty.length; i++) {
+            if (dirty[i]) {
+                dirty[i] = false;
+                MeshTile tile = live.getTile(i);
+                tileRefs[i] = liveData(tile) == null ? 0 : live.getTileRef(tile);
+                tileVersions[i]++;
+            }
+        }
+        anyDirty = false;
+        mirror.update(live, tileRefs, tileVersions);
+        
+        Snapshot snapshot = new Snapshot(mirror, ++version, Arrays.copyOf(tileVersions, tileVersions.length));
+        Snapshot old = current.getAndSet(snapshot);
+        if (old != null) {
+            retired.add(old);
+        }
+        dropSpareMirrors();
+        return snapshot;
+    }
+    
+    /**
+     * Must be called from the thread that owns the live navMesh.
+     * 
+     * @return The number of mirrors kept, pinned or not, counting the 
+     * current one.
+     */
+    public int getMirrorCount() {
+        return retired.size() + (current.get() == null ? 0 : 1);
+    }
+    
+    //Removes the oldest retired snapshot nobody pins and returns its mirror.
+    private Mirror takeUnpinnedMirror() {
+        Iterator<Snapshot> iterator = retired.iterator();
+        while (iterator.hasNext()) {
+            Snapshot old = iterator.next();
+            if (old.pins.get() == 0) {
+                iterator.remove();
+                return old.mirror;
+            }
+        }
+        return null;
+    }
+    
+    //Lets go of unpinned mirrors past SPARE_MIRRORS, newest are kept since 
+    //they have the fewest tiles to catch up on.
+    private void dropSpareMirrors() {
+        int spare = 0;
+        for (int i = retired.size() - 1; i >= 0; i--) {
+            if (retired.get(i).pins.get() == 0 && ++spare > SPARE_MIRRORS) {
+                retired.remove(i);
+            }
+        }
+    }
+    
+    //The tile's data or null if the tile slot is empty.
+    private static MeshData liveData(MeshTile tile) {
+        return tile == null || tile.data == null || tile.data.header == null ? null : tile.data;
+    }
+    
+    /**
+     * Copies the parts of the tile data that get written to after a tile is 
+     * added, the polys (flags and areas) and the verts (offmesh connection 
+     * end points are snapped when linking). Everything else is shared.
+     */
+    private static MeshData copyOf(MeshData data) {
+        MeshData copy = new MeshData();
+        copy.header = data.header;
+        copy.verts = Arrays.copyOf(data.verts, data.verts.length);
+        copy.polys = new Poly[data.polys.length];
+        for (int i = 0; i < data.polys.length; i++) {
+            Poly src = data.polys[i];
+            if (src == null) {
+                continue;
+            }
+            Poly p = new Poly(src.index, src.verts.length);
+            System.arraycopy(src.verts, 0, p.verts, 0, src.verts.length);
+            System.arraycopy(src.neis, 0, p.neis, 0, src.neis.length);
+            p.flags = src.flags;
+            p.vertCount = src.vertCount;
+            p.setArea(src.getArea());
+            p.setType(src.getType());
+            copy.polys[i] = p;
+        }
+        copy.detailMeshes = data.detailMeshes;
+        copy.detailVerts = data.detailVerts;
+        copy.detailTris = data.detailTris;
+        copy.bvTree = data.bvTree;
+        copy.offMeshCons = data.offMeshCons;
+        return copy;
+    }
+    
+    /**
+     * A NavMesh kept in step with the live navMesh one publish at a time. 
+     * Only written by the publisher while no snapshot of it is pinned.
+     */
+    private static class Mirror {
+        private final NavMesh navMesh;
+        //The live tile data each copy was made from, to tell flag edits from 
+        //rebuilds.
+        private final MeshData[] sources;
+        private final long[] refs;
+        //The tile versions the mirror is up to date with.
+        private final int[] versions;
+
+        private Mirror(NavMesh live) {
+            int maxTiles = live.getMaxTiles();
+            this.navMesh = new NavMesh(live.getParams(), live.getMaxVertsPerPoly());
+            this.sources = new MeshData[maxTiles];
+            this.refs = new long[maxTiles];
+            this.versions = new int[maxTiles];
+            //Every tile is out of date.
+            Arrays.fill(versions, -1);
+        }
+        
+        private void update(NavMesh live, long[] tileRefs, int[] tileVersions) {
+            for (int i = 0; i < versions.length; i++) {
+                if (versions[i] == tileVersions[i]) {
+                    continue;
+                }
+                versions[i] = tileVersions[i];
+                MeshData src = liveData(live.getTile(i));
+                
+                //Same tile, only flags or areas were edited. No relinking.
+                if (src != null && src == sources[i] && refs[i] == tileRefs[i]) {
+                    Poly[] from = src.polys;
+                    Poly[] to = navMesh.getTile(i).data.polys;
+                    for (int p = 0; p < from.length; p++) {
+                        if (from[p] != null) {
+                            to[p].flags = from[p].flags;
+                            to[p].setArea(from[p].getArea());
+                        }
+                    }
+                    continue;
+                }
+                
+                //Added, removed or rebuilt. Unlinks and relinks the neighbours.
+                if (refs[i] != 0) {
+                    navMesh.removeTile(refs[i]);
+                }
+                sources[i] = src;
+                refs[i] = src == null ? 0 : tileRefs[i];
+                if (src != null) {
+                    navMesh.addTile(copyOf(src), 0, refs[i]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A view of the navMesh at one point in time. Its navMesh must not be 
+     * modified and is only safe to use while the snapshot is pinned, see 
+     * acquire(), or on the thread that publishes.
+     */
+    public static class Snapshot {
+        private final Mirror mirror;
+        private final long version;
+        private final int[] tileVersions;
+        private final AtomicInteger pins;
+
+        private Snapshot(Mirror mirror, long version, int[] tileVersions) {
+            this.mirror = mirror;
+            this.version = version;
+            this.tileVersions = tileVersions;
+            this.pins = new AtomicInteger();
+        }
+
+        /**
+         * @return The navMesh of this snapshot. Must not be modified.
+         */
+        public NavMesh getNavMesh() {
+            return mirror.navMesh;
+        }
+
+        /**
+         * @return The publish count of this snapshot.
+         */
+        public long getVersion() {
+            return version;
+        }
+        
+        /**
+         * @param tileIndex The tile slot index.
+         * @return How many times the tile slot changed as of this snapshot.
+         */
+        public int getTileVersion(int tileIndex) {
+            return tileVersions[tileIndex];
+        }
+        
+        /**
+         * Unpins a snapshot returned by acquire(). Safe to call from any 
+         * thread, once per acquire().
+         */
+        public void release() {
+            pins.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.recast4j.detour.BVNode;
+import org.recast4j.detour.ClosestPointOnPolyResult;
+import org.recast4j.detour.MeshData;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.NavMeshParams;
+import org.recast4j.detour.NavMeshQuery;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.Result;
+
+/**
+ * Finds the nearest poly for many points at once, same as calling 
+ * findNearestPoly for each point but without the per call garbage. 
+ * 
+ * Positions are packed x, y, z and results come back in primitive arrays. 
+ * Points are sorted by the tile they fall in so the tiles and BV tree nodes 
+ * stay in cache between neighbouring points, and each thread reuses one set 
+ * of query bounds for its whole share of the batch. Batches of 
+ * PARALLEL_THRESHOLD points or more are split over the common ForkJoinPool.
+ * 
+ * Only closestPointOnPoly is called on the query, which reads the navMesh 
+ * and never touches the query's node pools, so the threads of one batch can 
+ * share it. The navMesh must not change while find() runs.
+ */
+public class NearestPolyBatch {
+
+    //Batches smaller than this are run on the calling thread.
+    public static final int PARALLEL_THRESHOLD = 256;
+    //Points per parallel chunk.
+    private static final int CHUNK_SIZE = 64;
+    
+    private final NavMeshQuery query;
+    private final NavMesh navMesh;
+
+    /**
+     * @param query The query for the navMesh to search.
+     */
+    public NearestPolyBatch(NavMeshQuery query) {
+        this.query = query;
+        this.navMesh = query.getAttachedNavMesh();
+    }
+    
+    /**
+     * Finds the nearest poly for count points.
+     * 
+     * @param positions The packed x, y, z positions.
+     * @param extents The half extents of the search box, either 3 values for 
+     * all points or 3 per point.
+     * @param count The number of points.
+     * @param filter The filter polys must pass.
+     * @param refs Receives the nearest poly per point, 0 if none was found.
+     * @param nearest Receives the packed nearest positions. Points without a 
+     * poly get their own position.
+     */
+    public void find(float[] positions, float[] extents, int count, QueryFilter filter, long[] refs, float[] nearest) {
+        long[] order = sortByTile(positions, count);
+        
+        if (count < PARALLEL_THRESHOLD) {
+            new Searcher(positions, extents, filter, refs, nearest).run(order, 0, count);
+        } else {
+            int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            IntStream.range(0, chunks).parallel().forEach(c -> 
+                    new Searcher(positions, extents, filter, refs, nearest)
+                            .run(order, c * CHUNK_SIZE, Math.min(count, (c + 1) * CHUNK_SIZE)));
+        }
+    }
+    
+    /**
+     * Packs the tile of each point in the high bits and the point index in 
+     * the low bits so a primitive sort groups points by tile.
+     */
+    private long[] sortByTile(float[] positions, int count) {
+        NavMeshParams params = navMesh.getParams();
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            int tx = (int) Math.floor((positions[i * 3] - params.orig[0]) / params.tileWidth);
+            int ty = (int) Math.floor((positions[i * 3 + 2] - params.orig[2]) / params.tileHeight);
+            long key = ((long) (ty & 0xffff) << 16) | (tx & 0xffff);
+            order[i] = (key << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+    
+    /**
+     * The state of one thread's share of a batch.
+     */
+    private class Searcher {
+        private final float[] positions;
+        private final float[] extents;
+        private final QueryFilter filter;
+        private final long[] refs;
+        private final float[] nearest;
+        
+        //Reused for every point.
+        private final float[] center = new float[3];
+        private final float[] bmin = new float[3];
+        private final float[] bmax = new float[3];
+        private final int[] qmin = new int[3];
+        private final int[] qmax = new int[3];
+        private long bestRef;
+        private float bestDist;
+        private final float[] bestPos = new float[3];
+
+        private Searcher(float[] positions, float[] extents, QueryFilter filter, long[] refs, float[] nearest) {
+            this.positions = positions;
+            this.extents = extents;
+            this.filter = filter;
+            this.refs = refs;
+            this.nearest = nearest;
+        }
+        
+        private void run(long[] order, int from, int to) {
+            NavMeshParams params = navMesh.getParams();
+            
+            for (int o = from; o < to; o++) {
+                int i = (int) order[o];
+                int e = extents.length == 3 ? 0 : i * 3;
+                for (int k = 0; k < 3; k++) {
+                    center[k] = positions[i * 3 + k];
+                    bmin[k] = center[k] - extents[e + k];
+                    bmax[k] = center[k] + extents[e + k];
+                    bestPos[k] = center[k];
+                }
+                bestRef = 0;
+                bestDist = Float.MAX_VALUE;
+                
+                int minx = (int) Math.floor((bmin[0] - params.orig[0]) / params.tileWidth);
+                int miny = (int) Math.floor((bmin[2] - params.orig[2]) / params.tileHeight);
+                int maxx = (int) Math.floor((bmax[0] - params.orig[0]) / params.tileWidth);
+                int maxy = (int) Math.floor((bmax[2] - params.orig[2]) / params.tileHeight);
+                
+                for (int ty = miny; ty <= maxy; ty++) {
+                    for (int tx = minx; tx <= maxx; tx++) {
+                        List<MeshTile> tiles = navMesh.getTilesAt(tx, ty);
+                        for (MeshTile tile: tiles) {
+                            queryTile(tile);
+                        }
+                    }
+                }
+                
+                refs[i] = bestRef;
+                System.arraycopy(bestPos, 0, nearest, i * 3, 3);
+            }
+        }
+        
+        /**
+         * Tests the polys of the tile overlapping the query bounds, walking 
+         * the BV tree when the tile has one.
+         */
+        private void queryTile(MeshTile tile) {
+            MeshData data = tile.data;
+            if (data == null) {
+                return;
+            }
+            long base = navMesh.getPolyRefBase(tile);
+            
+            if (data.bvTree != null && data.header.bvNodeCount > 0) {
+                float[] tbmin = data.header.bmin;
+                float[] tbmax = data.header.bmax;
+                float qfac = data.header.bvQuantFactor;
+                
+                //Quantize the query box the same way the tree nodes are.
+                for (int k = 0; k < 3; k++) {
+                    float lo = Math.min(Math.max(bmin[k], tbmin[k]), tbmax[k]) - tbmin[k];
+                    float hi = Math.min(Math.max(bmax[k], tbmin[k]), tbmax[k]) - tbmin[k];
+                    qmin[k] = (int) (qfac * lo) & 0x7ffffffe;
+                    qmax[k] = (int) (qfac * hi + 1) | 1;
+                }
+                
+                int node = 0;
+                int end = data.header.bvNodeCount;
+                while (node < end) {
+                    BVNode n = data.bvTree[node];
+                    boolean overlap = qmin[0] <= n.bmax[0] && qmax[0] >= n.bmin[0]
+                            && qmin[1] <= n.bmax[1] && qmax[1] >= n.bmin[1]
+                            && qmin[2] <= n.bmax[2] && qmax[2] >= n.bmin[2];
+                    boolean leaf = n.i >= 0;
+                    
+                    if (leaf && overlap) {
+                        testPoly(tile, base, n.i);
+                    }
+                    //Skip the whole subtree if the node is missed.
+                    if (overlap || leaf) {
+                        node++;
+                    } else {
+                        node += -n.i;
+                    }
+                }
+            } else {
+                for (int p = 0; p < data.header.polyCount; p++) {
+                    Poly poly = data.polys[p];
+                    //The BV tree doesn't hold offmesh connections either.
+                    if (poly.getType() == Poly.DT_POLYTYPE_OFFMESH_CONNECTION) {
+                        continue;
+                    }
+                    if (overlapsPoly(data, poly)) {
+                        testPoly(tile, base, p);
+                    }
+                }
+            }
+        }
+        
+        private boolean overlapsPoly(MeshData data, Poly poly) {
+            for (int k = 0; k < 3; k++) {
+                float lo = Float.MAX_VALUE;
+                float hi = -Float.MAX_VALUE;
+                for (int j = 0; j < poly.vertCount; j++) {
+                    float v = data.verts[poly.verts[j] * 3 + k];
+                    lo = Math.min(lo, v);
+                    hi = Math.max(hi, v);
+                }
+                if (bmin[k] > hi || bmax[k] < lo) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Keeps the poly if it is closer than the best so far, measured the 
+         * same way findNearestPoly does: a point over the poly only counts 
+         * height above the tile's walkable climb.
+         */
+        private void testPoly(MeshTile tile, long base, int p) {
+            long ref = base | p;
+            if (!filter.passFilter(ref, tile, tile.data.polys[p])) {
+                return;
+            }
+            
+            Result<ClosestPointOnPolyResult> cp = query.closestPointOnPoly(ref, center);
+            if (!cp.succeeded()) {
+                return;
+            }
+            float[] closest = cp.result.getClosest();
+            
+            float d;
+            if (cp.result.isPosOverPoly()) {
+                d = Math.abs(center[1] - closest[1]) - tile.data.header.walkableClimb;
+                d = d > 0 ? d * d : 0;
+            } else {
+                float dx = closest[0] - center[0];
+                float dy = closest[1] - center[1];
+                float dz = closest[2] - center[2];
+                d = dx * dx + dy * dy + dz * dz;
+            }
+            
+            if (d < bestDist) {
+                bestDist = d;
+                bestRef = ref;
+                System.arraycopy(closest, 0, bestPos, 0, 3);
+            }
+        }
+    }
+}
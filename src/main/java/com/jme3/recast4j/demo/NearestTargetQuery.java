@@ -0,0 +1,291 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * Finds the closest of many target polys with one Dijkstra search, instead 
+ * of a findPath per candidate. The search grows out from the start in order 
+ * of cost and stops when k targets were reached or everything within 
+ * maxCost was searched, so the work depends on how far it has to look, not 
+ * on the number of candidates.
+ * 
+ * Node positions are the portal midpoints, like detour's findPath, and costs 
+ * come from the filter. Nodes are kept in a pool of primitive arrays with a 
+ * hash on the poly ref, reused by every search; only the nodes a search 
+ * touched are cleared afterwards.
+ * 
+ * Not thread safe, use one per thread. Any navMesh or snapshot may be 
+ * searched.
+ */
+public class NearestTargetQuery {
+
+    private static final int INITIAL_NODES = 1024;
+    private static final int HASH_SIZE = 4096;
+    
+    //The node pool.
+    private long[] nodeRef;
+    private float[] nodeCost;
+    private float[] nodePos;
+    private int[] nodeParent;
+    private int[] nodeNext;
+    private boolean[] nodeClosed;
+    private int nodeCount;
+    private final int[] buckets;
+    
+    private final PriorityQueue<float[]> open;
+    private final float[] mid = new float[3];
+    private final float[] from = new float[3];
+    private int expansions;
+
+    public NearestTargetQuery() {
+        this.buckets = new int[HASH_SIZE];
+        Arrays.fill(buckets, -1);
+        this.open = new PriorityQueue<>((a, b) -> Float.compare(a[0], b[0]));
+        allocate(INITIAL_NODES);
+    }
+    
+    private void allocate(int size) {
+        nodeRef = nodeRef == null ? new long[size] : Arrays.copyOf(nodeRef, size);
+        nodeCost = nodeCost == null ? new float[size] : Arrays.copyOf(nodeCost, size);
+        nodePos = nodePos == null ? new float[size * 3] : Arrays.copyOf(nodePos, size * 3);
+        nodeParent = nodeParent == null ? new int[size] : Arrays.copyOf(nodeParent, size);
+        nodeNext = nodeNext == null ? new int[size] : Arrays.copyOf(nodeNext, size);
+        nodeClosed = nodeClosed == null ? new boolean[size] : Arrays.copyOf(nodeClosed, size);
+    }
+    
+    /**
+     * Searches from the start until k of the targets are reached.
+     * 
+     * @param navMesh The navMesh to search.
+     * @param startRef The start poly.
+     * @param startPos The position in the start poly.
+     * @param targets The target polys.
+     * @param k The number of targets to find, 1 for just the closest.
+     * @param maxCost Targets costing more than this are not searched for. 
+     * Float.MAX_VALUE for no limit.
+     * @param filter The filter to use.
+     * @return The targets reached, closest first.
+     */
+    public Targets find(NavMesh navMesh, long startRef, float[] startPos, long[] targets, int k, float maxCost, QueryFilter filter) {
+        Targets result = new Targets();
+        expansions = 0;
+        if (startRef == 0 || targets.length == 0 || k <= 0) {
+            return result;
+        }
+        
+        //Sorted so each closed node is checked with a binary search.
+        long[] sorted = targets.clone();
+        Arrays.sort(sorted);
+        
+        int start = getNode(startRef);
+        nodeCost[start] = 0;
+        nodeParent[start] = -1;
+        System.arraycopy(startPos, 0, nodePos, start * 3, 3);
+        open.add(new float[] {0, start});
+        
+        try {
+            while (!open.isEmpty()) {
+                float[] entry = open.poll();
+                int a = (int) entry[1];
+                if (nodeClosed[a] || entry[0] > nodeCost[a]) {
+                    continue;
+                }
+                if (nodeCost[a] > maxCost) {
+                    break;
+                }
+                nodeClosed[a] = true;
+                expansions++;
+                
+                long refA = nodeRef[a];
+                if (Arrays.binarySearch(sorted, refA) >= 0) {
+                    result.add(refA, nodeCost[a], getPath(a));
+                    if (result.size() >= k) {
+                        break;
+                    }
+                }
+                
+                expand(navMesh, a, filter);
+            }
+        } finally {
+            reset();
+        }
+        return result;
+    }
+    
+    private void expand(NavMesh navMesh, int a, QueryFilter filter) {
+        long refA = nodeRef[a];
+        MeshTile tileA = navMesh.getTile(navMesh.decodePolyIdTile(refA));
+        int polyA = navMesh.decodePolyIdPoly(refA);
+        Poly pA = tileA.data.polys[polyA];
+        System.arraycopy(nodePos, a * 3, from, 0, 3);
+        long parentRef = nodeParent[a] == -1 ? 0 : nodeRef[nodeParent[a]];
+        
+        for (int link = PolyLinks.first(tileA, polyA); !PolyLinks.isEnd(link); link = PolyLinks.next(tileA, link)) {
+            long refB = PolyLinks.ref(tileA, link);
+            if (refB == 0 || refB == parentRef) {
+                continue;
+            }
+            MeshTile tileB = navMesh.getTile(navMesh.decodePolyIdTile(refB));
+            Poly pB = tileB.data.polys[navMesh.decodePolyIdPoly(refB)];
+            if (!filter.passFilter(refB, tileB, pB)) {
+                continue;
+            }
+            
+            int b = getNode(refB);
+            if (nodeClosed[b]) {
+                continue;
+            }
+            //Offmesh connections have no edge so enter them at their start.
+            if (!PolyLinks.portalMid(tileA, polyA, link, mid)) {
+                int v = pB.verts[0] * 3;
+                mid[0] = tileB.data.verts[v];
+                mid[1] = tileB.data.verts[v + 1];
+                mid[2] = tileB.data.verts[v + 2];
+            }
+            float cost = nodeCost[a] + filter.getCost(from, mid, parentRef, null, null, refA, tileA, pA, refB, tileB, pB);
+            if (cost < nodeCost[b]) {
+                nodeCost[b] = cost;
+                nodeParent[b] = a;
+                System.arraycopy(mid, 0, nodePos, b * 3, 3);
+                open.add(new float[] {cost, b});
+            }
+        }
+    }
+    
+    //Finds or adds the node for a poly.
+    private int getNode(long ref) {
+        int bucket = hash(ref);
+        for (int i = buckets[bucket]; i != -1; i = nodeNext[i]) {
+            if (nodeRef[i] == ref) {
+                return i;
+            }
+        }
+        if (nodeCount == nodeRef.length) {
+            allocate(nodeRef.length * 2);
+        }
+        int i = nodeCount++;
+        nodeRef[i] = ref;
+        nodeCost[i] = Float.MAX_VALUE;
+        nodeParent[i] = -1;
+        nodeClosed[i] = false;
+        nodeNext[i] = buckets[bucket];
+        buckets[bucket] = i;
+        return i;
+    }
+    
+    private static int hash(long ref) {
+        return (int) ((ref ^ (ref >>> 32)) * 0x9E3779B1L >>> 20) & (HASH_SIZE - 1);
+    }
+    
+    //Clears only what the last search touched.
+    private void reset() {
+        for (int i = 0; i < nodeCount; i++) {
+            buckets[hash(nodeRef[i])] = -1;
+        }
+        nodeCount = 0;
+        open.clear();
+    }
+    
+    private List<Long> getPath(int node) {
+        List<Long> path = new ArrayList<>();
+        for (int i = node; i != -1; i = nodeParent[i]) {
+            path.add(nodeRef[i]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+    
+    /**
+     * @return The polys expanded by the last search.
+     */
+    public int getExpansions() {
+        return expansions;
+    }
+    
+    /**
+     * The targets a search reached, closest first.
+     */
+    public static class Targets {
+        private final List<Long> refs = new ArrayList<>();
+        private final List<Float> costs = new ArrayList<>();
+        private final List<List<Long>> paths = new ArrayList<>();
+        
+        /**
+         * No targets reached.
+         */
+        public Targets() {
+        }
+        
+        private void add(long ref, float cost, List<Long> path) {
+            refs.add(ref);
+            costs.add(cost);
+            paths.add(path);
+        }
+        
+        /**
+         * @return The number of targets reached.
+         */
+        public int size() {
+            return refs.size();
+        }
+        
+        /**
+         * @param i The rank, 0 for the closest.
+         * @return The target poly.
+         */
+        public long getRef(int i) {
+            return refs.get(i);
+        }
+        
+        /**
+         * @param i The rank, 0 for the closest.
+         * @return The cost to reach the target.
+         */
+        public float getCost(int i) {
+            return costs.get(i);
+        }
+        
+        /**
+         * @param i The rank, 0 for the closest.
+         * @return The poly corridor from the start to the target.
+         */
+        public List<Long> getPath(int i) {
+            return paths.get(i);
+        }
+    }
+}
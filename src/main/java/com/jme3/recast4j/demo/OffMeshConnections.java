@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.recast4j.detour.NavMeshDataCreateParams;
+import org.recast4j.detour.OffMeshConnection;
+
+/**
+ * Groups off-mesh connections by the tile their start point falls in so they 
+ * can be handed to NavMeshBuilder through NavMeshDataCreateParams when the tile 
+ * is built. Detour only stores a connection in the tile that contains its start 
+ * point and links the end point when the neighbour tile is added, so each tile 
+ * is linked once no matter how many connections there are.
+ * 
+ * The arrays for each tile are built once and reused for every rebuild of that 
+ * tile, so applying them to params does not allocate.
+ */
+public class OffMeshConnections {
+
+    private final float[] orig;
+    private final float tileWidth;
+    private final float tileHeight;
+    private final Map<Long, TileConnections> tiles;
+    private int count;
+
+    /**
+     * @param orig The origin of the navMesh, NavMeshParams.orig.
+     * @param tileWidth The width of a tile in world units.
+     * @param tileHeight The height (z) of a tile in world units.
+     */
+    public OffMeshConnections(float[] orig, float tileWidth, float tileHeight) {
+        this.orig = Arrays.copyOf(orig, 3);
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tiles = new HashMap<>();
+    }
+    
+    /**
+     * Adds a connection to the tile its start point is in.
+     * 
+     * @param con The connection. Only pos, rad, flags and userId are used.
+     * @param area The area type of the connection.
+     * @param flags The poly flags of the connection.
+     */
+    public void add(OffMeshConnection con, int area, int flags) {
+        int tx = (int) Math.floor((con.pos[0] - orig[0]) / tileWidth);
+        int ty = (int) Math.floor((con.pos[2] - orig[2]) / tileHeight);
+        
+        TileConnections tile = tiles.computeIfAbsent(key(tx, ty), k -> new TileConnections());
+        tile.add(con.pos, con.rad, con.flags, area, flags, con.userId);
+        count++;
+    }
+    
+    /**
+     * Sets the off-mesh connection fields of params for the tile at 
+     * params.tileX, params.tileY. Clears them if the tile has no connections.
+     * 
+     * @param params The parameters of the tile about to be built.
+     */
+    public void apply(NavMeshDataCreateParams params) {
+        TileConnections tile = tiles.get(key(params.tileX, params.tileY));
+        
+        if (tile == null) {
+            params.offMeshConCount = 0;
+            return;
+        }
+        
+        params.offMeshConVerts = tile.verts;
+        params.offMeshConRad = tile.rad;
+        params.offMeshConDir = tile.dir;
+        params.offMeshConAreas = tile.areas;
+        params.offMeshConFlags = tile.flags;
+        params.offMeshConUserID = tile.userIds;
+        params.offMeshConCount = tile.count;
+    }
+    
+    /**
+     * @return The total number of connections.
+     */
+    public int size() {
+        return count;
+    }
+    
+    private static long key(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xffffffffL);
+    }
+    
+    /**
+     * Connections of a single tile, stored the way NavMeshDataCreateParams 
+     * expects them. Arrays grow by doubling and may be longer than count.
+     */
+    private static class TileConnections {
+        private float[] verts = new float[6 * 4];
+        private float[] rad = new float[4];
+        private int[] dir = new int[4];
+        private int[] areas = new int[4];
+        private int[] flags = new int[4];
+        private int[] userIds = new int[4];
+        private int count;
+        
+        private void add(float[] pos, float r, int d, int area, int flag, int userId) {
+            if (count == rad.length) {
+                int capacity = count * 2;
+                verts = Arrays.copyOf(verts, capacity * 6);
+                rad = Arrays.copyOf(rad, capacity);
+                dir = Arrays.copyOf(dir, capacity);
+                areas = Arrays.copyOf(areas, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+            }
+            System.arraycopy(pos, 0, verts, count * 6, 6);
+            rad[count] = r;
+            dir[count] = d;
+            areas[count] = area;
+            flags[count] = flag;
+            userIds[count] = userId;
+            count++;
+        }
+    }
+}
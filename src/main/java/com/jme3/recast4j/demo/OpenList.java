@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.Arrays;
+
+/**
+ * The open list of a whole mesh search: a binary min heap of poly indices 
+ * keyed by cost, in primitive arrays that are kept between searches. A poly 
+ * is pushed again when its cost drops rather than moved in the heap, so 
+ * searches skip entries whose key is above the poly's current cost when 
+ * popped.
+ * 
+ * Not thread safe, use one per thread.
+ */
+public class OpenList {
+
+    private float[] keys;
+    private int[] nodes;
+    private int size;
+    //The key of the node last popped.
+    private float popped;
+
+    public OpenList() {
+        this(256);
+    }
+    
+    /**
+     * @param capacity The number of entries to start with.
+     */
+    public OpenList(int capacity) {
+        this.keys = new float[capacity];
+        this.nodes = new int[capacity];
+    }
+    
+    /**
+     * Empties the list, keeping its arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * @param key The cost to order by.
+     * @param node The poly index.
+     */
+    public void push(float key, int node) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (keys[up] <= key) {
+                break;
+            }
+            keys[i] = keys[up];
+            nodes[i] = nodes[up];
+            i = up;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+    }
+    
+    /**
+     * Removes the entry with the lowest key. Must not be empty.
+     * 
+     * @return Its poly index. Its key is getPoppedKey().
+     */
+    public int pop() {
+        int top = nodes[0];
+        popped = keys[0];
+        float key = keys[--size];
+        int node = nodes[size];
+        int i = 0;
+        while (true) {
+            int child = i * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        keys[i] = key;
+        nodes[i] = node;
+        return top;
+    }
+    
+    /**
+     * @return The key of the entry last popped.
+     */
+    public float getPoppedKey() {
+        return popped;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+import java.util.List;
+import org.recast4j.detour.StraightPathItem;
+
+/**
+ * A poly corridor and straight path kept in primitive arrays that are 
+ * reused from one path to the next. The arrays only grow, so once a buffer 
+ * has held the longest path it will see, filling it again allocates nothing.
+ * 
+ * Waypoints are read in place with getPoint into a Vector3f the caller 
+ * owns, rather than handing out a new Vector3f per point.
+ * 
+ * recast4j still returns its results as lists; copy them in with setPolys 
+ * and setStraightPath and keep the buffer, not the lists.
+ */
+public class PathBuffer {
+
+    private long[] polys;
+    private int polyCount;
+    //Packed x, y, z.
+    private float[] points;
+    private int[] pointFlags;
+    private long[] pointRefs;
+    private int pointCount;
+
+    public PathBuffer() {
+        this(32);
+    }
+    
+    /**
+     * @param capacity The number of polys and points to start with.
+     */
+    public PathBuffer(int capacity) {
+        this.polys = new long[capacity];
+        this.points = new float[capacity * 3];
+        this.pointFlags = new int[capacity];
+        this.pointRefs = new long[capacity];
+    }
+    
+    /**
+     * Empties the buffer, keeping its arrays.
+     */
+    public void clear() {
+        polyCount = 0;
+        pointCount = 0;
+    }
+    
+    /**
+     * @param corridor The polys to copy in, replacing the current ones.
+     */
+    public void setPolys(List<Long> corridor) {
+        polyCount = 0;
+        ensurePolys(corridor.size());
+        for (int i = 0; i < corridor.size(); i++) {
+            polys[polyCount++] = corridor.get(i);
+        }
+    }
+    
+    /**
+     * @param path The straight path to copy in, replacing the current points.
+     */
+    public void setStraightPath(List<StraightPathItem> path) {
+        pointCount = 0;
+        ensurePoints(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            StraightPathItem item = path.get(i);
+            float[] pos = item.getPos();
+            addPoint(pos[0], pos[1], pos[2], item.getFlags(), item.getRef());
+        }
+    }
+    
+    /**
+     * Adds a waypoint.
+     * 
+     * @param x The x position.
+     * @param y The y position.
+     * @param z The z position.
+     * @param flags The straight path flags, 0 if none.
+     * @param ref The poly the point enters, 0 if none.
+     */
+    public void addPoint(float x, float y, float z, int flags, long ref) {
+        ensurePoints(pointCount + 1);
+        points[pointCount * 3] = x;
+        points[pointCount * 3 + 1] = y;
+        points[pointCount * 3 + 2] = z;
+        pointFlags[pointCount] = flags;
+        pointRefs[pointCount] = ref;
+        pointCount++;
+    }
+    
+    /**
+     * Appends the points of another buffer.
+     * 
+     * @param other The buffer to copy from.
+     * @param from The first point to copy.
+     */
+    public void appendPoints(PathBuffer other, int from) {
+        int count = Math.max(0, other.pointCount - from);
+        ensurePoints(pointCount + count);
+        System.arraycopy(other.points, from * 3, points, pointCount * 3, count * 3);
+        System.arraycopy(other.pointFlags, from, pointFlags, pointCount, count);
+        System.arraycopy(other.pointRefs, from, pointRefs, pointCount, count);
+        pointCount += count;
+    }
+    
+    /**
+     * Makes this buffer a copy of another.
+     * 
+     * @param other The buffer to copy.
+     */
+    public void set(PathBuffer other) {
+        ensurePolys(other.polyCount);
+        System.arraycopy(other.polys, 0, polys, 0, other.polyCount);
+        polyCount = other.polyCount;
+        pointCount = 0;
+        appendPoints(other, 0);
+    }
+    
+    private void ensurePolys(int size) {
+        if (size > polys.length) {
+            polys = Arrays.copyOf(polys, Math.max(size, polys.length * 2));
+        }
+    }
+    
+    private void ensurePoints(int size) {
+        if (size > pointFlags.length) {
+            int capacity = Math.max(size, pointFlags.length * 2);
+            points = Arrays.copyOf(points, capacity * 3);
+            pointFlags = Arrays.copyOf(pointFlags, capacity);
+            pointRefs = Arrays.copyOf(pointRefs, capacity);
+        }
+    }
+    
+    /**
+     * @param i The waypoint index.
+     * @param store The vector to store the position in.
+     * @return store.
+     */
+    public Vector3f getPoint(int i, Vector3f store) {
+        return store.set(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]);
+    }
+    
+    /**
+     * @param i The waypoint index.
+     * @param pos The position to measure from.
+     * @return The distance between the waypoint and pos.
+     */
+    public float distance(int i, Vector3f pos) {
+        float dx = points[i * 3] - pos.x;
+        float dy = points[i * 3 + 1] - pos.y;
+        float dz = points[i * 3 + 2] - pos.z;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+    
+    /**
+     * @param i The waypoint index.
+     * @return The straight path flags of the waypoint.
+     */
+    public int getPointFlags(int i) {
+        return pointFlags[i];
+    }
+    
+    /**
+     * @param i The waypoint index.
+     * @return The poly the waypoint enters, 0 for the end point.
+     */
+    public long getPointRef(int i) {
+        return pointRefs[i];
+    }
+    
+    /**
+     * @return The number of waypoints.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+    
+    /**
+     * @param i The corridor index.
+     * @return The poly.
+     */
+    public long getPoly(int i) {
+        return polys[i];
+    }
+    
+    /**
+     * @return The number of polys in the corridor.
+     */
+    public int getPolyCount() {
+        return polyCount;
+    }
+}
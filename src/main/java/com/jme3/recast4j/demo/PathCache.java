@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.recast4j.detour.DefaultQueryFilter;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * Least recently used cache of poly corridors keyed by start poly, end poly 
+ * and filter. Each entry remembers the version of every tile its corridor 
+ * crosses and is thrown away the first time it is looked up against a 
+ * snapshot where any of those tiles changed, so a door or rebuilt tile only 
+ * invalidates the paths that go through it.
+ * 
+ * Only the corridor is cached. The straight path depends on the exact start 
+ * and end positions so it is always rebuilt from the corridor, which is 
+ * cheap compared to the A* search. Methods are synchronized so workers can 
+ * share one cache.
+ * 
+ * Filters that can't be fingerprinted get UNCACHEABLE, which is never 
+ * looked up or stored. Cached corridors are unmodifiable since every hit 
+ * hands out the same list.
+ */
+public class PathCache {
+
+    /**
+     * The fingerprint of filters whose contents can't be looked into. Never 
+     * equal to a content fingerprint.
+     */
+    public static final long UNCACHEABLE = Long.MIN_VALUE;
+
+    private final int maxEntries;
+    private final Map<Key, Entry> entries;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long savedExpansions;
+    
+    /**
+     * @param maxEntries The max number of corridors to keep.
+     */
+    public PathCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        //Access order so the eldest entry is the least recently used.
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > PathCache.this.maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Looks up a corridor that is still valid for the snapshot.
+     * 
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param filterKey The fingerprint of the filter, see fingerprint().
+     * @param snapshot The snapshot the path is for.
+     * @return The cached corridor, unmodifiable, or null.
+     */
+    public synchronized List<Long> get(long startRef, long endRef, long filterKey, NavMeshSnapshots.Snapshot snapshot) {
+        if (filterKey == UNCACHEABLE) {
+            return null;
+        }
+        Key key = new Key(startRef, endRef, filterKey);
+        Entry entry = entries.get(key);
+        
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        
+        for (int i = 0; i < entry.tiles.length; i++) {
+            if (snapshot.getTileVersion(entry.tiles[i]) != entry.versions[i]) {
+                entries.remove(key);
+                invalidations++;
+                misses++;
+                return null;
+            }
+        }
+        
+        hits++;
+        savedExpansions += entry.expansions;
+        return entry.polys;
+    }
+    
+    /**
+     * Stores a corridor found on the snapshot.
+     * 
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param filterKey The fingerprint of the filter, nothing is stored if 
+     * it is UNCACHEABLE.
+     * @param polys The corridor, copied.
+     * @param expansions The number of nodes the search expanded.
+     * @param snapshot The snapshot the corridor was found on.
+     */
+    public synchronized void put(long startRef, long endRef, long filterKey, List<Long> polys, int expansions, NavMeshSnapshots.Snapshot snapshot) {
+        if (filterKey == UNCACHEABLE) {
+            return;
+        }
+        NavMesh navMesh = snapshot.getNavMesh();
+        
+        //Distinct tiles along the corridor.
+        int[] tiles = new int[polys.size()];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = navMesh.decodePolyIdTile(polys.get(i));
+        }
+        Arrays.sort(tiles);
+        int n = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            if (n == 0 || tiles[n - 1] != tiles[i]) {
+                tiles[n++] = tiles[i];
+            }
+        }
+        tiles = Arrays.copyOf(tiles, n);
+        
+        int[] versions = new int[n];
+        for (int i = 0; i < n; i++) {
+            versions[i] = snapshot.getTileVersion(tiles[i]);
+        }
+        
+        entries.put(new Key(startRef, endRef, filterKey), new Entry(Collections.unmodifiableList(new ArrayList<>(polys)), tiles, versions, expansions));
+    }
+    
+    /**
+     * Drops every corridor that goes through any of the polys, e.g. the polys 
+     * of a door that just closed. Tile versions catch this too once the next 
+     * snapshot is published, this drops them right away.
+     * 
+     * @param polys The poly refs.
+     */
+    public synchronized void invalidate(long[] polys) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            List<Long> path = iterator.next().polys;
+            for (long ref: polys) {
+                if (path.contains(ref)) {
+                    iterator.remove();
+                    invalidations++;
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Empties the cache. Stats are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * @return The fraction of lookups that were hits.
+     */
+    public synchronized float getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of entries dropped because a tile changed.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return The A* node expansions hits did not have to do.
+     */
+    public synchronized long getSavedExpansions() {
+        return savedExpansions;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Fingerprints a filter so equal filters created separately share cache 
+     * entries. CompiledQueryFilters keep their fingerprint up to date. Other 
+     * DefaultQueryFilters are fingerprinted by include flags, exclude flags, 
+     * whether polys without flags pass and the cost of every area, the same 
+     * way. Anything else can't be looked into and gets UNCACHEABLE, so 
+     * callers must not share results between such filters.
+     * 
+     * @param filter The filter.
+     * @return The fingerprint or UNCACHEABLE.
+     */
+    public static long fingerprint(QueryFilter filter) {
+        if (filter instanceof CompiledQueryFilter) {
+            return ((CompiledQueryFilter) filter).getFingerprint();
+        }
+        if (!(filter instanceof DefaultQueryFilter)) {
+            return UNCACHEABLE;
+        }
+        
+        DefaultQueryFilter f = (DefaultQueryFilter) filter;
+        float[] costs = CompiledQueryFilter.readAreaCosts(f, new float[AreaModifications.MAX_AREAS]);
+        return CompiledQueryFilter.fingerprint(f.getIncludeFlags(), f.getExcludeFlags(), 
+                CompiledQueryFilter.passesUnflagged(f), costs);
+    }
+    
+    private static class Key {
+        private final long startRef;
+        private final long endRef;
+        private final long filterKey;
+
+        private Key(long startRef, long endRef, long filterKey) {
+            this.startRef = startRef;
+            this.endRef = endRef;
+            this.filterKey = filterKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return startRef == other.startRef && endRef == other.endRef && filterKey == other.filterKey;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = startRef * 31 + endRef;
+            h = h * 31 + filterKey;
+            return Long.hashCode(h);
+        }
+    }
+    
+    private static class Entry {
+        private final List<Long> polys;
+        private final int[] tiles;
+        private final int[] versions;
+        private final int expansions;
+
+        private Entry(List<Long> polys, int[] tiles, int[] versions, int expansions) {
+            this.polys = polys;
+            this.tiles = tiles;
+            this.versions = versions;
+            this.expansions = expansions;
+        }
+    }
+}
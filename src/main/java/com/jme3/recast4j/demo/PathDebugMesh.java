@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+
+/**
+ * Draws any number of paths as one line mesh and one point mesh, so the 
+ * whole debug view is two draw calls no matter how many agents are walking.
+ * 
+ * The vertex buffers are allocated once and refilled in place. They only 
+ * grow, doubling when a frame needs more, so once they have held the busiest 
+ * frame redrawing allocates nothing.
+ * 
+ * Usage: clear(), then addPath/addLine/addPoint for everything that should 
+ * be shown, then update() to upload. Call it from the render thread.
+ */
+public class PathDebugMesh {
+
+    private final Node node;
+    private final Geometry lineGeom;
+    private final Geometry pointGeom;
+    private final Batch lines;
+    private final Batch points;
+    //Scratch for addPath.
+    private final Vector3f from = new Vector3f();
+    private final Vector3f to = new Vector3f();
+
+    /**
+     * @param assetManager To load the material.
+     * @param lineCapacity The number of lines to allocate for.
+     * @param pointCapacity The number of points to allocate for.
+     */
+    public PathDebugMesh(AssetManager assetManager, int lineCapacity, int pointCapacity) {
+        lines = new Batch(Mesh.Mode.Lines, lineCapacity * 2);
+        points = new Batch(Mesh.Mode.Points, pointCapacity);
+
+        Material lineMat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        lineMat.setBoolean("VertexColor", true);
+        lineMat.getAdditionalRenderState().setLineWidth(2f);
+        lineGeom = new Geometry("PathDebugLines", lines.mesh);
+        lineGeom.setMaterial(lineMat);
+
+        Material pointMat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        pointMat.setBoolean("VertexColor", true);
+        pointMat.setFloat("PointSize", 8f);
+        pointGeom = new Geometry("PathDebugPoints", points.mesh);
+        pointGeom.setMaterial(pointMat);
+
+        node = new Node("PathDebug");
+        node.attachChild(lineGeom);
+        node.attachChild(pointGeom);
+        update();
+    }
+
+    /**
+     * @return The node holding both meshes, attach it to show the paths.
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Removes everything, keeping the buffers. Nothing changes on screen 
+     * until update() is called.
+     */
+    public void clear() {
+        lines.count = 0;
+        points.count = 0;
+    }
+
+    /**
+     * Adds a line.
+     * 
+     * @param from Where the line starts.
+     * @param to Where the line ends.
+     * @param color The color of the line.
+     */
+    public void addLine(Vector3f from, Vector3f to, ColorRGBA color) {
+        lines.add(from, color);
+        lines.add(to, color);
+    }
+
+    /**
+     * Adds a point.
+     * 
+     * @param pos The position of the point.
+     * @param color The color of the point.
+     */
+    public void addPoint(Vector3f pos, ColorRGBA color) {
+        points.add(pos, color);
+    }
+
+    /**
+     * Adds the straight path of a PathBuffer as lines, with a point at every 
+     * corner that enters a poly.
+     * 
+     * @param start Where the path starts, usually the agent position.
+     * @param path The path to draw.
+     * @param yOffset Lifts the path so it isn't hidden by the ground.
+     * @param lineColor The color of the lines.
+     * @param cornerColor The color of the corners.
+     */
+    public void addPath(Vector3f start, PathBuffer path, float yOffset, ColorRGBA lineColor, ColorRGBA cornerColor) {
+        from.set(start).addLocal(0f, yOffset, 0f);
+        for (int i = 0; i < path.getPointCount(); i++) {
+            path.getPoint(i, to).addLocal(0f, yOffset, 0f);
+            addLine(from, to, lineColor);
+            if (path.getPointRef(i) != 0) { // if ref is 0, it's the linkB.
+                addPoint(to, cornerColor);
+            }
+            from.set(to);
+        }
+    }
+
+    /**
+     * Uploads what was added since the last clear().
+     */
+    public void update() {
+        lines.upload();
+        points.upload();
+        //A mesh with no vertices must not be drawn.
+        lineGeom.setCullHint(lines.count == 0 ? Spatial.CullHint.Always : Spatial.CullHint.Inherit);
+        pointGeom.setCullHint(points.count == 0 ? Spatial.CullHint.Always : Spatial.CullHint.Inherit);
+        lineGeom.updateModelBound();
+        pointGeom.updateModelBound();
+    }
+
+    /**
+     * @return The number of lines uploaded or added since then.
+     */
+    public int getLineCount() {
+        return lines.count / 2;
+    }
+
+    /**
+     * @return The number of points uploaded or added since then.
+     */
+    public int getPointCount() {
+        return points.count;
+    }
+
+    /**
+     * One mesh with growable position and color buffers. The buffer limits 
+     * are set to the vertex count on upload, which is what the mesh draws, 
+     * and opened up to the capacity again when writing.
+     */
+    private static class Batch {
+
+        private final Mesh mesh;
+        private FloatBuffer positions;
+        private FloatBuffer colors;
+        private int capacity;
+        private int count;
+
+        private Batch(Mesh.Mode mode, int capacity) {
+            this.capacity = Math.max(capacity, 2);
+            this.positions = BufferUtils.createFloatBuffer(this.capacity * 3);
+            this.colors = BufferUtils.createFloatBuffer(this.capacity * 4);
+            this.mesh = new Mesh();
+            mesh.setMode(mode);
+            mesh.setDynamic();
+            positions.limit(0);
+            colors.limit(0);
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+            mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+        }
+
+        private void add(Vector3f pos, ColorRGBA color) {
+            if (count == capacity) {
+                grow();
+            }
+            positions.limit(positions.capacity());
+            colors.limit(colors.capacity());
+            int p = count * 3;
+            positions.put(p, pos.x).put(p + 1, pos.y).put(p + 2, pos.z);
+            int c = count * 4;
+            colors.put(c, color.r).put(c + 1, color.g).put(c + 2, color.b).put(c + 3, color.a);
+            count++;
+        }
+
+        private void grow() {
+            capacity *= 2;
+            FloatBuffer newPositions = BufferUtils.createFloatBuffer(capacity * 3);
+            positions.clear();
+            newPositions.put(positions);
+            FloatBuffer newColors = BufferUtils.createFloatBuffer(capacity * 4);
+            colors.clear();
+            newColors.put(colors);
+            //The mesh still points at the old buffers until the next upload.
+            positions = newPositions;
+            colors = newColors;
+        }
+
+        private void upload() {
+            positions.clear();
+            positions.limit(count * 3);
+            colors.clear();
+            colors.limit(count * 4);
+            //Flags the buffers for upload, reallocating on the GPU only 
+            //when they grew.
+            mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+            mesh.getBuffer(VertexBuffer.Type.Color).updateData(colors);
+            mesh.updateCounts();
+            mesh.updateBound();
+        }
+    }
+}
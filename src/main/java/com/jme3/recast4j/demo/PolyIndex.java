@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+
+/**
+ * Numbers every poly of a navMesh from 0 to size() - 1, tile by tile, so 
+ * per poly data can be kept in primitive arrays instead of maps keyed by 
+ * poly ref. Also keeps the poly centers, which whole mesh searches use for 
+ * their costs.
+ * 
+ * The numbering is fixed when built. A ref from a tile that was rebuilt 
+ * since has a new salt and is reported as not indexed.
+ */
+public class PolyIndex {
+
+    private final NavMesh navMesh;
+    //First index of each tile slot, plus the total at the end.
+    private final int[] tileOffset;
+    private final long[] refs;
+    private final float[] centers;
+
+    private PolyIndex(NavMesh navMesh, int[] tileOffset) {
+        this.navMesh = navMesh;
+        this.tileOffset = tileOffset;
+        this.refs = new long[tileOffset[tileOffset.length - 1]];
+        this.centers = new float[refs.length * 3];
+    }
+    
+    /**
+     * @param navMesh The navMesh to index. Must not change during the build.
+     * @return The index.
+     */
+    public static PolyIndex build(NavMesh navMesh) {
+        int maxTiles = navMesh.getMaxTiles();
+        int[] tileOffset = new int[maxTiles + 1];
+        for (int t = 0; t < maxTiles; t++) {
+            MeshTile tile = navMesh.getTile(t);
+            int count = tile.data == null || tile.data.header == null ? 0 : tile.data.header.polyCount;
+            tileOffset[t + 1] = tileOffset[t] + count;
+        }
+        
+        PolyIndex index = new PolyIndex(navMesh, tileOffset);
+        for (int t = 0; t < maxTiles; t++) {
+            if (tileOffset[t + 1] == tileOffset[t]) {
+                continue;
+            }
+            MeshTile tile = navMesh.getTile(t);
+            long base = navMesh.getPolyRefBase(tile);
+            for (int p = 0; p < tileOffset[t + 1] - tileOffset[t]; p++) {
+                int i = tileOffset[t] + p;
+                index.refs[i] = base | p;
+                index.setCenter(tile, tile.data.polys[p], i * 3);
+            }
+        }
+        return index;
+    }
+    
+    private void setCenter(MeshTile tile, Poly poly, int offset) {
+        for (int j = 0; j < poly.vertCount; j++) {
+            int v = poly.verts[j] * 3;
+            centers[offset] += tile.data.verts[v];
+            centers[offset + 1] += tile.data.verts[v + 1];
+            centers[offset + 2] += tile.data.verts[v + 2];
+        }
+        centers[offset] /= poly.vertCount;
+        centers[offset + 1] /= poly.vertCount;
+        centers[offset + 2] /= poly.vertCount;
+    }
+    
+    /**
+     * Checks a tile slot still holds the polys it held when indexed. Flag 
+     * and area edits don't change the numbering, only rebuilt, added or 
+     * removed tiles do.
+     * 
+     * @param t The tile slot index.
+     * @return True if the tile's polys are numbered as indexed.
+     */
+    public boolean isCurrent(int t) {
+        MeshTile tile = navMesh.getTile(t);
+        int count = tile == null || tile.data == null || tile.data.header == null ? 0 : tile.data.header.polyCount;
+        if (count != tileOffset[t + 1] - tileOffset[t]) {
+            return false;
+        }
+        return count == 0 || refs[tileOffset[t]] == navMesh.getPolyRefBase(tile);
+    }
+    
+    /**
+     * @param ref A poly ref.
+     * @return The index of the poly or -1 if it isn't indexed.
+     */
+    public int index(long ref) {
+        if (ref == 0) {
+            return -1;
+        }
+        int t = navMesh.decodePolyIdTile(ref);
+        int p = navMesh.decodePolyIdPoly(ref);
+        if (t < 0 || t >= tileOffset.length - 1 || p >= tileOffset[t + 1] - tileOffset[t]) {
+            return -1;
+        }
+        int i = tileOffset[t] + p;
+        //A stale ref from a tile that was rebuilt since.
+        return refs[i] == ref ? i : -1;
+    }
+    
+    /**
+     * @param i A poly index.
+     * @return The poly ref.
+     */
+    public long getRef(int i) {
+        return refs[i];
+    }
+    
+    /**
+     * @param i A poly index.
+     * @param out Receives the x, y, z of the poly center.
+     */
+    public void getCenter(int i, float[] out) {
+        System.arraycopy(centers, i * 3, out, 0, 3);
+    }
+    
+    /**
+     * @param i A poly index.
+     * @return The tile the poly is in.
+     */
+    public MeshTile getTile(int i) {
+        return navMesh.getTile(navMesh.decodePolyIdTile(refs[i]));
+    }
+    
+    /**
+     * @param i A poly index.
+     * @return The index of the poly within its tile.
+     */
+    public int getTilePoly(int i) {
+        return navMesh.decodePolyIdPoly(refs[i]);
+    }
+    
+    /**
+     * @return The number of polys indexed.
+     */
+    public int size() {
+        return refs.length;
+    }
+    
+    /**
+     * @return The indexed navMesh.
+     */
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+}
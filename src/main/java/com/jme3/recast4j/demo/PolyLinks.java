@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import org.recast4j.detour.Link;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+
+/**
+ * Walks the links detour builds between polys when a tile is added. Each poly 
+ * has a linked list of links stored in its tile, starting at 
+ * tile.polyLinks[poly] and ending with NavMesh.DT_NULL_LINK. A link's ref is 
+ * the poly on the other side, which may be in another tile or be an offmesh 
+ * connection.
+ * 
+ * Typical use:
+ * 
+ * for (int i = PolyLinks.first(tile, poly); i != NavMesh.DT_NULL_LINK; i = PolyLinks.next(tile, i)) {
+ *     long neighbour = PolyLinks.ref(tile, i);
+ * }
+ */
+public final class PolyLinks {
+
+    private PolyLinks() {
+    }
+    
+    /**
+     * @param tile The tile of the poly.
+     * @param poly The index of the poly in the tile.
+     * @return The first link of the poly or NavMesh.DT_NULL_LINK.
+     */
+    public static int first(MeshTile tile, int poly) {
+        return tile.polyLinks[poly];
+    }
+    
+    /**
+     * @param tile The tile of the poly.
+     * @param link The current link.
+     * @return The next link or NavMesh.DT_NULL_LINK.
+     */
+    public static int next(MeshTile tile, int link) {
+        return tile.links.get(link).next;
+    }
+    
+    /**
+     * @param tile The tile of the poly.
+     * @param link The link.
+     * @return The poly ref the link leads to, 0 if none.
+     */
+    public static long ref(MeshTile tile, int link) {
+        return tile.links.get(link).ref;
+    }
+    
+    /**
+     * Finds the middle of the portal a link crosses. Links along a tile 
+     * border may only cover part of the edge, given by bmin and bmax in 
+     * 0-255 along it.
+     * 
+     * @param tile The tile of the poly.
+     * @param poly The index of the poly in the tile.
+     * @param link A link of the poly.
+     * @param out Receives the x, y, z of the middle.
+     * @return False if the link has no edge, as with offmesh connections.
+     */
+    public static boolean portalMid(MeshTile tile, int poly, int link, float[] out) {
+        Link l = tile.links.get(link);
+        Poly p = tile.data.polys[poly];
+        if (l.edge >= p.vertCount || p.getType() == Poly.DT_POLYTYPE_OFFMESH_CONNECTION) {
+            return false;
+        }
+        
+        int v0 = p.verts[l.edge] * 3;
+        int v1 = p.verts[(l.edge + 1) % p.vertCount] * 3;
+        float tmin = 0;
+        float tmax = 1;
+        if (l.side != 0xff) {
+            tmin = l.bmin / 255f;
+            tmax = l.bmax / 255f;
+        }
+        float t = (tmin + tmax) * 0.5f;
+        for (int k = 0; k < 3; k++) {
+            float a = tile.data.verts[v0 + k];
+            float b = tile.data.verts[v1 + k];
+            out[k] = a + (b - a) * t;
+        }
+        return true;
+    }
+    
+    /**
+     * @param link A link index.
+     * @return True if this is the end of the list.
+     */
+    public static boolean isEnd(int link) {
+        return link == NavMesh.DT_NULL_LINK;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.recast4j.detour.MeshData;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.QueryFilter;
+
+/**
+ * A coarse graph with one node per tile and an edge between every two tiles 
+ * that detour has linked through a portal or offmesh connection. Long 
+ * queries plan on this graph first, then search polys only inside the tiles 
+ * of the coarse path and their neighbours using a CorridorFilter, so the A* 
+ * never wanders across the whole map.
+ * 
+ * The graph is kept current with onTilesChanged from the NavMeshEditor, 
+ * which rescans only the changed tiles. Edges ignore flags, so a closed door 
+ * can make the corridor search fail; callers must then fall back to a full 
+ * search. Methods are synchronized so workers can plan while the render 
+ * thread updates tiles.
+ */
+public class TileGraph implements NavMeshEditor.TileChangeListener {
+
+    private final NavMesh navMesh;
+    private final List<Set<Integer>> edges;
+    //Tile center x, z for costs and the heuristic.
+    private final float[] centers;
+    
+    /**
+     * Scans every tile of the navMesh.
+     * 
+     * @param navMesh The live navMesh. Only read from the thread that owns it.
+     */
+    public TileGraph(NavMesh navMesh) {
+        this.navMesh = navMesh;
+        int maxTiles = navMesh.getMaxTiles();
+        this.edges = new ArrayList<>(maxTiles);
+        for (int i = 0; i < maxTiles; i++) {
+            edges.add(new HashSet<>());
+        }
+        this.centers = new float[maxTiles * 2];
+        
+        for (int i = 0; i < maxTiles; i++) {
+            updateTile(i);
+        }
+    }
+
+    @Override
+    public void onTilesChanged(int[] tiles) {
+        for (int tile: tiles) {
+            updateTile(tile);
+        }
+    }
+    
+    /**
+     * Rescans the links of one tile. Portals are linked from both sides so 
+     * the edges of the tile are rebuilt from its own links alone.
+     * 
+     * @param tileIndex The tile slot index.
+     */
+    public synchronized void updateTile(int tileIndex) {
+        for (int other: edges.get(tileIndex)) {
+            edges.get(other).remove(tileIndex);
+        }
+        edges.get(tileIndex).clear();
+        
+        MeshTile tile = navMesh.getTile(tileIndex);
+        MeshData data = tile.data;
+        if (data == null || data.header == null) {
+            return;
+        }
+        
+        centers[tileIndex * 2] = (data.header.bmin[0] + data.header.bmax[0]) * 0.5f;
+        centers[tileIndex * 2 + 1] = (data.header.bmin[2] + data.header.bmax[2]) * 0.5f;
+        
+        for (int i = 0; i < data.header.polyCount; i++) {
+            for (int link = PolyLinks.first(tile, i); !PolyLinks.isEnd(link); link = PolyLinks.next(tile, link)) {
+                long ref = PolyLinks.ref(tile, link);
+                if (ref == 0) {
+                    continue;
+                }
+                int other = navMesh.decodePolyIdTile(ref);
+                if (other != tileIndex) {
+                    edges.get(tileIndex).add(other);
+                    edges.get(other).add(tileIndex);
+                }
+            }
+        }
+    }
+    
+    /**
+     * A* over the tile graph.
+     * 
+     * @param startTile The tile slot of the start poly.
+     * @param endTile The tile slot of the end poly.
+     * @return The tile slots from start to end or null if not connected.
+     */
+    public synchronized int[] findTilePath(int startTile, int endTile) {
+        if (startTile == endTile) {
+            return new int[] {startTile};
+        }
+        
+        int n = edges.size();
+        float[] g = new float[n];
+        Arrays.fill(g, Float.MAX_VALUE);
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        BitSet closed = new BitSet(n);
+        
+        //Entries are {f, tile}. Stale entries are skipped when polled.
+        PriorityQueue<float[]> open = new PriorityQueue<>((a, b) -> Float.compare(a[0], b[0]));
+        g[startTile] = 0;
+        open.add(new float[] {distance(startTile, endTile), startTile});
+        
+        while (!open.isEmpty()) {
+            int current = (int) open.poll()[1];
+            if (closed.get(current)) {
+                continue;
+            }
+            if (current == endTile) {
+                break;
+            }
+            closed.set(current);
+            
+            for (int next: edges.get(current)) {
+                if (closed.get(next)) {
+                    continue;
+                }
+                float cost = g[current] + distance(current, next);
+                if (cost < g[next]) {
+                    g[next] = cost;
+                    parent[next] = current;
+                    open.add(new float[] {cost + distance(next, endTile), next});
+                }
+            }
+        }
+        
+        if (parent[endTile] == -1) {
+            return null;
+        }
+        
+        int count = 1;
+        for (int t = endTile; t != startTile; t = parent[t]) {
+            count++;
+        }
+        int[] path = new int[count];
+        for (int t = endTile, i = count - 1; i >= 0; t = parent[t], i--) {
+            path[i] = t;
+        }
+        return path;
+    }
+    
+    /**
+     * Marks the tiles of a coarse path and their neighbours.
+     * 
+     * @param tilePath The path from findTilePath.
+     * @return The tiles a corridor search may use.
+     */
+    public synchronized BitSet getCorridorTiles(int[] tilePath) {
+        BitSet tiles = new BitSet(edges.size());
+        for (int tile: tilePath) {
+            tiles.set(tile);
+            for (int next: edges.get(tile)) {
+                tiles.set(next);
+            }
+        }
+        return tiles;
+    }
+    
+    private float distance(int a, int b) {
+        float dx = centers[a * 2] - centers[b * 2];
+        float dz = centers[a * 2 + 1] - centers[b * 2 + 1];
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+    
+    /**
+     * Only lets a search through polys in the given tiles.
+     */
+    public static class CorridorFilter implements QueryFilter {
+        private final QueryFilter filter;
+        private final BitSet tiles;
+
+        /**
+         * @param filter The filter to restrict.
+         * @param tiles The tile slots polys must be in.
+         */
+        public CorridorFilter(QueryFilter filter, BitSet tiles) {
+            this.filter = filter;
+            this.tiles = tiles;
+        }
+
+        @Override
+        public boolean passFilter(long ref, MeshTile tile, Poly poly) {
+            return tiles.get(tile.index) && filter.passFilter(ref, tile, poly);
+        }
+
+        @Override
+        public float getCost(float[] pa, float[] pb, long prevRef, MeshTile prevTile, Poly prevPoly, long curRef,
+                MeshTile curTile, Poly curPoly, long nextRef, MeshTile nextTile, Poly nextPoly) {
+            return filter.getCost(pa, pb, prevRef, prevTile, prevPoly, curRef, curTile, curPoly, nextRef, nextTile, nextPoly);
+        }
+    }
+}
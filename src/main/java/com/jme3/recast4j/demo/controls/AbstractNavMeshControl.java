@@ -4,23 +4,27 @@ import com.jme3.animation.AnimChannel;
 import com.jme3.animation.AnimControl;
 import com.jme3.bullet.control.BetterCharacterControl;
 import com.jme3.math.Vector3f;
+import com.jme3.recast4j.demo.PathBuffer;
 import com.jme3.renderer.RenderManager;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.control.AbstractControl;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public abstract class AbstractNavMeshControl extends AbstractControl {
 
     protected BetterCharacterControl characterControl;
-    protected List<Vector3f> pathList;
+    //The waypoints being walked, owned by the control and reused.
+    protected PathBuffer path;
+    //Scratch vectors so walking allocates nothing.
+    protected final Vector3f waypoint = new Vector3f();
+    protected final Vector3f walkDirection = new Vector3f();
     protected int currentIndex;
     protected AnimChannel walkChannel;
     protected static final float walkspeed = 2f;
     protected boolean startWalking;
     public AbstractNavMeshControl() {
-        this.pathList = new ArrayList<>();
+        this.path = new PathBuffer();
     }
 
     @Override
@@ -47,17 +51,36 @@ public abstract class AbstractNavMeshControl extends AbstractControl {
     }
 
     protected void moveToWaypoint() {
-        Vector3f dir = pathList.get(currentIndex).subtract(spatial.getWorldTranslation()).setY(0f).normalizeLocal();
-        System.out.println("Approaching " + pathList.get(currentIndex) + " Direction: " + dir);
+        path.getPoint(currentIndex, waypoint);
+        Vector3f dir = walkDirection.set(waypoint).subtractLocal(spatial.getWorldTranslation()).setY(0f).normalizeLocal();
+        System.out.println("Approaching " + waypoint + " Direction: " + dir);
         characterControl.setViewDirection(dir);
         characterControl.setWalkDirection(dir.multLocal(walkspeed));
         walk(true);
     }
 
     public void followPath(List<Vector3f> pathList) {
-        this.pathList = pathList;
+        path.clear();
+        for (Vector3f point: pathList) {
+            path.addPoint(point.x, point.y, point.z, 0, 0);
+        }
+        startFollowing();
+    }
+
+    /**
+     * Walks the waypoints of a path. They are copied so the buffer can be
+     * reused for the next request right away.
+     *
+     * @param pathBuffer The path to walk.
+     */
+    public void followPath(PathBuffer pathBuffer) {
+        path.set(pathBuffer);
+        startFollowing();
+    }
+
+    protected void startFollowing() {
         currentIndex = 0;
-        if (!pathList.isEmpty()) {
+        if (path.getPointCount() > 0) {
             startWalking = true; //This assures walking will start.
 //            moveToWaypoint(); // Start walking for the first time
         }
@@ -67,7 +90,7 @@ public abstract class AbstractNavMeshControl extends AbstractControl {
         System.out.println("Stop Walking");
         characterControl.setWalkDirection(Vector3f.ZERO);
         walk(false);
-        pathList.clear();
+        path.clear();
     }
 
     @Override
@@ -86,6 +109,6 @@ public abstract class AbstractNavMeshControl extends AbstractControl {
 
     protected boolean isPathListDone() {
         // e.g. index 2 -> size >= 3
-        return currentIndex + 1 > pathList.size();
+        return currentIndex + 1 > path.getPointCount();
     }
 }
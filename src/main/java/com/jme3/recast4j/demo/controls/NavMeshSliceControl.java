@@ -1,13 +1,29 @@
 package com.jme3.recast4j.demo.controls;
 
 import com.jme3.math.Vector3f;
-import org.recast4j.detour.NavMeshQuery;
+import com.jme3.recast4j.demo.PathBuffer;
+import com.jme3.recast4j.demo.states.SlicedPathSchedulerState;
+import com.jme3.recast4j.demo.states.SlicedPathSchedulerState.SlicedRequest;
+import org.recast4j.detour.QueryFilter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import org.recast4j.detour.Result;
+import java.util.Map;
 
 /**
- * This Class shows how Pathfinding can be done in slices and dynamic.
+ * This Class shows how Pathfinding can be done in slices and dynamic. The
+ * search itself is run by the SlicedPathSchedulerState which spreads the
+ * iterations of all agents over a fixed time budget every frame.
+ *
+ * Two searches are started. A short probe only gets a few iterations and
+ * returns the best partial corridor so the agent starts walking right away.
+ * The full search keeps running toward the goal and is never restarted.
+ * Detour ends a sliced search when it is finalized, so the probe is the only
+ * partial corridor; it leads to the node closest to the goal found so far
+ * and can head into a dead end. When the full search finishes its corridor
+ * is joined to the walked one, backing up along it to where the two meet if
+ * the agent left the full corridor, and replaces the remaining waypoints.
  */
 public class NavMeshSliceControl extends AbstractNavMeshControl {
     /**
@@ -18,18 +34,59 @@ public class NavMeshSliceControl extends AbstractNavMeshControl {
     protected static final float epsilon = 0.3f;
 
     /**
-     * How many algorithm iterations should be done every frame. This is hard to answer as it depends on the available
-     * time and especially fps. If you have low fps you can fit more iterations.
+     * Iterations for the probe. Small so the agent starts moving soon.
      */
-    protected static final int maxIters = 1;
-    protected int iterCount = 0;
-    protected int lastIterCount = 0;
-    protected NavMeshQuery query;
-    boolean isFinished = false;
+    protected static final int probeIters = 64;
 
-    public NavMeshSliceControl(NavMeshQuery query) {
+    protected SlicedPathSchedulerState scheduler;
+    //Gets the agent moving with a partial corridor.
+    protected SlicedRequest probe;
+    //Runs to the goal, its corridor replaces the probe's.
+    protected SlicedRequest full;
+    //Where the search is heading.
+    protected float[] goalPos;
+    //The probe corridor being walked, null if none.
+    protected List<Long> walked;
+    //Higher priorities get their iterations first.
+    protected int priority = 0;
+    //The straight path of the last corridor, reused for every path.
+    protected final PathBuffer part = new PathBuffer();
+
+    public NavMeshSliceControl(SlicedPathSchedulerState scheduler) {
         super();
-        this.query = query;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts a probe and a full sliced search. Any searches still running
+     * are cancelled.
+     *
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param startPos The position in the start poly.
+     * @param endPos The position in the end poly.
+     * @param filter The filter to use.
+     */
+    public void findPath(long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter) {
+        cancel();
+        this.goalPos = endPos;
+        this.walked = null;
+        probe = scheduler.request(startRef, endRef, startPos, endPos, filter, priority, probeIters, null);
+        full = scheduler.request(startRef, endRef, startPos, endPos, filter, priority, 0, null);
+    }
+
+    /**
+     * Cancels the searches still running. The agent keeps walking what it has.
+     */
+    public void cancel() {
+        if (probe != null) {
+            probe.cancel();
+            probe = null;
+        }
+        if (full != null) {
+            full.cancel();
+            full = null;
+        }
     }
 
     @Override
@@ -39,37 +96,95 @@ public class NavMeshSliceControl extends AbstractNavMeshControl {
         updatePath();
 
         if (isPathListDone()) {
-            if (hasSomethingToFlush()) {
-                flushBuffers();
+            return;
+        }
+
+        // Regular Path Walking
+        if (path.distance(currentIndex, getSpatial().getWorldTranslation()) < epsilon) {
+            // reached a target, increase the index, that's all
+            currentIndex++;
+
+            if (!isPathListDone()) { // still in the list?
                 moveToWaypoint();
-            } else if (isFinished) {
-                stopFollowing(); // We've reached our goal!
+            } else { // reached our target
+                stopFollowing();
             }
-        } else { // Regular Path Walking
-            if (getSpatial().getWorldTranslation().distance(pathList.get(currentIndex)) < epsilon) {
-                // reached a target, increase the index, that's all
-                currentIndex++;
-
-                if (isPathListDone()) { // still in the list?
-                    moveToWaypoint();
-                } else { // reached our target
-                    stopFollowing();
-                }
-            } // else -> AntiStuck Detection?
-        }
+        } // else -> AntiStuck Detection?
     }
 
+    /**
+     * Walks the probe corridor once it is done, then switches to the full
+     * corridor once that is done.
+     */
     protected void updatePath() {
-        if (isFinished) {
+        if (probe != null && probe.isDone()) {
+            SlicedRequest done = probe;
+            probe = null;
+            if (!done.getStraightPath().isEmpty()) {
+                walked = done.getPolys();
+                part.setStraightPath(done.getStraightPath());
+                super.followPath(part);
+                //The probe got there, no need for the full search.
+                if (!done.isPartial() && full != null) {
+                    full.cancel();
+                    full = null;
+                }
+            }
+        }
+
+        if (full == null || !full.isDone()) {
             return;
         }
 
-        Result<Integer> res = query.updateSlicedFindPath(maxIters);
-        if (res.succeeded()) {
-            isFinished = true;
+        SlicedRequest done = full;
+        full = null;
+        if (probe != null) {
+            probe.cancel();
+            probe = null;
+        }
+        if (done.getPolys().isEmpty()) {
+            return;
         }
 
-        iterCount = res.result;
+        //Still standing at the start, the full path is the one to walk.
+        if (walked == null || isPathListDone()) {
+            part.setStraightPath(done.getStraightPath());
+        } else {
+            float[] from = getSpatial().getWorldTranslation().toArray(null);
+            List<Long> corridor = join(walked, path.getPointRef(Math.max(0, currentIndex - 1)), done.getPolys());
+            part.setStraightPath(scheduler.findStraightPath(from, goalPos, corridor));
+        }
+        walked = null;
+        if (part.getPointCount() > 0) {
+            super.followPath(part);
+        }
+    }
+
+    /**
+     * Joins the full corridor to the walked one. If the agent's poly is on
+     * the full corridor the rest of it is used, otherwise the walked corridor
+     * is followed back to the last poly the two share. Both start in the same
+     * poly so there always is one.
+     *
+     * @param walked The corridor being walked.
+     * @param at The poly the agent is in, or one it just left.
+     * @param corridor The full corridor.
+     * @return The corridor from the agent's poly to the end.
+     */
+    protected static List<Long> join(List<Long> walked, long at, List<Long> corridor) {
+        Map<Long, Integer> index = new HashMap<>();
+        for (int i = 0; i < corridor.size(); i++) {
+            index.putIfAbsent(corridor.get(i), i);
+        }
+
+        List<Long> joined = new ArrayList<>();
+        int i = Math.max(0, walked.indexOf(at));
+        for (; i > 0 && !index.containsKey(walked.get(i)); i--) {
+            joined.add(walked.get(i));
+        }
+        Integer from = index.get(walked.get(i));
+        joined.addAll(corridor.subList(from == null ? 0 : from, corridor.size()));
+        return joined;
     }
 
     @Override
@@ -77,23 +192,15 @@ public class NavMeshSliceControl extends AbstractNavMeshControl {
         throw new IllegalArgumentException("Not Supported");
     }
 
-    /**
-     * We have two buffers, one is being worked on by detour, the other one is being walked off by our agent.
-     * Flushing means stopping detour and  pushing it's progress to the agent. This could happen every frame,
-     * but it's only required if the agent runs out of waypoints really..
-     *
-     * @return True if the Detour Buffer can be flushed
-     */
-    protected boolean hasSomethingToFlush() {
-        return iterCount != 0 && iterCount > lastIterCount;
+    @Override
+    public void followPath(PathBuffer pathBuffer) {
+        throw new IllegalArgumentException("Not Supported");
     }
 
-    protected void flushBuffers() {
-        lastIterCount = iterCount;
-        // @TODO: Flushing, that means getting the below thing to work.
-        //query.finalizeSlicedFindPathPartial();
-        pathList.clear();
-        //pathList.add(all results)
-        currentIndex = 0;
+    /**
+     * @param priority Higher priorities get their iterations first.
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
     }
 }
@@ -1,5 +1,9 @@
 package com.jme3.recast4j.demo.controls;
 
+import com.jme3.recast4j.demo.AgentCorridor;
+import com.jme3.recast4j.demo.PathBuffer;
+import com.jme3.scene.Spatial;
+
 public class PhysicsAgentControl extends AbstractNavMeshControl {
     /**
      * Epsilon is the distance required to accept a waypoint as close enough, see how changing this value changes
@@ -8,15 +12,57 @@ public class PhysicsAgentControl extends AbstractNavMeshControl {
      */
     protected static final float epsilon = 0.3f;
 
+    /**
+     * Seconds between corridor updates while chasing. The corridor is repaired
+     * locally most of the time so this can be short.
+     */
+    protected static final float chaseInterval = 0.2f;
+
+    protected AgentCorridor corridor;
+    protected Spatial chaseTarget;
+    protected float chaseTimer;
+    //Corners of the corridor, refilled every update.
+    protected final PathBuffer corners = new PathBuffer(8);
+    protected final float[] from = new float[3];
+    protected final float[] to = new float[3];
+
     public PhysicsAgentControl() {
         super();
     }
 
+    /**
+     * Follows a moving target. The corridor is kept up to date as the agent
+     * and target move and the agent walks to its next corners, so there is no
+     * need to call findPath and followPath again.
+     *
+     * @param corridor The corridor to keep, with the query and filter to use.
+     * @param target The spatial to chase.
+     */
+    public void chase(AgentCorridor corridor, Spatial target) {
+        this.corridor = corridor;
+        this.chaseTarget = target;
+        this.chaseTimer = chaseInterval;
+    }
+
+    /**
+     * Stops chasing and walking. Reaching the last corner while chasing only
+     * stops walking until the next corridor update.
+     */
+    public void stopChasing() {
+        chaseTarget = null;
+        stopFollowing();
+    }
+
     @Override
     protected void controlUpdate(float tpf) {
         super.controlUpdate(tpf);
+
+        if (chaseTarget != null) {
+            updateChase(tpf);
+        }
+
         if (!isPathListDone()) {
-            if (getSpatial().getWorldTranslation().distance(pathList.get(currentIndex)) < epsilon) {
+            if (path.distance(currentIndex, getSpatial().getWorldTranslation()) < epsilon) {
                 // reached a target, increase the index, that's all
                 currentIndex++;
 
@@ -28,4 +74,23 @@ public class PhysicsAgentControl extends AbstractNavMeshControl {
             } // else -> AntiStuck Detection?
         } // else we've reached our goal
     }
+
+    /**
+     * Moves the corridor ends to the agent and target and walks the new
+     * corners.
+     */
+    protected void updateChase(float tpf) {
+        chaseTimer += tpf;
+        if (chaseTimer < chaseInterval) {
+            return;
+        }
+        chaseTimer = 0;
+
+        getSpatial().getWorldTranslation().toArray(from);
+        chaseTarget.getWorldTranslation().toArray(to);
+        if (corridor.update(from, to)) {
+            corridor.getCorners(corners);
+            followPath(corners);
+        }
+    }
 }
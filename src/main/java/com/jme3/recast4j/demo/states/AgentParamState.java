@@ -77,6 +77,9 @@ import org.slf4j.LoggerFactory;
 public class AgentParamState extends BaseAppState {
 
     private static final Logger LOG = LoggerFactory.getLogger(AgentParamState.class.getName());
+    //Crowds with at least this many active agents steer by a flow field 
+    //rather than have the crowd find a path for every agent.
+    private static final int FLOW_FIELD_MIN_AGENTS = 32;
     
     private Container contAgentParams;
     private TextField fieldColQueryRange;
@@ -644,11 +647,18 @@ public class AgentParamState extends BaseAppState {
          * This loop checks listGridAgents against the active CrowdAgents for 
          * the selected crowd. If the crowd contains the CrowdAgent, update the 
          * parameters rather than creating new ones. If we update, we don't 
-         * create a new CrowdAgent. 
+         * create a new CrowdAgent. The crowd snaps new agents to the navMesh 
+         * itself when they are created so there is no separate search for 
+         * their polys. The active count is kept here rather than asking the 
+         * crowd, which builds a new list each time, for every agent.
          */        
-        for (GridAgent ga: listGridAgents) {
+        int count = listGridAgents.size();
+        int active = crowd.getActiveAgents().size();
+        for (int i = 0; i < count; i++) {
+            GridAgent ga = listGridAgents.get(i);
+            CrowdAgent agent = ga.getCrowdAgent();
             
-            if (crowd.getActiveAgents().contains(ga.getCrowdAgent())) {
+            if (agent != null && agent.active && crowd.getAgent(agent.idx) == agent) {
                 //Update the parameters for the CrowdAgent.
                 crowd.updateAgentParameters(ga.getCrowdAgent().idx, ap);
                 
@@ -683,16 +693,25 @@ public class AgentParamState extends BaseAppState {
                             + crowd.getAgentCount() + "].", 0);
                     return;
                 //Grid size to small if active agents + current GridSize - current GridAgent to small.
-                } else if ((listGridAgents.size() + crowd.getActiveAgents().size() - listGridAgents.lastIndexOf(ga)) > crowd.getAgentCount()) {
+                } else if ((count + active - i) > crowd.getAgentCount()) {
                     displayMessage("Agent grid size of [" + listGridAgents.size() 
                             + "] plus active agents of [" 
-                            + crowd.getActiveAgents().size() 
+                            + active 
                             + "] excedes the crowd size ["
                             + crowd.getAgentCount() + "].", 0);
                     return;
                 }
+                
                 //Add CrowdAgents to the crowd.
                 CrowdAgent createAgent = crowd.createAgent(ga.getSpatialForAgent().getWorldTranslation(), ap);
+                
+                //Not on the navMesh so the crowd can't move it.
+                if (createAgent.state == CrowdAgent.CrowdAgentState.DT_CROWDAGENT_STATE_INVALID) {
+                    LOG.info("No poly found for [{}], skipping.", ga.getSpatialForAgent().getName());
+                    crowd.removeAgent(createAgent);
+                    continue;
+                }
+                active++;
                 crowd.setSpatialForAgent(createAgent, ga.getSpatialForAgent());
                 
                 //Set the CrowdAgent for the GridAgent.
@@ -772,7 +791,8 @@ public class AgentParamState extends BaseAppState {
     }
 
     /**
-     * Set the target for the selected crowd.
+     * Set the target for the selected crowd. Large crowds share one flow 
+     * field to the target instead of each agent finding its own path.
      */
     private void setTarget() {
 
@@ -819,6 +839,10 @@ public class AgentParamState extends BaseAppState {
             LOG.info("nearestPos            [{}] nearestRef {}", nearest.result.getNearestPos(), nearest.result.getNearestRef());
             if (!nearest.status.isSuccess() || nearest.result.getNearestRef() == 0) {
                 LOG.info("getNearestRef() can't be 0. ref [{}]", nearest.result.getNearestRef());
+            } else if (crowd.getActiveAgents().size() >= FLOW_FIELD_MIN_AGENTS) {
+                //One reverse search from the target serves every agent.
+                boolean moveByFlowField = getState(CrowdBuilderState.class).moveByFlowField(crowd, nearest.result.getNearestRef(), nearest.result.getNearestPos());
+                LOG.info("moveByFlowField       [{}]", moveByFlowField);
             } else {
                 //Sets all CrowdAgent targets at same time.
                 boolean requestMoveToTarget = crowd.requestMoveToTarget(target);//DetourUtils.createVector3f(nearest.result.getNearestPos()), nearest.result.getNearestRef());
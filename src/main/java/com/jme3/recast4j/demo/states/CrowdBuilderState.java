@@ -32,13 +32,18 @@ import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.BaseAppState;
 import com.jme3.input.event.MouseButtonEvent;
 import com.jme3.math.Vector3f;
-import com.jme3.recast4j.Detour.BetterDefaultQueryFilter;
 import com.jme3.recast4j.Detour.Crowd.CircleFormationHandler;
 import com.jme3.recast4j.Detour.Crowd.Crowd;
 import com.jme3.recast4j.Detour.Crowd.CrowdManager;
 import com.jme3.recast4j.Detour.Crowd.Impl.CrowdManagerAppstate;
 import com.jme3.recast4j.Detour.Crowd.MovementApplicationType;
 import static com.jme3.recast4j.demo.AreaModifications.*;
+import com.jme3.recast4j.demo.CompiledQueryFilter;
+import com.jme3.recast4j.demo.DoorRegistry;
+import com.jme3.recast4j.demo.FixedStepCrowd;
+import com.jme3.recast4j.demo.FlowFieldMove;
+import com.jme3.recast4j.demo.FlowFields;
+import com.jme3.recast4j.demo.NavMeshJournal;
 import com.jme3.recast4j.demo.controls.CrowdChangeControl;
 import com.jme3.recast4j.demo.controls.CrowdDebugControl;
 import com.jme3.recast4j.demo.controls.PhysicsAgentControl;
@@ -67,7 +72,7 @@ import com.simsilica.lemur.list.DefaultCellRenderer;
 import com.simsilica.lemur.style.ElementId;
 import com.simsilica.lemur.text.DocumentModelFilter;
 import com.simsilica.lemur.text.TextFilters;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -81,7 +86,6 @@ import org.recast4j.detour.NavMeshQuery;
 import org.recast4j.detour.QueryFilter;
 import org.recast4j.detour.crowd.CrowdAgent;
 import org.recast4j.detour.crowd.ObstacleAvoidanceQuery.ObstacleAvoidanceParams;
-import org.recast4j.detour.io.MeshSetReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -144,21 +148,36 @@ public class CrowdBuilderState extends BaseAppState {
     private Checkbox checkExcludeDoor;
     private Checkbox checkExcludeJump;
     private Checkbox checkEditActive;
+    private Checkbox checkFixedStep;
     private HashMap<Crowd, NavMeshQuery> mapCrowds;
+    //The flow fields of each crowd's navMesh and the crowds moving by one.
+    private HashMap<Crowd, FlowFields> mapFlowFields;
+    private HashMap<Crowd, FlowFieldMove> mapFlowMoves;
+    private DoorRegistry.DoorListener doorListener;
     public static final int DT_CROWD_MAX_OBSTAVOIDANCE_PARAMS = 8;
     public static final int DT_CROWD_MAX_QUERY_FILTER_TYPE = 16;
     //Currently, only six area modifications in SampleAreaModifications.
     private static final int MAX_AREAMOD = 6;
+    //Step rate of crowds started with Fixed Step checked.
+    private static final int FIXED_STEP_RATE = 30;
+    //Flow fields kept per crowd for different goals.
+    private static final int MAX_FLOW_FIELDS = 8;
     @Override
     protected void initialize(Application app) {
         
         //Holds a paired Crowd and NavMeshQuery object with Crowd key and Query
         //value.
         mapCrowds = new HashMap<>();
+        mapFlowFields = new HashMap<>();
+        mapFlowMoves = new HashMap<>();
         
         //Displays when crowdSelectRef and crowdModelRef has changed and the model or 
         //selection is empty. Used as default for startup of listBoxActiveCrowds.  
         defaultActiveGridText = "No Active Grids";
+        
+        //Agents replan when a door on or near their corridor changes.
+        doorListener = this::onDoorChanged;
+        getState(NavState.class).getDoorRegistry().addDoorListener(doorListener);
     }
 
     @Override
@@ -166,15 +185,76 @@ public class CrowdBuilderState extends BaseAppState {
         //Removing will also cleanup the AgentGridState and AgentParamState
         //lemur objects.
         ((SimpleApplication) getApplication()).getGuiNode().detachChild(contTabs);
+        
+        getState(NavState.class).getDoorRegistry().removeDoorListener(doorListener);
 
         Iterator<Crowd> iterator = mapCrowds.keySet().iterator();
         while (iterator.hasNext()) {
             Crowd crowd = iterator.next();
+            stopSimulation(crowd);
             getState(CrowdManagerAppstate.class).getCrowdManager().removeCrowd(crowd);
             iterator.remove();
         }
+        mapFlowFields.clear();
+        mapFlowMoves.clear();
     }
 
+    /**
+     * Copies a door change to the navMesh of every crowd and replans the 
+     * agents whose move target it affects. Crowds read their navMesh from the 
+     * saved file, which has the same poly refs as the NavState navMesh it was 
+     * saved from, so door polys that still exist in a crowd's navMesh get the 
+     * new door flags. A closed door blocks the corridors that go through its 
+     * polys. An opened door may give any agent with a target a shorter way so 
+     * they all replan. The crowd spreads the new path requests over its 
+     * updates. Flow fields that used the door's tiles are dropped.
+     * 
+     * @param door The door that changed.
+     * @param polys The poly refs of the door.
+     * @param open The new state of the door.
+     */
+    private void onDoorChanged(Spatial door, long[] polys, boolean open) {
+        int flags = open ? DoorRegistry.DOOR_OPEN : DoorRegistry.DOOR_CLOSED;
+        for (Crowd crowd: mapCrowds.keySet()) {
+            NavMesh navMesh = mapCrowds.get(crowd).getAttachedNavMesh();
+            int[] tiles = new int[polys.length];
+            int count = 0;
+            //A fixed step crowd steps under its own lock.
+            synchronized (crowd) {
+                for (long ref: polys) {
+                    if (navMesh.isValidPolyRef(ref)) {
+                        navMesh.setPolyFlags(ref, flags);
+                        tiles[count++] = navMesh.decodePolyIdTile(ref);
+                    }
+                }
+                
+                for (CrowdAgent agent: crowd.getActiveAgents()) {
+                    if (agent.targetRef == 0) {
+                        continue;
+                    }
+                    if (open || throughDoor(agent.corridor.getPath(), polys)) {
+                        crowd.requestMoveTarget(agent.idx, agent.targetRef, agent.targetPos);
+                    }
+                }
+            }
+            
+            //Agents steering by a flow field follow the rebuilt field.
+            mapFlowFields.get(crowd).onTilesChanged(Arrays.copyOf(tiles, count));
+        }
+    }
+    
+    /**
+     * @return True if any of the door polys is on the path.
+     */
+    private boolean throughDoor(List<Long> path, long[] polys) {
+        for (long ref: polys) {
+            if (path.contains(ref)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Called by AgentParamState(onEnable). CrowdBuilderState needs 
      * AgentGridState and AgentParamState to build its gui. This is the end of 
@@ -358,7 +438,7 @@ public class CrowdBuilderState extends BaseAppState {
         });
         
         for (int i = 0; i < DT_CROWD_MAX_QUERY_FILTER_TYPE; i++) {
-            listBoxFilters.getModel().add(new BetterDefaultQueryFilter());
+            listBoxFilters.getModel().add(new CompiledQueryFilter());
         }
         
         filtersModelRef = listBoxFilters.getModel().createReference();
@@ -443,6 +523,9 @@ public class CrowdBuilderState extends BaseAppState {
         fieldMaxAgentRadius.setSingleLine(true);
         fieldMaxAgentRadius.setPreferredWidth(50);                            
         
+        //Step the crowd on its own thread at a fixed rate.
+        checkFixedStep = contCrowdParams.addChild(new Checkbox("Fixed Step"), "span 2");
+        
         
         
         //The Active Grids listBox.
@@ -648,7 +731,7 @@ public class CrowdBuilderState extends BaseAppState {
         /**
          * Updates when listBoxFilters selections are made. If for any reason 
          * the versioned reference returns empty, the listBoxFilters will 
-         * re-populate with BetterDefaultQueryFilters if no crowd is selected, 
+         * re-populate with CompiledQueryFilters if no crowd is selected, 
          * or with the selected crowds filters if a crowd is selected.
          * 
          * Selection changes update the include/exclude checkboxes based off the
@@ -679,7 +762,7 @@ public class CrowdBuilderState extends BaseAppState {
          * 
          * If a crowd is selected: When toggled to checked, listBoxFilters will 
          * clear and re-populate using the selected crowd. When toggled to 
-         * unchecked, all filters are reset to new BetterDefaultQueryFilters.
+         * unchecked, all filters are reset to new CompiledQueryFilters.
          * 
          * If no crowd is selected: No changes to the list will be made. 
          */
@@ -692,7 +775,29 @@ public class CrowdBuilderState extends BaseAppState {
                 updateFiltersList();
             }
         }
-
+        
+        //Steer the crowds moving by flow field, dropping them once every 
+        //agent has arrived or been given another move.
+        mapFlowMoves.values().removeIf(move -> !move.update());
+    }
+    
+    /**
+     * Moves every active agent of a crowd to one goal along a flow field of 
+     * the crowd's navMesh, replacing any flow field move the crowd already 
+     * has. The field is built with the crowd's first filter.
+     * 
+     * @param crowd The crowd to move.
+     * @param goalRef The goal poly.
+     * @param goalPos The goal position on the goal poly.
+     * @return False if the crowd is unknown.
+     */
+    public boolean moveByFlowField(Crowd crowd, long goalRef, float[] goalPos) {
+        FlowFields fields = mapFlowFields.get(crowd);
+        if (fields == null) {
+            return false;
+        }
+        mapFlowMoves.put(crowd, new FlowFieldMove(crowd, fields, goalRef, goalPos, crowd.getFilter(0)));
+        return true;
     }
     
     //Explains the Crowd parameters.
@@ -760,10 +865,10 @@ public class CrowdBuilderState extends BaseAppState {
         "lower cost. You set the filter for the agent in the [ Agent Parameters ] tab.",
         " ",
         "* Filter - Each Crowd has 16 filters available for path finding. You can set these filters, their ",
-        "include/exclude flags and costs prior to starting any crowd, but only flags may be updated after ",
-        "startup. Selecting any filter in the list will also display that filters include/exclude flags but not ",
-        "Area Costs. They will never update because the getCost() method is expected to be used only ",
-        "internally after creation.",
+        "include/exclude flags and costs prior to starting any crowd. After startup flags may be updated, ",
+        "and costs too for filters created in this tab, which are compiled into a cost table that is swapped ",
+        "in place. Selecting any filter in the list will also display that filters include/exclude flags but ",
+        "not Area Costs.",
         " ",
         "* Edit Active - If unchecked: When a new crowd is created, the current filters in the Filters list ",
         "are used for the crowd constructor that accepts filters.",
@@ -776,7 +881,7 @@ public class CrowdBuilderState extends BaseAppState {
         " ",
         "If a crowd is selected: When toggled to checked, the Filters list will clear and re-populate using ",
         "the selected crowd. When toggled to unchecked, all filters are reset to new ",
-        "BetterDefaultQueryFilters.",
+        "CompiledQueryFilters.",
         " ",
         "If no crowd is selected: No changes to the list will be made.",
         " ",
@@ -791,6 +896,10 @@ public class CrowdBuilderState extends BaseAppState {
         "  ",
         "Max Agent Radius - The maximum radius of any agent that will be added to the crowd.",
         " ",
+        "Fixed Step - The crowd is stepped on its own thread " + FIXED_STEP_RATE + " times a second instead of ",
+        "every frame. Frame time no longer includes the crowd and agents behave the same at any frame ",
+        "rate. Spatials are moved to positions interpolated between the last two steps.",
+        " ",
         "Movement Type - Each type determines how movement is applied to an agent.",
         " ",
         "* BETTER_CHARACTER_CONTROL - Use physics and the BetterCharacterControl to set move ",
@@ -909,7 +1018,10 @@ public class CrowdBuilderState extends BaseAppState {
                 //To fully remove the crowd we have to remove it from the 
                 //CrowdManager, mapCrowds (removes the query object also), and 
                 //the listBoxActiveCrowds.
+                stopSimulation(crowd);
                 getState(CrowdManagerAppstate.class).getCrowdManager().removeCrowd(crowd);
+                mapFlowFields.remove(crowd);
+                mapFlowMoves.remove(crowd);
                 listBoxActiveCrowds.getModel().remove(crowd);
                 //Lemur getSelected() does not update if you remove or insert 
                 //into a listBox. Best to set it to -1 (unselected) and force
@@ -928,6 +1040,17 @@ public class CrowdBuilderState extends BaseAppState {
 
     }
     
+    /**
+     * Stops the simulation thread of a crowd started with Fixed Step.
+     * 
+     * @param crowd The crowd being removed.
+     */
+    private void stopSimulation(Crowd crowd) {
+        if (crowd instanceof FixedStepCrowd) {
+            ((FixedStepCrowd) crowd).stopSimulation();
+        }
+    }
+    
     /**
      * Starts and adds a crowd to the CrowdManager.
      */
@@ -987,14 +1110,15 @@ public class CrowdBuilderState extends BaseAppState {
                 applicationType = MovementApplicationType.NONE;
         }
         
-        MeshSetReader msr = new MeshSetReader();
         try {
-            //Read in the saved navMesh with same maxVertPerPoly(3) saved. Will 
-            //be added to mapCrowds as a key using the text returned by 
-            //fieldCrowdName.
-            NavMesh navMesh = msr.read(new FileInputStream(mesh), 3);
+            //Read in the saved navMesh with same maxVertPerPoly(3) saved, with 
+            //the door and other edits from its journal. Will be added to 
+            //mapCrowds as a key using the text returned by fieldCrowdName.
+            NavMesh navMesh = NavMeshJournal.load(new File(mesh), new File(mesh + ".journal"), 3);
             //Create the query object for pathfinding in this Crowd. Will be 
             //added to the mapCrowds as a crowd so each query object is referenced.  
+            //The crowd has its own navMesh and keeps the query for as long as 
+            //it lives, so it gets its own rather than a thread's pooled one.
             NavMeshQuery query = new NavMeshQuery(navMesh);
                             
             Crowd crowd;
@@ -1005,12 +1129,12 @@ public class CrowdBuilderState extends BaseAppState {
                  * BetterDefaultQueryFilter and rest DefaultQueryFilter when 
                  * checkeditActive and there is a crowd selected.
                  */
-                crowd = new Crowd(applicationType, maxAgents, maxAgentRadius, navMesh);
+                crowd = new FixedStepCrowd(applicationType, maxAgents, maxAgentRadius, navMesh);
             } else {
                 //Create crowd using filters from list.
                 IntFunction<QueryFilter> filters = (int i) -> listBoxFilters.getModel().get(i);
                 //Create the crowd.
-                crowd = new Crowd(applicationType, maxAgents, maxAgentRadius, navMesh, filters);
+                crowd = new FixedStepCrowd(applicationType, maxAgents, maxAgentRadius, navMesh, filters);
                 /**
                  * Clear and re-populate the listBoxFilters list with new 
                  * filters if checkedEditActive is unchecked or there is no 
@@ -1024,7 +1148,11 @@ public class CrowdBuilderState extends BaseAppState {
             
             //Add to CrowdManager, mapCrowds, and listBoxActiveCrowds.
             getState(CrowdManagerAppstate.class).getCrowdManager().addCrowd(crowd);
+            if (checkFixedStep.isChecked()) {
+                ((FixedStepCrowd) crowd).startSimulation(FIXED_STEP_RATE);
+            }
             mapCrowds.put(crowd, query);
+            mapFlowFields.put(crowd, new FlowFields(navMesh, MAX_FLOW_FIELDS));
             listBoxActiveCrowds.getModel().add(crowd); 
         } catch (IOException | NoSuchFieldException | IllegalAccessException ex) {
             LOG.error("{} {}", CrowdBuilderState.class.getName(), ex);
@@ -1351,7 +1479,8 @@ public class CrowdBuilderState extends BaseAppState {
     /**
      * Updates a single query filter. If a crowd is selected and checkEditActive 
      * is checked then only the selected crowds selected filter will be updated 
-     * and then only the include/exclude flags.
+     * in place. Filters created here are CompiledQueryFilters and get their 
+     * flags and area costs updated, any other filter only its flags.
      * 
      * For all other situations, a new filter will be created using the 
      * includes/excludes flags and any valid area cost above 1.0f. Any cost 
@@ -1365,75 +1494,91 @@ public class CrowdBuilderState extends BaseAppState {
         //We are editing an existing crowd filter so only set filters.
         if (checkEditActive.isChecked() && getSelectedCrowd() != null) {
             filter = listBoxFilters.getModel().get(selected);
-            filter.setIncludeFlags(getIncludes());
-            filter.setExcludeFlags(getExcludes());
+            if (filter instanceof CompiledQueryFilter) {
+                //Compiled filters take new flags and costs in place as one 
+                //change, the crowd keeps using the same filter.
+                ((CompiledQueryFilter) filter).set(getIncludes(), getExcludes(), readAreaCosts());
+            } else {
+                filter.setIncludeFlags(getIncludes());
+                filter.setExcludeFlags(getExcludes());
+            }
         } else {
             //We are editing a new filter so we can create and replace any 
             //filters we choose using areaCosts.
-            float[] areaCost = new float[MAX_AREAMOD];
-        
-            //Prefill array in case invalid data is in any of the following 
-            //textfields.
-            for (int i = 0; i < MAX_AREAMOD; i++) {
-                areaCost[i] = 1.0f;
-            }
+            filter = new CompiledQueryFilter(getIncludes(), getExcludes(), readAreaCosts());
+            listBoxFilters.getModel().remove((int) selected);
+            listBoxFilters.getModel().add((int) selected, filter);
+        }
 
-            //All types must be in same order as those in SampleAreaModifications.
-            if (!fieldCostGround.getText().isEmpty() 
-            &&   getState(UtilState.class).isNumeric(fieldCostGround.getText()) ) {
-                float cost = new Float(fieldCostGround.getText());
-                if (cost > 1.0f) {
-                    areaCost[0] = cost;
-                }
-            }
+        setCheckedFlags(listBoxFilters.getModel().get(selected).getIncludeFlags(), true);
+        setCheckedFlags(listBoxFilters.getModel().get(selected).getExcludeFlags(), false);
+    }
+    
+    /**
+     * Reads the area cost fields. Any cost field that is not valid or < 1.0f 
+     * is set to one.
+     * 
+     * @return The cost of each area type.
+     */
+    private float[] readAreaCosts() {
+        float[] areaCost = new float[MAX_AREAMOD];
+    
+        //Prefill array in case invalid data is in any of the following 
+        //textfields.
+        for (int i = 0; i < MAX_AREAMOD; i++) {
+            areaCost[i] = 1.0f;
+        }
 
-            if (!fieldCostWater.getText().isEmpty()
-            &&   getState(UtilState.class).isNumeric(fieldCostWater.getText()) ) {
-                float cost = new Float(fieldCostWater.getText());
-                if (cost > 1.0f) {
-                    areaCost[1] = cost;
-                }
+        //All types must be in same order as those in SampleAreaModifications.
+        if (!fieldCostGround.getText().isEmpty() 
+        &&   getState(UtilState.class).isNumeric(fieldCostGround.getText()) ) {
+            float cost = new Float(fieldCostGround.getText());
+            if (cost > 1.0f) {
+                areaCost[0] = cost;
             }
+        }
 
-            if (!fieldCostRoad.getText().isEmpty()
-            &&   getState(UtilState.class).isNumeric(fieldCostRoad.getText()) ) {
-                float cost = new Float(fieldCostRoad.getText());
-                if (cost > 1.0f) {
-                    areaCost[2] = cost;
-                }
+        if (!fieldCostWater.getText().isEmpty()
+        &&   getState(UtilState.class).isNumeric(fieldCostWater.getText()) ) {
+            float cost = new Float(fieldCostWater.getText());
+            if (cost > 1.0f) {
+                areaCost[1] = cost;
             }
+        }
 
-            if (!fieldCostGrass.getText().isEmpty()
-            &&   getState(UtilState.class).isNumeric(fieldCostGrass.getText()) ) {
-                float cost = new Float(fieldCostGrass.getText());
-                if (cost > 1.0f) {
-                    areaCost[3] = cost;
-                }
+        if (!fieldCostRoad.getText().isEmpty()
+        &&   getState(UtilState.class).isNumeric(fieldCostRoad.getText()) ) {
+            float cost = new Float(fieldCostRoad.getText());
+            if (cost > 1.0f) {
+                areaCost[2] = cost;
             }
+        }
 
-            if (!fieldCostDoor.getText().isEmpty()
-            &&   getState(UtilState.class).isNumeric(fieldCostDoor.getText()) ) {
-                float cost = new Float(fieldCostDoor.getText());
-                if (cost > 1.0f) {
-                    areaCost[4] = cost;
-                }
+        if (!fieldCostGrass.getText().isEmpty()
+        &&   getState(UtilState.class).isNumeric(fieldCostGrass.getText()) ) {
+            float cost = new Float(fieldCostGrass.getText());
+            if (cost > 1.0f) {
+                areaCost[3] = cost;
             }
+        }
 
-            if (!fieldCostJump.getText().isEmpty()
-            &&   getState(UtilState.class).isNumeric(fieldCostJump.getText()) ) {
-                float cost = new Float(fieldCostJump.getText());
-                if (cost > 1.0f) {
-                    areaCost[5] = cost;
-                }
-            } 
-            
-            filter = new BetterDefaultQueryFilter(getIncludes(), getExcludes(), areaCost);
-            listBoxFilters.getModel().remove((int) selected);
-            listBoxFilters.getModel().add((int) selected, filter);
+        if (!fieldCostDoor.getText().isEmpty()
+        &&   getState(UtilState.class).isNumeric(fieldCostDoor.getText()) ) {
+            float cost = new Float(fieldCostDoor.getText());
+            if (cost > 1.0f) {
+                areaCost[4] = cost;
+            }
         }
 
-        setCheckedFlags(listBoxFilters.getModel().get(selected).getIncludeFlags(), true);
-        setCheckedFlags(listBoxFilters.getModel().get(selected).getExcludeFlags(), false);
+        if (!fieldCostJump.getText().isEmpty()
+        &&   getState(UtilState.class).isNumeric(fieldCostJump.getText()) ) {
+            float cost = new Float(fieldCostJump.getText());
+            if (cost > 1.0f) {
+                areaCost[5] = cost;
+            }
+        }
+        
+        return areaCost;
     }
     
     /**
@@ -1441,10 +1586,10 @@ public class CrowdBuilderState extends BaseAppState {
      * 
      * If checkEditActive is checked: Updates by clearing the list then 
      * re-populating using the selected crowd query filters or if no crowd is 
-     * selected, re-populates by creating all new BetterDefaultQueryFilter.
+     * selected, re-populates by creating all new CompiledQueryFilter.
      * 
      * If checkEditActive is unchecked: Updates by clearing the list then 
-     * re-populating using all new BetterDefaultQueryFilter.
+     * re-populating using all new CompiledQueryFilter.
      */
     private void updateFiltersList() {
         listBoxFilters.getModel().clear();
@@ -1456,7 +1601,7 @@ public class CrowdBuilderState extends BaseAppState {
             }
         } else {
             for (int i = 0; i < DT_CROWD_MAX_QUERY_FILTER_TYPE; i++) {
-                listBoxFilters.getModel().add(new BetterDefaultQueryFilter());
+                listBoxFilters.getModel().add(new CompiledQueryFilter());
             }
         }
         
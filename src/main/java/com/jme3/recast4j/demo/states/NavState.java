@@ -47,8 +47,6 @@ import com.jme3.recast4j.Recast.Utils.RecastUtils;
 import com.jme3.recast4j.demo.controls.PhysicsAgentControl;
 import com.jme3.scene.*;
 import com.jme3.scene.Node;
-import com.jme3.scene.shape.Box;
-import com.jme3.scene.shape.Line;
 import com.simsilica.lemur.event.DefaultMouseListener;
 import com.simsilica.lemur.event.MouseEventControl;
 import org.recast4j.detour.*;
@@ -70,10 +68,26 @@ import java.util.List;
 
 import com.jme3.recast4j.demo.Modification;
 import static com.jme3.recast4j.demo.AreaModifications.*;
+import com.jme3.recast4j.demo.CompiledQueryFilter;
+import com.jme3.recast4j.demo.DoorRegistry;
 import com.jme3.recast4j.demo.GeometryProviderBuilder2;
+import com.jme3.recast4j.demo.AltPathFinder;
+import com.jme3.recast4j.demo.AgentCorridor;
+import com.jme3.recast4j.demo.LandmarkTables;
 import com.jme3.recast4j.demo.JmeInputGeomProvider;
+import com.jme3.recast4j.demo.NavMeshEditor;
+import com.jme3.recast4j.demo.NavMeshIslands;
+import com.jme3.recast4j.demo.NavMeshJournal;
+import com.jme3.recast4j.demo.NavMeshLoadListener;
+import com.jme3.recast4j.demo.NavMeshQueryPool;
+import com.jme3.recast4j.demo.NavMeshSnapshots;
+import com.jme3.recast4j.demo.NearestPolyBatch;
+import com.jme3.recast4j.demo.PathBuffer;
+import com.jme3.recast4j.demo.PathDebugMesh;
+import com.jme3.recast4j.demo.OffMeshConnections;
 import com.jme3.recast4j.demo.ProgressListen;
 import com.jme3.recast4j.demo.RecastBuilder;
+import com.jme3.recast4j.demo.TileGraph;
 import com.jme3.recast4j.demo.TileLayerBuilder;
 import com.jme3.recast4j.demo.controls.DoorSwingControl;
 import com.jme3.util.BufferUtils;
@@ -81,14 +95,15 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.recast4j.detour.tilecache.TileCache;
 import org.recast4j.detour.tilecache.TileCacheMeshProcess;
 import org.recast4j.detour.tilecache.TileCacheParams;
 import org.recast4j.detour.tilecache.TileCacheStorageParams;
 import org.recast4j.detour.tilecache.io.compress.TileCacheCompressorFactory;
-import org.recast4j.detour.tilecache.io.TileCacheReader;
 import org.recast4j.detour.tilecache.io.TileCacheWriter;
 import org.recast4j.recast.CompactHeightfield;
 import org.recast4j.recast.Context;
@@ -122,30 +137,82 @@ public class NavState extends BaseAppState {
     private Node worldMap, doorNode, offMeshCon;
     private NavMesh navMesh;
     private NavMeshQuery query;
+    //Shared by everything that queries a navMesh.
+    private final NavMeshQueryPool queryPool;
     private List<Node> characters;
-    private List<Geometry> pathGeometries;
     private Map<String, org.recast4j.detour.OffMeshConnection> mapOffMeshCon;
+    private OffMeshConnections offMeshConnections;
+    private DoorRegistry doorRegistry;
+    private NavMeshEditor navMeshEditor;
+    private TileGraph tileGraph;
+    private NavMeshIslands islands;
+    //All shown paths are drawn by one line mesh and one point mesh.
+    private PathDebugMesh pathDebug;
+    private Map<Node, DebugPath> debugPaths;
+    //Where the last click walks from and to, drawn as points above the ground.
+    private final Vector3f debugStart = new Vector3f();
+    private final Vector3f debugEnd = new Vector3f();
+    private boolean debugMarkers;
+    private boolean debugDirty;
+    //Middle clicks move this and the first character chases it.
+    private final Node chaseTarget = new Node("chaseTarget");
+    private AgentCorridor chaseCorridor;
+    //Marker moves shorter than this repair the chase corridor in place.
+    private static final float CHASE_REPAIR_DISTANCE = 4f;
+    private static final float CHASE_REPAIR_TOLERANCE = 0.5f;
+    //Filter for clicked paths. Its costs can be changed at runtime, see getWalkFilter.
+    private final CompiledQueryFilter walkFilter = new CompiledQueryFilter(
+            POLYFLAGS_WALK | POLYFLAGS_DOOR | POLYFLAGS_SWIM | POLYFLAGS_JUMP, POLYFLAGS_DISABLED, getAreaCosts());
+    //Built on the loader thread once the navMesh is loaded.
+    private volatile LandmarkTables landmarks;
+    private static final int LANDMARK_COUNT = 8;
+    //Read only copies of the navMesh for queries on other threads.
+    private NavMeshSnapshots snapshots;
+    private float snapshotTimer;
+    //Seconds between snapshot publishes so bursts of tile changes are batched.
+    private static final float SNAPSHOT_INTERVAL = 0.25f;
+    //Full save plus a journal of changed tiles.
+    private NavMeshJournal journal;
+    private float autosaveTimer;
+    private static final float AUTOSAVE_INTERVAL = 30f;
+    //Journal size that triggers rewriting the full save.
+    private static final long JOURNAL_COMPACT_SIZE = 4 * 1024 * 1024;
     private PartitionType m_partitionType = PartitionType.WATERSHED;   
     private float maxClimb = .3f; //Should add getter for this.
     private float radius = 0.4f; //Should add getter for this.
     private float height = 1.7f; //Should add getter for this.
     //This is unused in recast4j so setting it here rather than using reflection.
     private static final int DT_TILECACHE_WALKABLE_AREA = 63;
+    //Bakes the tile cache layers off the render thread.
+    private ExecutorService navMeshLoader;
+    private List<NavMeshLoadListener> loadListeners;
     
     public NavState() {
-        pathGeometries = new ArrayList<>(64);
+        debugPaths = new HashMap<>();
         characters = new ArrayList<>(64);  
         mapOffMeshCon = new HashMap<>();
+        loadListeners = new CopyOnWriteArrayList<>();
+        doorRegistry = new DoorRegistry(maxClimb);
+        queryPool = new NavMeshQueryPool();
     }
     
     @Override
     protected void initialize(Application app) {
+        pathDebug = new PathDebugMesh(app.getAssetManager(), 256, 64);
+        navMeshLoader = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "NavMesh Loader");
+            //Never keep the application alive just to finish a bake.
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     protected void cleanup(Application app) {
-        //TODO: clean up what you initialized in the initialize method,
-        //e.g. remove all spatials from rootNode
+        //Stop any bake still in progress.
+        navMeshLoader.shutdownNow();
+        pathDebug.getNode().removeFromParent();
+        debugPaths.clear();
     }
 
     //onEnable()/onDisable() can be used for managing things that should 
@@ -155,6 +222,7 @@ public class NavState extends BaseAppState {
     protected void onEnable() {
         worldMap = (Node) ((SimpleApplication) getApplication()).getRootNode().getChild("worldmap");
         offMeshCon = (Node)((SimpleApplication) getApplication()).getRootNode().getChild("offMeshCon");
+        ((SimpleApplication) getApplication()).getRootNode().attachChild(pathDebug.getNode());
 //        //Original implementation using jme3-recast4j methods.
 //        buildSolo();
 //        //Solo build using jme3-recast4j methods. Implements area and flag types.
@@ -164,29 +232,39 @@ public class NavState extends BaseAppState {
 //        //Tile build using recast4j methods. Implements area and flag types plus
 //        //offmesh connections.
 //        buildTiledRecast4j();
+        //Tile cache build using recast4j methods. Tiles are baked in the 
+        //background, nearest to the player first.
         buildTileCache();
         
+        //The tile cache build creates its editor when the first tile is added.
+        if (navMesh != null) {
+            createEditor();
+        }
+        
         MouseEventControl.addListenersToSpatial(worldMap, new DefaultMouseListener() {
             @Override
             protected void click(MouseButtonEvent event, Spatial target, Spatial capture) {
                 super.click(event, target, capture);
                 
-                // First clear existing pathGeometries from the old path finding:
-                pathGeometries.forEach(Geometry::removeFromParent);
+                //The navMesh is loaded in the background so may not be ready.
+                if (query == null) {
+                    LOG.info("NavMesh is still loading, ignoring click.");
+                    return;
+                }
+                
+                // First clear the debug paths from the old path finding:
+                clearDebugPaths();
                 // Clicked on the map, so params a path to:
                 Vector3f locOnMap = getLocationOnMap(); // Don'from calculate three times
                 LOG.info("Will walk from {} to {}", getCharacters().get(0).getWorldTranslation(), locOnMap);
-                ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredBoxAt(ColorRGBA.Green, getCharacters().get(0).getWorldTranslation().add(0f, 0.5f, 0f)));
-                ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredBoxAt(ColorRGBA.Yellow, locOnMap.add(0f, 0.5f, 0f)));
+                debugStart.set(getCharacters().get(0).getWorldTranslation()).addLocal(0f, 0.5f, 0f);
+                debugEnd.set(locOnMap).addLocal(0f, 0.5f, 0f);
+                debugMarkers = true;
                 
                 if (getCharacters().size() == 1) {
-                    DefaultQueryFilter filter = new BetterDefaultQueryFilter();
-                    
-                    int includeFlags = POLYFLAGS_WALK | POLYFLAGS_DOOR | POLYFLAGS_SWIM | POLYFLAGS_JUMP;
-                    filter.setIncludeFlags(includeFlags);
-
-                    int excludeFlags = POLYFLAGS_DISABLED;
-                    filter.setExcludeFlags(excludeFlags);
+                    //The same filter every click, so its fingerprint matches 
+                    //cached paths from earlier clicks.
+                    CompiledQueryFilter filter = walkFilter;
                     
                     Result<FindNearestPolyResult> startPoly = query.findNearestPoly(getCharacters().get(0).getWorldTranslation().toArray(null), new float[]{1.0f, 1.0f, 1.0f}, filter);
                     Result<FindNearestPolyResult> endPoly = query.findNearestPoly(DetourUtils.toFloatArray(locOnMap), new float[]{1.0f, 1.0f, 1.0f}, filter);
@@ -196,12 +274,41 @@ public class NavState extends BaseAppState {
                         LOG.error("findNearestPoly startPoly [{}] getNearestRef [{}]", startPoly.status.isSuccess(), startPoly.result.getNearestRef());
                         LOG.error("findNearestPoly endPoly [{}] getNearestRef [{}].", endPoly.status.isSuccess(), endPoly.result.getNearestRef());
 
-                        pathGeometries.forEach(Geometry::removeFromParent);
+                        clearDebugPaths();
                     } else {
                         if (event.getButtonIndex() == MouseInput.BUTTON_LEFT) {
                             findPathImmediately(getCharacters().get(0), filter, startPoly.result, endPoly.result);
                         } else if (event.getButtonIndex() == MouseInput.BUTTON_RIGHT) {
                             findPathSlicedPartial(getCharacters().get(0), filter, startPoly.result, endPoly.result);
+                        } else if (event.getButtonIndex() == MouseInput.BUTTON_MIDDLE) {
+                            chaseMarker(getCharacters().get(0), locOnMap);
+                        }
+                    }
+                } else if (event.getButtonIndex() == MouseInput.BUTTON_LEFT) {
+                    //Send everyone. The requests share the end poly so the 
+                    //PathServiceState searches once and shares the corridor.
+                    Result<FindNearestPolyResult> endPoly = query.findNearestPoly(DetourUtils.toFloatArray(locOnMap), new float[]{1.0f, 1.0f, 1.0f}, walkFilter);
+                    if (!endPoly.status.isSuccess() || endPoly.result.getNearestRef() == 0) {
+                        LOG.error("findNearestPoly endPoly [{}] getNearestRef [{}].", endPoly.status.isSuccess(), endPoly.result.getNearestRef());
+                        clearDebugPaths();
+                        return;
+                    }
+                    //Snap every character to the navMesh in one batch.
+                    int count = getCharacters().size();
+                    float[] positions = new float[count * 3];
+                    for (int i = 0; i < count; i++) {
+                        Vector3f pos = getCharacters().get(i).getWorldTranslation();
+                        positions[i * 3] = pos.x;
+                        positions[i * 3 + 1] = pos.y;
+                        positions[i * 3 + 2] = pos.z;
+                    }
+                    long[] refs = new long[count];
+                    float[] nearest = new float[count * 3];
+                    new NearestPolyBatch(query).find(positions, new float[]{1.0f, 1.0f, 1.0f}, count, walkFilter, refs, nearest);
+                    
+                    for (int i = 0; i < count; i++) {
+                        if (refs[i] != 0) {
+                            findPathImmediately(getCharacters().get(i), walkFilter, refs[i], Arrays.copyOfRange(nearest, i * 3, i * 3 + 3), endPoly.result);
                         }
                     }
                 }
@@ -246,6 +353,12 @@ public class NavState extends BaseAppState {
                     SkeletonControl skelCont = getState(UtilState.class).findControl(child, SkeletonControl.class);
                     String name = skelCont.getSkeleton().getBone(0).getName();
                     Spatial hitBox = skelCont.getAttachmentsNode(name).getChild(0);
+                    
+                    /**
+                     * Register the door opening. The polys for the door are 
+                     * found as each tile is added to the navMesh.
+                     */
+                    doorRegistry.register(hitBox, (BoundingBox) hitBox.getWorldBound());
 
                     MouseEventControl.addListenersToSpatial(hitBox, new DefaultMouseListener() {
 
@@ -266,261 +379,110 @@ public class NavState extends BaseAppState {
                                 LOG.info("Switching to capture [{}] capture parent [{}].",capture.getName(), capture.getParent().getName());
                                 target = capture;
                             }
-
-                            //The filter to use for this search.
-                            DefaultQueryFilter filter = new BetterDefaultQueryFilter();
-
-                            //Limit the search to only door flags.
-                            int includeFlags = POLYFLAGS_DOOR;
-                            filter.setIncludeFlags(includeFlags);
-
-                            //Include everything.
-                            int excludeFlags = 0;                   
-                            filter.setExcludeFlags(excludeFlags);
-
-                            /**
-                             * Look for the largest radius to search for. This will 
-                             * make it possible to grab only one of a double door. 
-                             * The width of the door is preferred over thickness. 
-                             * The idea is to only return polys within the width of 
-                             * the door so in cases where there are double doors, 
-                             * only the selected door will open/close. This means 
-                             * doors with large widths should not be in range of 
-                             * other doors or the other doors polys will be included.
-                             * 
-                             * Searches take place from the origin of the attachment
-                             * node which should be the same as the doors origin.
-                             */
-                            BoundingBox bounds = (BoundingBox) target.getWorldBound();
-                            //Width of door opening.
-                            float maxXZ = Math.max(bounds.getXExtent(), bounds.getZExtent()) * 2;
-
-                            Result<FindNearestPolyResult> findNearestPoly = query.findNearestPoly(target.getWorldTranslation().toArray(null), new float[] {maxXZ, maxXZ, maxXZ}, filter);
                             
-                            //No obj, no go. Fail most likely result of filter setting.
-                            if (!findNearestPoly.status.isSuccess() || findNearestPoly.result.getNearestRef() == 0) {
-                                LOG.error("Door findNearestPoly unsuccessful or getNearestRef is not > 0.");
-                                LOG.error("findNearestPoly [{}] getNearestRef [{}].", findNearestPoly.status, findNearestPoly.result.getNearestRef());
+                            //The navMesh is loaded in the background so may not be ready.
+                            if (query == null) {
+                                LOG.info("NavMesh is still loading, ignoring door click.");
                                 return;
                             }
-                            
-                            Result<FindPolysAroundResult> findPolysAroundCircle = query.findPolysAroundCircle(findNearestPoly.result.getNearestRef(), findNearestPoly.result.getNearestPos(), maxXZ, filter);
 
-                            //Success
-                            if (findPolysAroundCircle.status.isSuccess()) {
-                                List<Long> m_polys = findPolysAroundCircle.result.getRefs();
-
-    //                            //May need these for something else eventually.
-    //                            List<Long> m_parent = result.result.getParentRefs();
-    //                            List<Float> m_costs = result.result.getCosts();
-
-                                /**
-                                 * Store each poly and flag in a single object and 
-                                 * add it to this list so we can later check they 
-                                 * all have the same flag.
-                                 */
-                                List<PolyAndFlag> listPolyAndFlag = new ArrayList<>();
-
-                                //The flags that say this door is open.
-                                int open = POLYFLAGS_WALK | POLYFLAGS_DOOR ;
-
-                                //The flags that say this door is closed, i.e. open
-                                // flags and POLYFLAGS_DISABLED
-                                int closed = open | POLYFLAGS_DISABLED;
-
-                                /**
-                                 * We iterate through the polys looking for the open
-                                 * or closed flags.
-                                 */
-                                for (long poly: m_polys) {
-
-                                    LOG.info("<========== PRE flag set Poly ID [{}] Flags [{}] ==========>", poly, navMesh.getPolyFlags(poly).result);
-                                    printFlags(poly);
-
-                                    /**
-                                     * We look for closed or open doors and add the 
-                                     * poly id and flag to set for the poly to the 
-                                     * list. We will later check to see if all poly 
-                                     * flags are the same and act accordingly. If 
-                                     * the door is closed, we add the open flags, if 
-                                     * open, add the closed flags. 
-                                     */
-                                    if (isBitSet(closed, navMesh.getPolyFlags(poly).result)) {
-                                        listPolyAndFlag.add(new PolyAndFlag(poly, open));
-                                    } else if (isBitSet(open, navMesh.getPolyFlags(poly).result)) {
-                                        listPolyAndFlag.add(new PolyAndFlag(poly, closed));
-                                    }
-                                }
-
-                                /**
-                                 * Check that all poly flags for the door are either 
-                                 * all open or all closed. This prevents changing 
-                                 * door flags in circumstances where a user may be 
-                                 * allowed to block open or closed doors with in 
-                                 * game objects through tile caching. If the object 
-                                 * was placed in such a way that not all polys in a 
-                                 * door opening were blocked by the object, not 
-                                 * checking if all polys had the same flag would 
-                                 * allow bypassing the blocking object flag setting. 
-                                 */
-                                boolean same = false;
-                                for (PolyAndFlag obj: listPolyAndFlag) {
-                                    //If any flag does not match, were done.
-                                    if (obj.getFlag() != listPolyAndFlag.get(0).getFlag()) {
-                                        LOG.info("All poly flags are not the same listPolyAndFlag.");
-                                        same = false;
-                                        break;
-                                    }
-                                    same = true;
-                                }
-
-                                //If all flags match set door open/closed.
-                                if (same) {                                    
-                                    //Set all obj flags.
-                                    for (PolyAndFlag obj: listPolyAndFlag) {
-                                        navMesh.setPolyFlags(obj.getPoly(), obj.getFlag());
-                                        LOG.info("<========== POST flag set Poly ID [{}] Flags [{}] ==========>", obj.getPoly(), navMesh.getPolyFlags(obj.getPoly()).result);
-                                        printFlags(obj.getPoly());
-                                    }
-
-                                    /**
-                                     * All flags are the same so we only 
-                                     * need the first object.
-                                     */
-                                    if (listPolyAndFlag.get(0).getFlag() == (open)) {
-                                        //Open doorControl.
-                                        swingControl.setOpen(true);
-                                    } else {
-                                        //Close doorControl.
-                                        swingControl.setOpen(false);
-                                    }
-                                }
+                            /**
+                             * The registry already knows exactly which polys 
+                             * belong to this door so flip them all at once.
+                             */
+                            boolean open = !doorRegistry.isOpen(hitBox);
+                            if (doorRegistry.setOpen(navMeshEditor, hitBox, open)) {
+                                LOG.info("Door [{}] open [{}] polys {}", hitBox.getName(), open, Arrays.toString(doorRegistry.getPolys(hitBox)));
+                                swingControl.setOpen(open);
                             }
                             LOG.info("<========== END Door MouseEventControl Add ==========>");
                         }
                     });
                 }
             }
+            
+            //Builds other than the tile cache have all their tiles by now.
+            if (navMesh != null) {
+                doorRegistry.updateAll(navMesh);
+            }
         }
         
     }
         
+    /**
+     * Finds the path on the PathServiceState workers and walks it once the 
+     * result is delivered back on the render thread.
+     */
     private void findPathImmediately(Node character, QueryFilter filter, FindNearestPolyResult startPoly, FindNearestPolyResult endPoly) {
-        Result<List<Long>> fpr = query.findPath(startPoly.getNearestRef(), endPoly.getNearestRef(), startPoly.getNearestPos(), endPoly.getNearestPos(), filter);
-        if (fpr.succeeded()) {
-            // Get the proper path from the rough polygon listing
-            Result<List<StraightPathItem>> list = query.findStraightPath(startPoly.getNearestPos(), endPoly.getNearestPos(), fpr.result, 256, 0);
-            Vector3f oldPos = character.getWorldTranslation();
-            List<Vector3f> vector3fList = new ArrayList<>(list.result.size());
-            if (!list.result.isEmpty()) {
-                for (StraightPathItem p: list.result) {
-                    Vector3f nu = DetourUtils.createVector3f(p.getPos());
-                    ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredLineBetween(ColorRGBA.Orange, oldPos.add(0f, 0.5f, 0f), nu.add(0f, 0.5f, 0f)));
-                    if (p.getRef() != 0) { // if ref is 0, it's the linkB.
-                        ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredBoxAt(ColorRGBA.Blue, nu.add(0f, 0.5f, 0f)));
+        findPathImmediately(character, filter, startPoly.getNearestRef(), startPoly.getNearestPos(), endPoly);
+    }
+    
+    private void findPathImmediately(Node character, QueryFilter filter, long startRef, float[] startPos, FindNearestPolyResult endPoly) {
+        getState(PathServiceState.class)
+                .requestPath(startRef, endPoly.getNearestRef(), startPos, endPoly.getNearestPos(), filter)
+                .thenAccept(result -> {
+                    if (result.succeeded()) {
+                        showPath(character, result.getStraightPath());
+                    } else {
+                        System.err.println("I'm sorry, unable to find a path.....");
                     }
-                    vector3fList.add(nu);
-                    oldPos = nu;
-                }
-
-                character.getControl(PhysicsAgentControl.class).stopFollowing();
-                character.getControl(PhysicsAgentControl.class).followPath(vector3fList);
-            } else {
-                System.err.println("Unable to find straight paths");
-            }
+                });
+    }
+    
+    /**
+     * Draws the straight path and has the character follow it.
+     * 
+     * @param character The character to move.
+     * @param path The straight path.
+     */
+    private void showPath(Node character, List<StraightPathItem> path) {
+        if (!path.isEmpty()) {
+            //Each character keeps its buffer, the control copies the points.
+            DebugPath debugPath = debugPaths.computeIfAbsent(character, c -> new DebugPath());
+            debugPath.start.set(character.getWorldTranslation());
+            debugPath.path.setStraightPath(path);
+            debugDirty = true;
+
+            character.getControl(PhysicsAgentControl.class).stopChasing();
+            character.getControl(PhysicsAgentControl.class).followPath(debugPath.path);
         } else {
-            System.err.println("I'm sorry, unable to find a path.....");
+            System.err.println("Unable to find straight paths");
         }
     }
-
-    private void findPathSliced(Node character, QueryFilter filter, FindNearestPolyResult startPoly, FindNearestPolyResult endPoly) {
-        query.initSlicedFindPath(startPoly.getNearestRef(), endPoly.getNearestRef(), startPoly.getNearestPos(), endPoly.getNearestPos(), filter, 0);
-
-        Result<Integer> res;
-        do {
-            // typically called from a control or appstate, so simulate it with a loop and sleep.
-            res = query.updateSlicedFindPath(1);
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-            }
-        } while (res.status == Status.IN_PROGRESS);
-
-        Result<List<Long>> fpr = query.finalizeSlicedFindPath();
-
-        // @TODO: Use NavMeshSliceControl (but then how to do the Debug Graphics?)
-        // @TODO: Try Partial. How would one make this logic with controls etc so it's easy?
-        //query.finalizeSlicedFindPathPartial();
-
-        if (fpr.succeeded()) {
-            // Get the proper path from the rough polygon listing
-            Result<List<StraightPathItem>> list = query.findStraightPath(startPoly.getNearestPos(), endPoly.getNearestPos(), fpr.result, Integer.MAX_VALUE, 0);
-            Vector3f oldPos = character.getWorldTranslation();
-            List<Vector3f> vector3fList = new ArrayList<>(list.result.size());
-
-            if (!list.result.isEmpty()) {
-                for (StraightPathItem p: list.result) {
-                    Vector3f nu = DetourUtils.createVector3f(p.getPos());
-                    ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredLineBetween(ColorRGBA.Orange, oldPos.add(0f, 0.5f, 0f), nu.add(0f, 0.5f, 0f)));
-                    if (p.getRef() != 0) { // if ref is 0, it's the linkB.
-                        ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredBoxAt(ColorRGBA.Blue, nu.add(0f, 0.5f, 0f)));
-                    }
-                    vector3fList.add(nu);
-                    oldPos = nu;
-                }
-
-                character.getControl(PhysicsAgentControl.class).stopFollowing();
-                character.getControl(PhysicsAgentControl.class).followPath(vector3fList);
-            } else {
-                System.err.println("Unable to find straight paths");
-            }
-        } else {
-            System.err.println("I'm sorry, unable to find a path.....");
+    
+    /**
+     * Moves the chase target to a clicked location and has the character 
+     * chase it. Short moves of the target repair the corridor in place, long 
+     * ones, or ones through a door that closed, replan it.
+     */
+    private void chaseMarker(Node character, Vector3f location) {
+        chaseTarget.setLocalTranslation(location);
+        //The corridor keeps the query so it's remade when the navMesh is.
+        if (chaseCorridor == null || chaseCorridor.getQuery() != query) {
+            chaseCorridor = new AgentCorridor(query, walkFilter, new float[]{1.0f, 1.0f, 1.0f}, 
+                    CHASE_REPAIR_DISTANCE, CHASE_REPAIR_TOLERANCE);
         }
+        character.getControl(PhysicsAgentControl.class).chase(chaseCorridor, chaseTarget);
+        LOG.info("Chasing {}, corridor repairs [{}] replans [{}]", location, 
+                chaseCorridor.getRepairCount(), chaseCorridor.getReplanCount());
     }
-
-    // Partial means canceling before being finished
+    
+    /**
+     * Runs the search on the SlicedPathSchedulerState so it's spread over 
+     * frames, then walks the path. The first slice is capped so a partial 
+     * path shows up right away; NavMeshSliceControl shows how to switch to 
+     * the full path once a second, uncapped search is done.
+     */
     private void findPathSlicedPartial(Node character, QueryFilter filter, FindNearestPolyResult startPoly, FindNearestPolyResult endPoly) {
-        query.initSlicedFindPath(startPoly.getNearestRef(), endPoly.getNearestRef(), startPoly.getNearestPos(),
-                endPoly.getNearestPos(), filter, 0);
-        Result<Integer> res;
-        res = query.updateSlicedFindPath(1);
-        Result<List<Long>> fpr = query.finalizeSlicedFindPath();
-
-        query.initSlicedFindPath(startPoly.getNearestRef(), endPoly.getNearestRef(), startPoly.getNearestPos(),
-                endPoly.getNearestPos(), filter, 0);
-        Result<List<Long>> fpr2 = query.finalizeSlicedFindPathPartial(fpr.result);
-
-        // @TODO: Use NavMeshSliceControl (but then how to do the Debug Graphics?)
-        // @TODO: Try Partial. How would one make this logic with controls etc so it's easy?
-        //query.finalizeSlicedFindPathPartial();
-
-        if (fpr2.succeeded()) {
-            // Get the proper path from the rough polygon listing
-            Result<List<StraightPathItem>> list = query.findStraightPath(startPoly.getNearestPos(), endPoly.getNearestPos(), fpr2.result, Integer.MAX_VALUE, 0);
-            Vector3f oldPos = character.getWorldTranslation();
-            List<Vector3f> vector3fList = new ArrayList<>(list.result.size());
-
-            if (!list.result.isEmpty()) {
-                for (StraightPathItem p: list.result) {
-                    Vector3f nu = DetourUtils.createVector3f(p.getPos());
-                    ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredLineBetween(ColorRGBA.Orange, oldPos.add(0f, 0.5f, 0f), nu.add(0f, 0.5f, 0f)));
-                    if (p.getRef() != 0) { // if ref is 0, it's the linkB.
-                        ((SimpleApplication) getApplication()).getRootNode().attachChild(placeColoredBoxAt(ColorRGBA.Blue, nu.add(0f, 0.5f, 0f)));
+        getState(SlicedPathSchedulerState.class).request(startPoly.getNearestRef(), endPoly.getNearestRef(), 
+                startPoly.getNearestPos(), endPoly.getNearestPos(), filter, 0, 256, request -> {
+                    if (!request.getStraightPath().isEmpty()) {
+                        LOG.info("Sliced path partial [{}] iterations [{}]", request.isPartial(), request.getIterations());
+                        showPath(character, request.getStraightPath());
+                    } else {
+                        System.err.println("I'm sorry, unable to find a path.....");
                     }
-                    vector3fList.add(nu);
-                    oldPos = nu;
-                }
-
-                character.getControl(PhysicsAgentControl.class).stopFollowing();
-                character.getControl(PhysicsAgentControl.class).followPath(vector3fList);
-            } else {
-                System.err.println("Unable to find straight paths");
-            }
-        } else {
-            System.err.println("I'm sorry, unable to find a path.....");
-        }
+                });
     }
     
     private void showDebugMeshes(MeshData meshData, boolean wireframe) {
@@ -574,40 +536,36 @@ public class NavState extends BaseAppState {
     }
 
     /**
-     * Helper method to place a colored box at a specific location and fill the pathGeometries list with it,
-     * so that later on we can remove all existing pathGeometries (from a previous path finding)
-     *
-     * @param color The color the box should have
-     * @param position The position where the box will be placed
-     * @return the box
+     * Removes all paths and markers from the debug view. The buffers are kept 
+     * for the next paths.
      */
-    public Geometry placeColoredBoxAt(ColorRGBA color, Vector3f position) {
-        Geometry result = new Geometry("Box", new Box(0.25f, 0.25f, 0.25f));
-        Material mat = new Material(getApplication().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-        mat.setColor("Color", color);
-        result.setMaterial(mat);
-        result.setLocalTranslation(position);
-        pathGeometries.add(result);
-        return result;
+    private void clearDebugPaths() {
+        debugPaths.values().forEach(debugPath -> debugPath.path.clear());
+        debugMarkers = false;
+        debugDirty = true;
     }
     
     /**
-     * Helper method to place a colored line between two specific locations and fill the pathGeometries list with it,
-     * so that later on we can remove all existing pathGeometries (from a previous path finding)
-     *
-     * @param color The color the box should have
-     * @param from The position where the line starts
-     * @param to The position where the line is finished.
-     * @return the line
+     * Rewrites every shown path into the debug meshes, in place.
      */
-    public Geometry placeColoredLineBetween(ColorRGBA color, Vector3f from, Vector3f to) {
-        Geometry result = new Geometry("Line", new Line(from, to));
-        Material mat = new Material(getApplication().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-        mat.setColor("Color", color);
-        mat.getAdditionalRenderState().setLineWidth(2f);
-        result.setMaterial(mat);
-        pathGeometries.add(result);
-        return result;
+    private void updateDebugPaths() {
+        pathDebug.clear();
+        if (debugMarkers) {
+            pathDebug.addPoint(debugStart, ColorRGBA.Green);
+            pathDebug.addPoint(debugEnd, ColorRGBA.Yellow);
+        }
+        for (DebugPath debugPath: debugPaths.values()) {
+            pathDebug.addPath(debugPath.start, debugPath.path, 0.5f, ColorRGBA.Orange, ColorRGBA.Blue);
+        }
+        pathDebug.update();
+    }
+    
+    /**
+     * The last path shown for a character and where it started.
+     */
+    private static class DebugPath {
+        private final Vector3f start = new Vector3f();
+        private final PathBuffer path = new PathBuffer();
     }
     
     @Override
@@ -615,11 +573,58 @@ public class NavState extends BaseAppState {
         //Called when the state was previously enabled but is now disabled 
         //either because setEnabled(false) was called or the state is being 
         //cleaned up.
+        pathDebug.getNode().removeFromParent();
     }
     
     @Override
     public void update(float tpf) {
-        //TODO: implement behavior during runtime
+        //Drop the paths of characters that left the scene.
+        if (debugPaths.keySet().removeIf(character -> character.getParent() == null)) {
+            debugDirty = true;
+        }
+        
+        //Any number of paths costs one upload and two draw calls.
+        if (debugDirty) {
+            debugDirty = false;
+            updateDebugPaths();
+        }
+        
+        //Publish changed tiles for readers on other threads.
+        if (snapshots != null && snapshots.isDirty()) {
+            snapshotTimer += tpf;
+            if (snapshotTimer >= SNAPSHOT_INTERVAL) {
+                snapshotTimer = 0;
+                snapshots.publish();
+            }
+        }
+        
+        //Autosave only writes what changed since the last save.
+        if (journal != null) {
+            autosaveTimer += tpf;
+            if (autosaveTimer >= AUTOSAVE_INTERVAL) {
+                autosaveTimer = 0;
+                saveNavMesh(snapshots.acquire());
+            }
+        }
+    }
+    
+    /**
+     * Creates the editor, snapshots, tile graph and islands for the navMesh. 
+     * Any change made through the editor is picked up by the rest.
+     */
+    private void createEditor() {
+        navMeshEditor = new NavMeshEditor(navMesh);
+        //Doors go first so rebuilt tiles have their door flags back before 
+        //the snapshot, graph and islands read them.
+        navMeshEditor.addTileChangeListener(tiles -> doorRegistry.updateTiles(navMesh, tiles));
+        snapshots = new NavMeshSnapshots(navMesh);
+        navMeshEditor.addTileChangeListener(snapshots);
+        tileGraph = new TileGraph(navMesh);
+        navMeshEditor.addTileChangeListener(tileGraph);
+        islands = new NavMeshIslands(navMesh);
+        navMeshEditor.addTileChangeListener(islands);
+        //Readers get a snapshot right away.
+        snapshots.publish();
     }
 
     /**
@@ -629,6 +634,141 @@ public class NavState extends BaseAppState {
         return characters;
     }
     
+    /**
+     * Removes a character and the path shown for it.
+     * 
+     * @param character The character to remove.
+     * @return True if it was one of the characters.
+     */
+    public boolean removeCharacter(Node character) {
+        if (debugPaths.remove(character) != null) {
+            debugDirty = true;
+        }
+        return characters.remove(character);
+    }
+    
+    /**
+     * The navMesh is loaded in the background so this will be null until the 
+     * first tile has been added. Use a NavMeshLoadListener to be notified.
+     * 
+     * @return the navMesh or null if not loaded yet.
+     */
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+
+    /**
+     * @return the query for the navMesh or null if not loaded yet.
+     */
+    public NavMeshQuery getQuery() {
+        return query;
+    }
+    
+    /**
+     * Adds a listener for the background loading of the navMesh. If the 
+     * navMesh is already available the listener is notified right away.
+     * Must be called from the render thread.
+     * 
+     * @param listener The listener to add.
+     */
+    public void addNavMeshLoadListener(NavMeshLoadListener listener) {
+        loadListeners.add(listener);
+        if (navMesh != null) {
+            listener.onNavMeshReady(navMesh, query);
+        }
+    }
+    
+    /**
+     * @param listener The listener to remove.
+     */
+    public void removeNavMeshLoadListener(NavMeshLoadListener listener) {
+        loadListeners.remove(listener);
+    }
+
+    /**
+     * @return The registry of door polys. Add a DoorListener to it to be 
+     * notified when doors open or close.
+     */
+    public DoorRegistry getDoorRegistry() {
+        return doorRegistry;
+    }
+
+    /**
+     * @return The editor for bulk flag and area changes to the navMesh or null 
+     * if the navMesh is not loaded yet.
+     */
+    public NavMeshEditor getNavMeshEditor() {
+        return navMeshEditor;
+    }
+    
+    /**
+     * @return The pool to get NavMeshQuery objects from, for this or any 
+     * other navMesh.
+     */
+    public NavMeshQueryPool getQueryPool() {
+        return queryPool;
+    }
+    
+    /**
+     * Render thread only.
+     * 
+     * @return The connectivity islands of the navMesh, to turn down path 
+     * requests that can't succeed, or null if the navMesh is not loaded yet.
+     */
+    public NavMeshIslands getIslands() {
+        return islands;
+    }
+    
+    /**
+     * @return The ALT landmark tables or null if not built yet.
+     */
+    public LandmarkTables getLandmarks() {
+        return landmarks;
+    }
+    
+    /**
+     * The filter used for clicked paths. Change its costs in place, e.g. 
+     * getWalkFilter().scaleAreaCosts(1L << POLYAREA_TYPE_ROAD, 0.5f) to make 
+     * roads cheaper at night. Cached paths for the old costs no longer match. 
+     * The landmark search shrinks its heuristic by the cheapest cost so costs 
+     * below 1 still give the shortest corridor, just with more expansions.
+     * 
+     * @return The filter for clicked paths.
+     */
+    public CompiledQueryFilter getWalkFilter() {
+        return walkFilter;
+    }
+    
+    /**
+     * @return The tile level graph used to plan long paths or null if the 
+     * navMesh is not loaded yet.
+     */
+    public TileGraph getTileGraph() {
+        return tileGraph;
+    }
+    
+    /**
+     * The navMesh of this snapshot is only safe to use on the render thread, 
+     * until the next publish. See acquireSnapshot() for other threads.
+     * 
+     * @return The latest snapshot of the navMesh or null if not loaded yet.
+     */
+    public NavMeshSnapshots.Snapshot getSnapshot() {
+        return snapshots == null ? null : snapshots.get();
+    }
+    
+    /**
+     * The live navMesh may only be used on the render thread. Anything 
+     * querying from another thread should use the snapshot returned here for 
+     * the length of the query with its own NavMeshQuery and release it after.
+     * 
+     * @return The latest snapshot of the navMesh, pinned, or null if not 
+     * loaded yet.
+     */
+    public NavMeshSnapshots.Snapshot acquireSnapshot() {
+        return snapshots == null ? null : snapshots.acquire();
+    }
+    
     /**
      * Original implementation using jme3-recast4j methods and custom recastBuilder.
      */
@@ -658,7 +798,7 @@ public class NavState extends BaseAppState {
                 new RecastBuilder().build(new GeometryProviderBuilder2(worldMap).build(), bcfg)).build(bcfg);
         MeshData meshData = NavMeshBuilder.createNavMeshData(build);
         navMesh = new NavMesh(meshData, bcfg.cfg.maxVertsPerPoly, 0);
-        query = new NavMeshQuery(navMesh);
+        query = queryPool.get(navMesh);
         
         try {
             MeshDataWriter mdw = new MeshDataWriter();
@@ -736,19 +876,9 @@ public class NavState extends BaseAppState {
         NavMeshDataCreateParamsBuilder paramsBuilder = new NavMeshDataCreateParamsBuilder(result);
         PolyMesh m_pmesh = result.getMesh();
         
-        //Set Ability flags. 
+        //Set Ability flags from the shared area lookup table. 
         for (int i = 0; i < m_pmesh.npolys; ++i) {
-            if (m_pmesh.areas[i] == POLYAREA_TYPE_GROUND
-            ||  m_pmesh.areas[i] == POLYAREA_TYPE_GRASS
-            ||  m_pmesh.areas[i] == POLYAREA_TYPE_ROAD) {
-                paramsBuilder.withPolyFlag(i, POLYFLAGS_WALK);
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_WATER) {
-                paramsBuilder.withPolyFlag(i, POLYFLAGS_SWIM);
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_DOOR) {
-                paramsBuilder.withPolyFlags(i, POLYFLAGS_WALK | POLYFLAGS_DOOR);
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_JUMP) {
-                paramsBuilder.withPolyFlag(i, POLYFLAGS_JUMP);
-            }
+            paramsBuilder.withPolyFlags(i, getAreaFlags(m_pmesh.areas[i]));
         }
         
         NavMeshDataCreateParams params = paramsBuilder.build(bcfg);
@@ -763,7 +893,7 @@ public class NavState extends BaseAppState {
             
         MeshData meshData = NavMeshBuilder.createNavMeshData(params);
         navMesh = new NavMesh(meshData, bcfg.cfg.maxVertsPerPoly, 0);
-        query = new NavMeshQuery(navMesh);
+        query = queryPool.get(navMesh);
         
         //Create offmesh connections here.
 
@@ -915,20 +1045,8 @@ public class NavState extends BaseAppState {
         // Build polygon navmesh from the contours.
         PolyMesh m_pmesh = RecastMesh.buildPolyMesh(m_ctx, m_cset, cfg.maxVertsPerPoly);
 
-        //Set Ability flags.
-        for (int i = 0; i < m_pmesh.npolys; ++i) {
-            if (m_pmesh.areas[i] == POLYAREA_TYPE_GROUND
-            ||  m_pmesh.areas[i] == POLYAREA_TYPE_GRASS
-            ||  m_pmesh.areas[i] == POLYAREA_TYPE_ROAD) {
-                m_pmesh.flags[i] = POLYFLAGS_WALK;
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_WATER) {
-                m_pmesh.flags[i] = POLYFLAGS_SWIM;
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_DOOR) {
-                m_pmesh.flags[i] = POLYFLAGS_WALK | POLYFLAGS_DOOR;
-            } else if (m_pmesh.areas[i] == POLYAREA_TYPE_JUMP) {
-                m_pmesh.flags[i] = POLYFLAGS_JUMP;
-            }          
-        }
+        //Set Ability flags from the shared area lookup table.
+        setFlagsFromAreas(m_pmesh.areas, m_pmesh.flags, m_pmesh.npolys);
 
         //Create detailed mesh for picking.
         PolyMeshDetail m_dmesh = RecastMeshDetail.buildPolyMeshDetail(m_ctx, m_pmesh, m_chf, cfg.detailSampleDist,
@@ -959,7 +1077,7 @@ public class NavState extends BaseAppState {
                 
         MeshData meshData = NavMeshBuilder.createNavMeshData(params);
         navMesh = new NavMesh(meshData, params.nvp, 0);
-        query = new NavMeshQuery(navMesh);
+        query = queryPool.get(navMesh);
         
         //Create offmesh connections here.
 
@@ -1216,6 +1334,9 @@ public class NavState extends BaseAppState {
         navMeshParams.maxPolys = 32768;
         navMesh = new NavMesh(navMeshParams, cfg.maxVertsPerPoly);
         
+        //Group the offmesh connections by tile so they are built with the tile.
+        offMeshConnections = createOffMeshConnections(navMeshParams.orig, navMeshParams.tileWidth, navMeshParams.tileHeight);
+        
         for (int y = 0; y < th; y++) {
             for (int x = 0; x < tw; x++) {
                 PolyMesh m_pmesh = rcResult[x][y].getMesh();
@@ -1224,17 +1345,7 @@ public class NavState extends BaseAppState {
                 }
 
                 // Update obj flags from areas. Including offmesh connections.
-                for (int i = 0; i < m_pmesh.npolys; ++i) {
-                    if (m_pmesh.areas[i] == POLYAREA_TYPE_GROUND
-                    ||  m_pmesh.areas[i] == POLYAREA_TYPE_GRASS
-                    ||  m_pmesh.areas[i] == POLYAREA_TYPE_ROAD) {
-                        m_pmesh.flags[i] = POLYFLAGS_WALK;
-                    } else if (m_pmesh.areas[i] == POLYAREA_TYPE_WATER) {
-                        m_pmesh.flags[i] = POLYFLAGS_SWIM;
-                    } else if (m_pmesh.areas[i] == POLYAREA_TYPE_DOOR) {
-                        m_pmesh.flags[i] = POLYFLAGS_WALK | POLYFLAGS_DOOR;
-                    }                     
-                }
+                setFlagsFromAreas(m_pmesh.areas, m_pmesh.flags, m_pmesh.npolys);
                 
                 NavMeshDataCreateParams params = new NavMeshDataCreateParams();
                 
@@ -1261,150 +1372,14 @@ public class NavState extends BaseAppState {
                 params.tileX = x;
                 params.tileY = y;
                 params.buildBvTree = true;
+                //Off-mesh connections that start in this tile.
+                offMeshConnections.apply(params);
                 
                 navMesh.addTile(NavMeshBuilder.createNavMeshData(params), 0, 0);
             }
         }
         
-        query = new NavMeshQuery(navMesh);
-        
-        /**
-         * Process OffMeshConnections. 
-         * Basic flow: 
-         * Check each mapOffMeshConnection for an index > 0. 
-         * findNearestPoly() for the start/end positions of the link.
-         * getTileAndPolyByRef() using the returned poly reference.
-         * If both start and end are good values, set the connection properties.
-         */
-        Iterator<Map.Entry<String, org.recast4j.detour.OffMeshConnection>> itOffMesh = mapOffMeshCon.entrySet().iterator();
-        while (itOffMesh.hasNext()) {
-            Map.Entry<String, org.recast4j.detour.OffMeshConnection> next = itOffMesh.next();
-
-            /**
-             * If the OffMeshConnection id is 0, there is no paired bone for the
-             * link so skip.
-             */            
-            if (next.getValue().userId > 0) {
-                //Create a new filter for findNearestPoly
-                DefaultQueryFilter filter = new DefaultQueryFilter();
-
-                //In our case, we only need swim or walk flags.
-                int include = POLYFLAGS_WALK | POLYFLAGS_SWIM;
-                filter.setIncludeFlags(include);
-
-                //No excludes.
-                int exclude = 0;
-                filter.setExcludeFlags(exclude);
-
-                //Get the start position for the link.
-                float[] startPos = new float[3];
-                System.arraycopy(next.getValue().pos, 0, startPos, 0, 3);
-                //Get the end position for the link.
-                float[] endPos = new float[3];
-                System.arraycopy(next.getValue().pos, 3, endPos, 0, 3);
-
-                //Find the nearest polys to start/end.
-                Result<FindNearestPolyResult> startPoly = query.findNearestPoly(startPos, new float[] {radius,radius,radius}, filter);
-                Result<FindNearestPolyResult> endPoly = query.findNearestPoly(endPos, new float[] {radius,radius,radius}, filter);
-
-                /**
-                 * Note: not isFailure() here, because isSuccess guarantees us, 
-                 * that the result isn't "RUNNING", which it could be if we only 
-                 * check it's not failure.
-                 */
-                if (!startPoly.status.isSuccess() 
-                ||  !endPoly.status.isSuccess() 
-                ||   startPoly.result.getNearestRef() == 0 
-                ||   endPoly.result.getNearestRef() == 0) {
-                    LOG.error("offmeshCon findNearestPoly unsuccessful or getNearestRef is not > 0.");
-                    LOG.error("Link [{}] pos {} id [{}]", next.getKey(), Arrays.toString(next.getValue().pos), next.getValue().userId);
-                    LOG.error("findNearestPoly startPoly [{}] getNearestRef [{}]", startPoly.status.isSuccess(), startPoly.result.getNearestRef());
-                    LOG.error("findNearestPoly endPoly [{}] getNearestRef [{}].", endPoly.status.isSuccess(), endPoly.result.getNearestRef());
-                } else {
-                    //Get the tile and poly from reference.
-                    Result<Tupple2<MeshTile, Poly>> startTileByRef = navMesh.getTileAndPolyByRef(startPoly.result.getNearestRef());
-                    Result<Tupple2<MeshTile, Poly>> endTileByRef = navMesh.getTileAndPolyByRef(endPoly.result.getNearestRef());
-
-                    //Mesh data for the start/end tile.
-                    MeshData startTile = startTileByRef.result.first.data;
-                    MeshData endTile = endTileByRef.result.first.data;
-
-                    //Both start and end poly must be vailid.
-                    if (startTileByRef.result.second != null && endTileByRef.result.second != null) {
-                        //We will add a new poly that will become our "link" 
-                        //between start and end points so make room for it.
-                        startTile.polys = Arrays.copyOf(startTile.polys, startTile.polys.length + 1);
-                        //We shifted everything but haven't incremented polyCount 
-                        //yet so this will become our new poly's index.
-                        int poly = startTile.header.polyCount;
-                        /**
-                         * Off-mesh connections are stored in the navigation 
-                         * mesh as special 2-vertex polygons with a single edge. 
-                         * At least one of the vertices is expected to be inside 
-                         * a normal polygon. So an off-mesh connection is 
-                         * "entered" from a normal polygon at one of its 
-                         * endpoints. Jme requires 3 vertices per poly to 
-                         * build a debug mesh so we have to create a 
-                         * 3-vertex polygon here if using debug. The extra 
-                         * vertex position will be connected automatically 
-                         * when we add the tile back to the navmesh. For 
-                         * games, this would be a two vert poly.
-                         * 
-                         * See: https://github.com/ppiastucki/recast4j/blob/3c532068d79fe0306fedf035e50216008c306cdf/detour/src/main/java/org/recast4j/detour/NavMesh.java#L406
-                         */
-                        startTile.polys[poly] = new Poly(poly, 3);
-                        /**
-                         * Must add/create our new indices for start and end.
-                         * When we add the tile, the third vert will be 
-                         * generated for us. 
-                         */
-                        startTile.polys[poly].verts[0] = startTile.header.vertCount;
-                        startTile.polys[poly].verts[1] = startTile.header.vertCount + 1;
-                        //Set the poly's type to DT_POLYTYPE_OFFMESH_CONNECTION
-                        //so it is not seen as a regular poly when linking.
-                        startTile.polys[poly].setType(Poly.DT_POLYTYPE_OFFMESH_CONNECTION);
-                        //Make room for our start/end verts.
-                        startTile.verts = Arrays.copyOf(startTile.verts, startTile.verts.length + 6);
-                        //Increment our poly and vert counts.
-                        startTile.header.polyCount++;
-                        startTile.header.vertCount += 2;
-                        //Set our OffMeshLinks poly to this new poly.
-                        next.getValue().poly = poly;
-                        //Shorten names and make readable. Could just call directly.
-                        float[] start = startPoly.result.getNearestPos();
-                        float[] end = endPoly.result.getNearestPos();
-                        //Set the links position array values to nearest.
-                        next.getValue().pos = new float[] { start[0], start[1], start[2], end[0], end[1], end[2] };
-                        //Determine what side of the tile the vertx is on.
-                        next.getValue().side = startTile == endTile ? 0xFF
-                                : NavMeshBuilder.classifyOffMeshPoint(new VectorPtr(next.getValue().pos, 3),
-                                        startTile.header.bmin, startTile.header.bmax);
-                        //Create new OffMeshConnection array.
-                        if (startTile.offMeshCons == null) {
-                                startTile.offMeshCons = new org.recast4j.detour.OffMeshConnection[1];
-                        } else {
-                                startTile.offMeshCons = Arrays.copyOf(startTile.offMeshCons, startTile.offMeshCons.length + 1);
-                        }
-                        
-                        //Add this connection.
-                        startTile.offMeshCons[startTile.offMeshCons.length - 1] = next.getValue();
-                        startTile.header.offMeshConCount++;
-
-                        //Set the polys area type and flags.
-                        startTile.polys[poly].flags = POLYFLAGS_JUMP;
-                        startTile.polys[poly].setArea(POLYAREA_TYPE_JUMP);
-
-                        /**
-                         * Removing and adding the tile will rebuild all the 
-                         * links for the tile automatically. The number of links 
-                         * is : edges + portals * 2 + off-mesh con * 2.
-                         */
-                        MeshData removeTile = navMesh.removeTile(navMesh.getTileRef(startTileByRef.result.first));
-                        navMesh.addTile(removeTile, 0, navMesh.getTileRef(startTileByRef.result.first));
-                    }
-                }       
-            }
-        }
+        query = queryPool.get(navMesh);
         
         try {
             //Native format using tiles.
@@ -1413,7 +1388,7 @@ public class NavState extends BaseAppState {
             //Read in saved NavMesh.
             MeshSetReader msr = new MeshSetReader();
             navMesh = msr.read(new FileInputStream("test.nm"), cfg.maxVertsPerPoly);
-            query = new NavMeshQuery(navMesh);
+            query = queryPool.get(navMesh);
             int maxTiles = navMesh.getMaxTiles();
 
             //Tile data can be null since maxTiles is not an exact science.
@@ -1650,6 +1625,13 @@ public class NavState extends BaseAppState {
                 .withPartitionType(PartitionType.MONOTONE)
                 .withTileSize(16).build();
 
+        /**
+         * Group the offmesh connections by tile. JmeTileCacheMeshProcess adds 
+         * them to each tile as it's built so they survive tile rebuilds.
+         */
+        float tileWorldSize = rcConfig.tileSize * rcConfig.cs;
+        offMeshConnections = createOffMeshConnections(geom.getMeshBoundsMin(), tileWorldSize, tileWorldSize);
+        
         //Build the tile cache which also builds the navMesh.
         TileCache tc = getTileCache(geom, rcConfig);    
             
@@ -1659,9 +1641,102 @@ public class NavState extends BaseAppState {
          * another for traveling over the bridge.
          */
         TileLayerBuilder layerBuilder = new TileLayerBuilder(geom, rcConfig);
+        
+        /**
+         * Bake the tiles closest to the player first so path finding around 
+         * the player can start before the rest of the world is done.
+         */
+        Vector3f playerPos = getCharacters().isEmpty() ? Vector3f.ZERO : getCharacters().get(0).getWorldTranslation();
+        int[] tileOrder = getTileOrder(layerBuilder, geom.getMeshBoundsMin(), tileWorldSize, playerPos);
+        
+        //Rasterizing the layers is the slow part so it's done in the background.
+        navMeshLoader.submit(() -> bakeTileLayers(tc, layerBuilder, tileOrder));
+    }
+    
+    /**
+     * Sorts all tiles of the layer builder by distance to the given position.
+     * 
+     * @param layerBuilder The layer builder with the tile counts.
+     * @param bmin The minimum bounds of the geometry. Tile origin.
+     * @param tileWorldSize The width of a tile in world units.
+     * @param pos The position to sort by.
+     * @return The tile coordinates packed as [tx, ty, tx, ty, ...], nearest 
+     * tile first.
+     */
+    private int[] getTileOrder(TileLayerBuilder layerBuilder, float[] bmin, float tileWorldSize, Vector3f pos) {
+        int tw = layerBuilder.getTw();
+        int th = layerBuilder.getTh();
+        //Fractional tile position of pos.
+        float px = (pos.x - bmin[0]) / tileWorldSize - 0.5f;
+        float py = (pos.z - bmin[2]) / tileWorldSize - 0.5f;
+        
+        Integer[] tiles = new Integer[tw * th];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = i;
+        }
+        
+        //Tile index is ty * tw + tx.
+        Arrays.sort(tiles, (Integer a, Integer b) -> {
+            float dax = a % tw - px, day = a / tw - py;
+            float dbx = b % tw - px, dby = b / tw - py;
+            return Float.compare(dax * dax + day * day, dbx * dbx + dby * dby);
+        });
 
-        List<byte[]> layers = layerBuilder.build(ByteOrder.BIG_ENDIAN, false, 1);
+        int[] order = new int[tiles.length * 2];
+        for (int i = 0; i < tiles.length; i++) {
+            order[i * 2] = tiles[i] % tw;
+            order[i * 2 + 1] = tiles[i] / tw;
+        }
+        return order;
+    }
+    
+    /**
+     * Builds the compressed layers for each tile in the given order. Runs on 
+     * the navMeshLoader thread. The tile cache and navMesh are only ever 
+     * touched from the render thread so each finished tile is handed over 
+     * through the application queue.
+     * 
+     * @param tc The tile cache to add the layers to.
+     * @param layerBuilder The builder for the layers.
+     * @param tileOrder The packed tile coordinates from getTileOrder.
+     */
+    private void bakeTileLayers(TileCache tc, TileLayerBuilder layerBuilder, int[] tileOrder) {
+        int total = tileOrder.length / 2;
+        ProgressListen progress = new ProgressListen();
+        
+        for (int i = 0; i < total; i++) {
+            //State was cleaned up, stop baking.
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            
+            int tx = tileOrder[i * 2];
+            int ty = tileOrder[i * 2 + 1];
+            List<byte[]> layers = layerBuilder.build(tx, ty, ByteOrder.BIG_ENDIAN, false);
+            int completed = i + 1;
+            progress.onProgress(completed, total);
+            getApplication().enqueue(() -> {
+                addTileLayers(tc, tx, ty, layers);
+                for (NavMeshLoadListener listener: loadListeners) {
+                    listener.onProgress(completed, total);
+                }
+            });
+        }
         
+        getApplication().enqueue(() -> onTileCacheLoaded(tc));
+    }
+    
+    /**
+     * Adds the layers of a tile to the tile cache and builds the navMesh tile. 
+     * The first time this is called the navMesh and query are published so 
+     * they become available to controls and crowds at the same time.
+     * 
+     * @param tc The tile cache being loaded.
+     * @param tx The x coordinate of the tile.
+     * @param ty The y coordinate of the tile.
+     * @param layers The compressed layers for one tile.
+     */
+    private void addTileLayers(TileCache tc, int tx, int ty, List<byte[]> layers) {
         for (byte[] data : layers) {
             try {
                 /**
@@ -1672,178 +1747,118 @@ public class NavState extends BaseAppState {
                 long ref = tc.addTile(data, 0);
                 tc.buildNavMeshTile(ref);
             } catch (IOException ex) {
-                LOG.error("{} {}" + NavState.class.getName(), ex);
+                LOG.error("{} {}", NavState.class.getName(), ex);
             }
-        }  
-                    
-        //Save and read back for testing.
-        TileCacheWriter writer = new TileCacheWriter(); 
-        TileCacheReader reader = new TileCacheReader();  
-
-        try {
-            //Write our file.
-            writer.write(new FileOutputStream(new File("test.tc")), tc, ByteOrder.BIG_ENDIAN, false);
-            //Create new tile cache.
-            tc = reader.read(new FileInputStream("test.tc"), 3, new JmeTileCacheMeshProcess());
-
-            //Get the navMesh and build a querry object.
+        }
+        
+        //Publish the navMesh and query together.
+        if (navMesh == null) {
             navMesh = tc.getNavMesh();
-            query = new NavMeshQuery(navMesh); 
-
-            /**
-             * Process OffMeshConnections. Since we are reading this in we do it 
-             * here. If we were just running with the tile cache we first 
-             * created we would just place this after building the tiles.
-             * Basic flow: 
-             * Check each mapOffMeshConnection for an index > 0. 
-             * findNearestPoly() for the start/end positions of the link.
-             * getTileAndPolyByRef() using the returned poly reference.
-             * If both start and end are good values, set the connection properties.
-             */
-            Iterator<Map.Entry<String, org.recast4j.detour.OffMeshConnection>> itOffMesh = mapOffMeshCon.entrySet().iterator();
-            while (itOffMesh.hasNext()) {
-                Map.Entry<String, org.recast4j.detour.OffMeshConnection> next = itOffMesh.next();
-
-                /**
-                 * If the OffMeshConnection id is 0, there is no paired bone for the
-                 * link so skip.
-                 */            
-                if (next.getValue().userId > 0) {
-                    //Create a new filter for findNearestPoly
-                    DefaultQueryFilter filter = new DefaultQueryFilter();
-
-                    //In our case, we only need swim or walk flags.
-                    int include = POLYFLAGS_WALK | POLYFLAGS_SWIM;
-                    filter.setIncludeFlags(include);
-
-                    //No excludes.
-                    int exclude = 0;
-                    filter.setExcludeFlags(exclude);
-
-                    //Get the start position for the link.
-                    float[] startPos = new float[3];
-                    System.arraycopy(next.getValue().pos, 0, startPos, 0, 3);
-                    //Get the end position for the link.
-                    float[] endPos = new float[3];
-                    System.arraycopy(next.getValue().pos, 3, endPos, 0, 3);
-
-                    //Find the nearest polys to start/end.
-                    Result<FindNearestPolyResult> startPoly = query.findNearestPoly(startPos, new float[] {radius,radius,radius}, filter);
-                    Result<FindNearestPolyResult> endPoly = query.findNearestPoly(endPos, new float[] {radius,radius,radius}, filter);
-
-                    /**
-                     * Note: not isFailure() here, because isSuccess guarantees us, 
-                     * that the result isn't "RUNNING", which it could be if we only 
-                     * check it's not failure.
-                     */
-                    if (!startPoly.status.isSuccess() 
-                    ||  !endPoly.status.isSuccess() 
-                    ||   startPoly.result.getNearestRef() == 0 
-                    ||   endPoly.result.getNearestRef() == 0) {
-                        LOG.error("offmeshCon findNearestPoly unsuccessful or getNearestRef is not > 0.");
-                        LOG.error("Link [{}] pos {} id [{}]", next.getKey(), Arrays.toString(next.getValue().pos), next.getValue().userId);
-                        LOG.error("findNearestPoly startPoly [{}] getNearestRef [{}]", startPoly.status.isSuccess(), startPoly.result.getNearestRef());
-                        LOG.error("findNearestPoly endPoly [{}] getNearestRef [{}].", endPoly.status.isSuccess(), endPoly.result.getNearestRef());
-                    } else {
-                        //Get the tile and poly from reference.
-                        Result<Tupple2<MeshTile, Poly>> startTileByRef = navMesh.getTileAndPolyByRef(startPoly.result.getNearestRef());
-                        Result<Tupple2<MeshTile, Poly>> endTileByRef = navMesh.getTileAndPolyByRef(endPoly.result.getNearestRef());
-
-                        //Mesh data for the start/end tile.
-                        MeshData startTile = startTileByRef.result.first.data;
-                        MeshData endTile = endTileByRef.result.first.data;
-
-                        //Both start and end poly must be vailid.
-                        if (startTileByRef.result.second != null && endTileByRef.result.second != null) {
-                            //We will add a new poly that will become our "link" 
-                            //between start and end points so make room for it.
-                            startTile.polys = Arrays.copyOf(startTile.polys, startTile.polys.length + 1);
-                            //We shifted everything but haven't incremented polyCount 
-                            //yet so this will become our new poly's index.
-                            int poly = startTile.header.polyCount;
-                            /**
-                             * Off-mesh connections are stored in the navigation 
-                             * mesh as special 2-vertex polygons with a single edge. 
-                             * At least one of the vertices is expected to be inside 
-                             * a normal polygon. So an off-mesh connection is 
-                             * "entered" from a normal polygon at one of its 
-                             * endpoints. Jme requires 3 vertices per poly to 
-                             * build a debug mesh so we have to create a 
-                             * 3-vertex polygon here if using debug. The extra 
-                             * vertex position will be connected automatically 
-                             * when we add the tile back to the navmesh. For 
-                             * games, this would be a two vert poly.
-                             * 
-                             * See: https://github.com/ppiastucki/recast4j/blob/3c532068d79fe0306fedf035e50216008c306cdf/detour/src/main/java/org/recast4j/detour/NavMesh.java#L406
-                             */
-                            startTile.polys[poly] = new Poly(poly, 3);
-                            /**
-                             * Must add/create our new indices for start and end.
-                             * When we add the tile, the third vert will be 
-                             * generated for us. 
-                             */
-                            startTile.polys[poly].verts[0] = startTile.header.vertCount;
-                            startTile.polys[poly].verts[1] = startTile.header.vertCount + 1;
-                            //Set the poly's type to DT_POLYTYPE_OFFMESH_CONNECTION
-                            //so it is not seen as a regular poly when linking.
-                            startTile.polys[poly].setType(Poly.DT_POLYTYPE_OFFMESH_CONNECTION);
-                            //Make room for our start/end verts.
-                            startTile.verts = Arrays.copyOf(startTile.verts, startTile.verts.length + 6);
-                            //Increment our poly and vert counts.
-                            startTile.header.polyCount++;
-                            startTile.header.vertCount += 2;
-                            //Set our OffMeshLinks poly to this new poly.
-                            next.getValue().poly = poly;
-                            //Shorten names and make readable. Could just call directly.
-                            float[] start = startPoly.result.getNearestPos();
-                            float[] end = endPoly.result.getNearestPos();
-                            //Set the links position array values to nearest.
-                            next.getValue().pos = new float[] { start[0], start[1], start[2], end[0], end[1], end[2] };
-                            //Determine what side of the tile the vertx is on.
-                            next.getValue().side = startTile == endTile ? 0xFF
-                                    : NavMeshBuilder.classifyOffMeshPoint(new VectorPtr(next.getValue().pos, 3),
-                                            startTile.header.bmin, startTile.header.bmax);
-                            //Create new OffMeshConnection array.
-                            if (startTile.offMeshCons == null) {
-                                    startTile.offMeshCons = new org.recast4j.detour.OffMeshConnection[1];
-                            } else {
-                                    startTile.offMeshCons = Arrays.copyOf(startTile.offMeshCons, startTile.offMeshCons.length + 1);
-                            }
-
-                            //Add this connection.
-                            startTile.offMeshCons[startTile.offMeshCons.length - 1] = next.getValue();
-                            startTile.header.offMeshConCount++;
-
-                            //Set the polys area type and flags.
-                            startTile.polys[poly].flags = POLYFLAGS_JUMP;
-                            startTile.polys[poly].setArea(POLYAREA_TYPE_JUMP);
-
-                            /**
-                             * Removing and adding the tile will rebuild all the 
-                             * links for the tile automatically. The number of links 
-                             * is : edges + portals * 2 + off-mesh con * 2.
-                             */
-                            MeshData removeTile = navMesh.removeTile(navMesh.getTileRef(startTileByRef.result.first));
-                            navMesh.addTile(removeTile, 0, navMesh.getTileRef(startTileByRef.result.first));                      
-                        }
-                    }       
-                }
+            query = queryPool.get(navMesh);
+            createEditor();
+            for (NavMeshLoadListener listener: loadListeners) {
+                listener.onNavMeshReady(navMesh, query);
             }
-            
-            int maxTiles = tc.getTileCount();
-
-            //Tile data can be null since maxTiles is not an exact science.
-            for (int i = 0; i < maxTiles; i++) {
-                MeshTile tile = tc.getNavMesh().getTile(i);
-                MeshData meshData = tile.data;
-                if (meshData != null ) {
-                    showDebugByArea(meshData, true);
-                }
+        }
+        
+        /**
+         * Let anything that depends on these tiles know they changed. The door 
+         * registry is the first listener so it finds the door polys of the 
+         * new tile layers.
+         */
+        List<MeshTile> tiles = navMesh.getTilesAt(tx, ty);
+        int[] changed = new int[tiles.size()];
+        for (int i = 0; i < changed.length; i++) {
+            changed[i] = tiles.get(i).index;
+        }
+        navMeshEditor.markTilesChanged(changed);
+    }
+    
+    /**
+     * Called on the render thread once every tile of the tile cache has been 
+     * added. Shows the debug meshes and saves the tile cache in the background.
+     * 
+     * @param tc The fully loaded tile cache.
+     */
+    private void onTileCacheLoaded(TileCache tc) {
+        int maxTiles = tc.getTileCount();
+
+        //Tile data can be null since maxTiles is not an exact science.
+        for (int i = 0; i < maxTiles; i++) {
+            MeshTile tile = tc.getNavMesh().getTile(i);
+            MeshData meshData = tile.data;
+            if (meshData != null ) {
+                showDebugByArea(meshData, true);
             }
-        } catch (IOException ex) {
-            LOG.error("{} {}", NavState.class.getName(), ex);
         }
         
+        for (NavMeshLoadListener listener: loadListeners) {
+            listener.onNavMeshLoaded(navMesh);
+        }
+        
+        //Writing only reads the compressed layers so do it in the background.
+        navMeshLoader.submit(() -> {
+            try {
+                TileCacheWriter writer = new TileCacheWriter(); 
+                writer.write(new FileOutputStream(new File("test.tc")), tc, ByteOrder.BIG_ENDIAN, false);
+            } catch (IOException ex) {
+                LOG.error("{} {}", NavState.class.getName(), ex);
+            }
+        });
+        
+        /**
+         * The navMesh itself, with door and other flag edits, is saved as a 
+         * full file once and after that only the tiles that change are 
+         * appended to a journal. See autosave in update().
+         */
+        journal = new NavMeshJournal(new File("test.nm"), new File("test.nm.journal"), JOURNAL_COMPACT_SIZE);
+        snapshots.publish();
+        saveNavMesh(snapshots.acquire());
+        buildLandmarks(snapshots.acquire());
+    }
+    
+    /**
+     * Builds the ALT landmark tables from a snapshot in the background and 
+     * logs how they compare to the straight line heuristic. The tables let 
+     * every flag through at the default area cost of 1 so they stay valid for 
+     * the path filters when doors open or close. AltPathFinder expects that 
+     * cost when it scales the heuristic for cheaper areas.
+     * 
+     * @param snapshot The pinned snapshot to build from, released when done.
+     */
+    private void buildLandmarks(NavMeshSnapshots.Snapshot snapshot) {
+        navMeshLoader.submit(() -> {
+            try {
+                float[] costs = new float[MAX_AREAS];
+                Arrays.fill(costs, 1f);
+                QueryFilter all = new BetterDefaultQueryFilter(0xffff, 0, costs);
+                long time = System.nanoTime();
+                LandmarkTables tables = LandmarkTables.build(snapshot.getNavMesh(), LANDMARK_COUNT, all);
+                LOG.info("Landmark tables [{}] built in [{}] ms using [{}] bytes.", LANDMARK_COUNT, 
+                        (System.nanoTime() - time) / 1000000, tables.getTableBytes());
+                AltPathFinder.benchmark(snapshot.getNavMesh(), tables, all, 100);
+                landmarks = tables;
+            } finally {
+                snapshot.release();
+            }
+        });
+    }
+    
+    /**
+     * Saves the changes in the snapshot to the journal in the background.
+     * 
+     * @param snapshot The pinned snapshot to save, released when done.
+     */
+    private void saveNavMesh(NavMeshSnapshots.Snapshot snapshot) {
+        navMeshLoader.submit(() -> {
+            try {
+                journal.save(snapshot);
+            } catch (IOException ex) {
+                LOG.error("{} {}", NavState.class.getName(), ex);
+            } finally {
+                snapshot.release();
+            }
+        });
     }
     
     /**
@@ -1854,24 +1869,23 @@ public class NavState extends BaseAppState {
 
         @Override
         public void process(NavMeshDataCreateParams params) {            
-            // Update poly flags from areas.
+            /**
+             * Runs for every tile rebuild, including obstacle updates, so 
+             * nothing is allocated here. Polys the tile cache left with the 
+             * default walkable area become ground, then flags come straight 
+             * from the shared area lookup table.
+             */
+            int[] areas = params.polyAreas;
+            int[] flags = params.polyFlags;
             for (int i = 0; i < params.polyCount; ++i) {
-                Poly p = new Poly(i, 6);
-                
-                if (params.polyAreas[i] == DT_TILECACHE_WALKABLE_AREA) {
-                    params.polyAreas[i] = POLYAREA_TYPE_GROUND;
-                }
-
-                if (params.polyAreas[i] == POLYAREA_TYPE_GROUND 
-                ||  params.polyAreas[i] == POLYAREA_TYPE_GRASS 
-                ||  params.polyAreas[i] == POLYAREA_TYPE_ROAD) {
-                    params.polyFlags[i] = POLYFLAGS_WALK;
-                } else if (params.polyAreas[i] == POLYAREA_TYPE_WATER) {
-                    params.polyFlags[i] = POLYFLAGS_SWIM;
-                } else if (params.polyAreas[i] == POLYAREA_TYPE_DOOR) {
-                    params.polyFlags[i] = POLYFLAGS_WALK | POLYFLAGS_DOOR;
+                if (areas[i] == DT_TILECACHE_WALKABLE_AREA) {
+                    areas[i] = POLYAREA_TYPE_GROUND;
                 }
+                flags[i] = getAreaFlags(areas[i]);
             }
+            
+            //Off-mesh connections that start in this tile.
+            offMeshConnections.apply(params);
         }
 
     }
@@ -1906,6 +1920,29 @@ public class NavState extends BaseAppState {
         return new TileCache(params, new TileCacheStorageParams(ByteOrder.BIG_ENDIAN, false), navMesh, TileCacheCompressorFactory.get(false), new JmeTileCacheMeshProcess());
     }
     
+    /**
+     * Groups the paired bone links of mapOffMeshCon by the tile their start 
+     * point is in. Both bones of a pair hold the same start/end so only the 
+     * (a) bone is used. Bones without a mate have an id of 0 and are skipped.
+     * 
+     * @param orig The origin of the navMesh.
+     * @param tileWidth The width of a tile in world units.
+     * @param tileHeight The height (z) of a tile in world units.
+     * @return The connections grouped by tile.
+     */
+    private OffMeshConnections createOffMeshConnections(float[] orig, float tileWidth, float tileHeight) {
+        OffMeshConnections connections = new OffMeshConnections(orig, tileWidth, tileHeight);
+        
+        for (Map.Entry<String, org.recast4j.detour.OffMeshConnection> entry: mapOffMeshCon.entrySet()) {
+            if (entry.getValue().userId > 0 && entry.getKey().endsWith(".a")) {
+                connections.add(entry.getValue(), POLYAREA_TYPE_JUMP, POLYFLAGS_JUMP);
+            }
+        }
+        
+        LOG.info("OffMeshConnections [{}]", connections.size());
+        return connections;
+    }
+    
     /**
      * Displays a debug mesh based off the area type of the poly.
      * 
@@ -2126,33 +2163,4 @@ public class NavState extends BaseAppState {
         return (flags & flag) == flag;
     }
     
-    /**
-     * Class to hold the obj id and flags for the MouseEventControl check that 
-     * assures all flags are the same.
-     */
-    private class PolyAndFlag {
-        private long poly;
-        private int flag;
-
-        public PolyAndFlag(long poly, int flag) {
-            this.poly = poly;
-            this.flag = flag;
-        }
-
-        /**
-         * @return the obj
-         */
-        public long getPoly() {
-            return poly;
-        }
-
-        /**
-         * @return the flag
-         */
-        public int getFlag() {
-            return flag;
-        }
-
-    }
-    
 }
@@ -0,0 +1,846 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo.states;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.math.Vector3f;
+import com.jme3.recast4j.Detour.DetourUtils;
+import com.jme3.recast4j.demo.AltPathFinder;
+import com.jme3.recast4j.demo.CompiledQueryFilter;
+import com.jme3.recast4j.demo.DoorRegistry;
+import com.jme3.recast4j.demo.LandmarkTables;
+import com.jme3.recast4j.demo.NavMeshIslands;
+import com.jme3.recast4j.demo.NavMeshQueryPool;
+import com.jme3.recast4j.demo.NavMeshSnapshots;
+import com.jme3.recast4j.demo.NearestTargetQuery;
+import com.jme3.recast4j.demo.PathBuffer;
+import com.jme3.recast4j.demo.PathCache;
+import com.jme3.recast4j.demo.TileGraph;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static com.jme3.recast4j.demo.AreaModifications.MAX_AREAS;
+import org.recast4j.detour.DefaultQueryFilter;
+import org.recast4j.detour.FindNearestPolyResult;
+import org.recast4j.detour.MeshTile;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.Poly;
+import org.recast4j.detour.NavMeshQuery;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.RaycastHit;
+import org.recast4j.detour.Result;
+import org.recast4j.detour.StraightPathItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds paths on a pool of worker threads so path finding never costs the 
+ * render thread more than handing out the results. 
+ * 
+ * Every worker uses its own NavMeshQuery from the NavState pool, since a 
+ * query is not thread safe, and queries the latest NavState snapshot rather 
+ * than the live navMesh. A request pins the snapshot that was current when 
+ * it was made. Results are queued by the workers and the futures are 
+ * completed in update() so any thenAccept() callbacks run on the render 
+ * thread and can touch the scene.
+ * 
+ * Corridors are cached by start poly, end poly and filter so repeated trips 
+ * between the same places skip the A* search until a tile on the corridor 
+ * changes.
+ * 
+ * When the end can be seen from the start, a navMesh raycast gives the 
+ * corridor and no search runs at all.
+ * 
+ * Long queries are planned on the TileGraph first. The poly search is then 
+ * limited to the tiles of the coarse path and their neighbours, which keeps 
+ * it from expanding polys all over the map. If that search can't reach the 
+ * end, for example because a door on the coarse path is closed, the full 
+ * search is run instead.
+ * 
+ * Searches can use A* with the ALT heuristic instead once NavState has 
+ * built its landmark tables, which knows about detours around water and 
+ * walls and expands far fewer polys. It measures between poly centers rather 
+ * than portal points so corridors can differ from detour's, and it's off 
+ * until setUseLandmarks(true) is called.
+ * 
+ * Poly requests made during a frame are held until the next update() and 
+ * grouped by goal and filter, so a grid of agents sent to one target costs 
+ * one search rather than one each. Agents whose start poly is on the shared 
+ * corridor walk the rest of it, agents starting within the coalesce radius 
+ * of it get a short search to join it. See getCoalescingRatio.
+ */
+public class PathServiceState extends BaseAppState {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PathServiceState.class.getName());
+    
+    //Max number of straight path points returned.
+    private static final int MAX_STRAIGHT_PATH = 256;
+    
+    private final int threads;
+    private ExecutorService workers;
+    //Hands each worker its query for the snapshot.
+    private NavMeshQueryPool queryPool;
+    //Finished requests waiting to be completed on the render thread.
+    private final ConcurrentLinkedQueue<Runnable> completed;
+    private final AtomicInteger pending;
+    private final PathCache pathCache;
+    /**
+     * A closed door drops the corridors through it. An opened door can make 
+     * any cached corridor that went around it the long way so the whole cache 
+     * goes.
+     */
+    private final DoorRegistry.DoorListener doorListener;
+    //Default number of corridors cached.
+    private static final int PATH_CACHE_SIZE = 1024;
+    //The coarse graph of the navMesh, null until it has loaded.
+    private volatile TileGraph tileGraph;
+    //Coarse paths with fewer tiles are searched in full.
+    private static final int MIN_HIERARCHICAL_TILES = 3;
+    //The ALT tables of the navMesh, null until built.
+    private volatile LandmarkTables landmarks;
+    private volatile boolean useLandmarks;
+    //Requests that tried the straight line first and how many it was enough for.
+    private final AtomicLong raycastAttempts = new AtomicLong();
+    private final AtomicLong raycastHits = new AtomicLong();
+    //Each worker's multi target search and its node pool.
+    private final ThreadLocal<NearestTargetQuery> nearestQuery = new ThreadLocal<>();
+    //Each worker's ALT search state for the current tables.
+    private final ThreadLocal<AltPathFinder> altFinder = new ThreadLocal<>();
+    //Poly requests made since the last update, by goal and filter. Render thread only.
+    private final Map<GoalKey, List<Coalesced>> batches = new LinkedHashMap<>();
+    //Starts further apart than this search on their own.
+    private volatile float coalesceRadius = 2f;
+    //Requests that went through a batch and how many shared a search.
+    private final AtomicLong batchedRequests = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    /**
+     * Uses one worker per core, leaving one for the render thread.
+     */
+    public PathServiceState() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+    
+    /**
+     * @param threads The number of worker threads.
+     */
+    public PathServiceState(int threads) {
+        this.threads = threads;
+        this.completed = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicInteger();
+        this.pathCache = new PathCache(PATH_CACHE_SIZE);
+        this.doorListener = (door, polys, open) -> {
+            if (open) {
+                pathCache.clear();
+            } else {
+                pathCache.invalidate(polys);
+            }
+        };
+    }
+    
+    @Override
+    protected void initialize(Application app) {
+        queryPool = getState(NavState.class).getQueryPool();
+        getState(NavState.class).getDoorRegistry().addDoorListener(doorListener);
+        AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread thread = new Thread(r, "Path Worker " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        getState(NavState.class).getDoorRegistry().removeDoorListener(doorListener);
+        workers.shutdownNow();
+        //Nothing will be delivered after this.
+        completed.clear();
+        batches.clear();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+    
+    @Override
+    public void update(float tpf) {
+        //Search once for everything asked for since the last frame.
+        flushBatches();
+        
+        //Deliver results on the render thread.
+        Runnable task;
+        while ((task = completed.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    /**
+     * Finds a path between two positions. The positions are snapped to the 
+     * nearest poly within extents on the worker.
+     * 
+     * @param start The start position.
+     * @param end The end position.
+     * @param extents The half extents of the nearest poly search.
+     * @param filter The filter to use. Must not be changed while in use.
+     * @return A future completed on the render thread.
+     */
+    public CompletableFuture<PathResult> requestPath(Vector3f start, Vector3f end, Vector3f extents, QueryFilter filter) {
+        float[] s = DetourUtils.toFloatArray(start);
+        float[] e = DetourUtils.toFloatArray(end);
+        float[] ext = DetourUtils.toFloatArray(extents);
+        
+        return submit((NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot) -> {
+            Result<FindNearestPolyResult> startPoly = query.findNearestPoly(s, ext, filter);
+            Result<FindNearestPolyResult> endPoly = query.findNearestPoly(e, ext, filter);
+            
+            if (!startPoly.status.isSuccess() 
+            ||  !endPoly.status.isSuccess() 
+            ||   startPoly.result.getNearestRef() == 0 
+            ||   endPoly.result.getNearestRef() == 0) {
+                return PathResult.FAILED;
+            }
+            
+            return findPath(query, snapshot, startPoly.result.getNearestRef(), endPoly.result.getNearestRef(), 
+                    startPoly.result.getNearestPos(), endPoly.result.getNearestPos(), filter);
+        });
+    }
+    
+    /**
+     * Finds a path between two polys that were already found, for example 
+     * with findNearestPoly on the render thread. Requests between polys that 
+     * aren't connected for the filter fail right away without a search. 
+     * Must be called on the render thread.
+     * 
+     * The request is held until the next update() and searched together with 
+     * the other requests for the same end poly and filter made this frame.
+     * 
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param startPos The position in the start poly.
+     * @param endPos The position in the end poly.
+     * @param filter The filter to use. Must not be changed while in use.
+     * @return A future completed on the render thread.
+     */
+    public CompletableFuture<PathResult> requestPath(long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter) {
+        NavMeshIslands islands = getState(NavState.class).getIslands();
+        if (islands != null && !islands.isReachable(startRef, endRef, filter)) {
+            return CompletableFuture.completedFuture(PathResult.FAILED);
+        }
+        
+        Coalesced request = new Coalesced(startRef, startPos, endPos, filter);
+        batches.computeIfAbsent(new GoalKey(endRef, PathCache.fingerprint(filter)), key -> new ArrayList<>()).add(request);
+        return request.future;
+    }
+    
+    /**
+     * Finds the closest of many target polys, like the nearest exit or cover, 
+     * with one search rather than a path request per target.
+     * 
+     * @param startRef The start poly.
+     * @param startPos The position in the start poly.
+     * @param targets The target polys.
+     * @param k The number of closest targets wanted.
+     * @param maxCost Targets costing more than this are ignored, 
+     * Float.MAX_VALUE for no limit.
+     * @param filter The filter to use. Must not be changed while in use.
+     * @return A future completed on the render thread with the targets 
+     * reached, closest first, each with its cost and corridor.
+     */
+    public CompletableFuture<NearestTargetQuery.Targets> requestNearest(long startRef, float[] startPos, long[] targets, int k, float maxCost, QueryFilter filter) {
+        long[] copy = targets.clone();
+        return submit((NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot) -> {
+            NearestTargetQuery nearest = nearestQuery.get();
+            if (nearest == null) {
+                nearest = new NearestTargetQuery();
+                nearestQuery.set(nearest);
+            }
+            return nearest.find(snapshot.getNavMesh(), startRef, startPos, copy, k, maxCost, filter);
+        }, new NearestTargetQuery.Targets());
+    }
+    
+    /**
+     * @return The number of requests not yet delivered.
+     */
+    public int getPendingCount() {
+        int held = 0;
+        for (List<Coalesced> group: batches.values()) {
+            held += group.size();
+        }
+        return pending.get() + held;
+    }
+    
+    /**
+     * @param useLandmarks True to search with the ALT heuristic once the 
+     * landmark tables are built, false to always use detour's findPath.
+     */
+    public void setUseLandmarks(boolean useLandmarks) {
+        this.useLandmarks = useLandmarks;
+    }
+    
+    /**
+     * @return True if searches use the ALT heuristic once the tables are 
+     * built, false by default.
+     */
+    public boolean isUseLandmarks() {
+        return useLandmarks;
+    }
+    
+    /**
+     * @return The number of requests that tried a raycast before searching.
+     */
+    public long getRaycastAttempts() {
+        return raycastAttempts.get();
+    }
+    
+    /**
+     * @return The number of requests a raycast was enough for.
+     */
+    public long getRaycastHits() {
+        return raycastHits.get();
+    }
+    
+    /**
+     * @param coalesceRadius Requests starting within this distance of a 
+     * shared corridor's start join it instead of searching on their own.
+     */
+    public void setCoalesceRadius(float coalesceRadius) {
+        this.coalesceRadius = coalesceRadius;
+    }
+    
+    /**
+     * @return The number of poly requests answered from another request's 
+     * corridor.
+     */
+    public long getCoalescedCount() {
+        return coalescedRequests.get();
+    }
+    
+    /**
+     * @return The share of poly requests answered from another request's 
+     * corridor, 0 if there were none.
+     */
+    public float getCoalescingRatio() {
+        long total = batchedRequests.get();
+        return total == 0 ? 0 : (float) coalescedRequests.get() / total;
+    }
+    
+    /**
+     * @return The corridor cache, for its hit ratio and other stats.
+     */
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+    
+    private CompletableFuture<PathResult> submit(PathTask<PathResult> task) {
+        return submit(task, PathResult.FAILED);
+    }
+    
+    /**
+     * Runs a task on a worker and completes the future on the render thread.
+     * 
+     * @param task The task.
+     * @param failed The result if there is no navMesh or the task throws.
+     * @return The future.
+     */
+    private <T> CompletableFuture<T> submit(PathTask<T> task, T failed) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        NavState navState = getState(NavState.class);
+        //Pinned so the snapshot's navMesh isn't reused until the task is done.
+        NavMeshSnapshots.Snapshot snapshot = navState.acquireSnapshot();
+        tileGraph = navState.getTileGraph();
+        landmarks = navState.getLandmarks();
+        
+        if (snapshot == null) {
+            future.complete(failed);
+            return future;
+        }
+        
+        pending.incrementAndGet();
+        workers.execute(() -> {
+            T result;
+            try {
+                result = task.run(getQuery(snapshot), snapshot);
+            } catch (RuntimeException ex) {
+                LOG.error("{} {}", PathServiceState.class.getName(), ex);
+                result = failed;
+            } finally {
+                snapshot.release();
+            }
+            T done = result;
+            completed.add(() -> {
+                pending.decrementAndGet();
+                future.complete(done);
+            });
+        });
+        return future;
+    }
+    
+    /**
+     * Submits the requests held this frame, one task per goal and filter.
+     */
+    private void flushBatches() {
+        if (batches.isEmpty()) {
+            return;
+        }
+        
+        for (Map.Entry<GoalKey, List<Coalesced>> entry: batches.entrySet()) {
+            long endRef = entry.getKey().endRef;
+            List<Coalesced> group = entry.getValue();
+            batchedRequests.addAndGet(group.size());
+            
+            if (group.size() == 1) {
+                Coalesced single = group.get(0);
+                submit((NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot) -> findPath(query, snapshot, single.startRef, endRef, single.startPos, single.endPos, single.filter))
+                        .thenAccept(single.future::complete);
+            } else {
+                submit((NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot) -> findPaths(query, snapshot, endRef, group), null)
+                        .thenAccept(results -> {
+                            for (int i = 0; i < group.size(); i++) {
+                                group.get(i).future.complete(results == null ? PathResult.FAILED : results[i]);
+                            }
+                            LOG.debug("Batch of [{}] paths to [{}], coalescing ratio [{}]", group.size(), endRef, getCoalescingRatio());
+                        });
+            }
+        }
+        batches.clear();
+    }
+    
+    /**
+     * Finds the paths of a group of requests with the same goal, searching as 
+     * few times as possible. The first request without a path leads: its 
+     * corridor is searched and every other request that can use it does. 
+     * Requests that can't, because they start too far away, wait for the 
+     * next leader.
+     * 
+     * @return The path of each request.
+     */
+    private PathResult[] findPaths(NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot, long endRef, List<Coalesced> group) {
+        PathResult[] results = new PathResult[group.size()];
+        QueryFilter filter = group.get(0).filter;
+        float radiusSq = coalesceRadius * coalesceRadius;
+        
+        for (int lead = 0; lead < group.size(); lead++) {
+            if (results[lead] != null) {
+                continue;
+            }
+            
+            Coalesced leader = group.get(lead);
+            PathResult shared = findPath(query, snapshot, leader.startRef, endRef, leader.startPos, leader.endPos, filter);
+            results[lead] = shared;
+            List<Long> corridor = shared.getPolys();
+            
+            for (int i = lead + 1; i < group.size(); i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                
+                Coalesced request = group.get(i);
+                if (!shared.succeeded()) {
+                    //Same start, same failure.
+                    if (request.startRef == leader.startRef) {
+                        results[i] = PathResult.FAILED;
+                    }
+                    continue;
+                }
+                
+                //On the corridor already, walk the rest of it.
+                List<Long> polys = null;
+                int index = corridor.indexOf(request.startRef);
+                if (index >= 0) {
+                    polys = new ArrayList<>(corridor.subList(index, corridor.size()));
+                } else if (distanceSq(request.startPos, leader.startPos) <= radiusSq) {
+                    polys = joinCorridor(query, request, leader, corridor, filter);
+                }
+                
+                if (polys != null) {
+                    results[i] = straighten(query, request.startPos, request.endPos, polys, shared.isPartial());
+                    coalescedRequests.incrementAndGet();
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Searches from a request's start to the leader's start and continues 
+     * along the shared corridor from the first poly the two have in common, 
+     * so the joined path never doubles back.
+     * 
+     * @return The joined corridor or null if the leader's start can't be 
+     * reached.
+     */
+    private List<Long> joinCorridor(NavMeshQuery query, Coalesced request, Coalesced leader, List<Long> corridor, QueryFilter filter) {
+        Result<List<Long>> prefix = query.findPath(request.startRef, leader.startRef, request.startPos, leader.startPos, filter);
+        if (!prefix.succeeded() || prefix.result.isEmpty() || prefix.status.isPartial()) {
+            return null;
+        }
+        
+        List<Long> polys = new ArrayList<>(prefix.result.size() + corridor.size());
+        for (long ref: prefix.result) {
+            int index = corridor.indexOf(ref);
+            if (index >= 0) {
+                polys.addAll(corridor.subList(index, corridor.size()));
+                return polys;
+            }
+            polys.add(ref);
+        }
+        //The prefix ends in the leader's start, which is on the corridor.
+        return null;
+    }
+    
+    private static float distanceSq(float[] a, float[] b) {
+        float dx = a[0] - b[0];
+        float dy = a[1] - b[1];
+        float dz = a[2] - b[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+    
+    //The worker's query for the snapshot's mirror, kept while mirrors take turns.
+    private NavMeshQuery getQuery(NavMeshSnapshots.Snapshot snapshot) {
+        return queryPool.get(snapshot.getNavMesh());
+    }
+    
+    private PathResult findPath(NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot, long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter) {
+        long filterKey = PathCache.fingerprint(filter);
+        List<Long> polys = pathCache.get(startRef, endRef, filterKey, snapshot);
+        boolean partial = false;
+        
+        if (polys == null) {
+            polys = findVisiblePath(query, snapshot, startRef, endRef, startPos, endPos, filter);
+        }
+        
+        if (polys == null) {
+            CountingFilter counter = new CountingFilter(filter);
+            Result<List<Long>> fpr = findLandmarkPath(snapshot, startRef, endRef, counter, AltPathFinder.heuristicScale(filter));
+            if (fpr == null) {
+                fpr = findCorridorPath(query, snapshot, startRef, endRef, startPos, endPos, counter);
+            }
+            if (fpr == null) {
+                fpr = query.findPath(startRef, endRef, startPos, endPos, counter);
+            }
+            if (!fpr.succeeded() || fpr.result.isEmpty()) {
+                return PathResult.FAILED;
+            }
+            polys = fpr.result;
+            partial = fpr.status.isPartial();
+            //Partial corridors depend on how far the search got so only cache full ones.
+            if (!partial) {
+                pathCache.put(startRef, endRef, filterKey, polys, counter.expansions, snapshot);
+            }
+        }
+        
+        return straighten(query, startPos, endPos, polys, partial);
+    }
+    
+    private PathResult straighten(NavMeshQuery query, float[] startPos, float[] endPos, List<Long> polys, boolean partial) {
+        Result<List<StraightPathItem>> list = query.findStraightPath(startPos, endPos, polys, MAX_STRAIGHT_PATH, 0);
+        if (!list.succeeded() || list.result.isEmpty()) {
+            return PathResult.FAILED;
+        }
+        
+        return new PathResult(polys, list.result, partial);
+    }
+    
+    /**
+     * Casts a ray along the navMesh from start to end. If nothing the filter 
+     * blocks is in the way and the ray ends in the end poly, the polys it 
+     * crossed are the corridor and no search is needed. The ray is 2D, so 
+     * ending in the end poly is what rules out passing over or under it.
+     * 
+     * The ray only asks the filter what passes, so a straight line across an 
+     * expensive area, like water, would beat the search's cheaper way round. 
+     * The corridor is only used if every poly on it costs the filter's 
+     * cheapest area cost, then nothing can be cheaper than the straight line.
+     * 
+     * @return The corridor or null if the end isn't visible.
+     */
+    private List<Long> findVisiblePath(NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot, long startRef, long endRef, 
+            float[] startPos, float[] endPos, QueryFilter filter) {
+        float[] costs = getAreaCosts(filter);
+        if (costs == null) {
+            return null;
+        }
+        raycastAttempts.incrementAndGet();
+        Result<RaycastHit> hit = query.raycast(startRef, startPos, endPos, filter, 0, 0);
+        if (!hit.succeeded() || hit.result.t != Float.MAX_VALUE || hit.result.path.isEmpty() 
+        ||   hit.result.path.get(hit.result.path.size() - 1) != endRef
+        ||  !isCheapest(snapshot.getNavMesh(), hit.result.path, costs)) {
+            return null;
+        }
+        raycastHits.incrementAndGet();
+        return hit.result.path;
+    }
+    
+    /**
+     * @return The area costs of the filter or null if they can't be read.
+     */
+    private static float[] getAreaCosts(QueryFilter filter) {
+        if (filter instanceof CompiledQueryFilter) {
+            return ((CompiledQueryFilter) filter).getAreaCosts(new float[MAX_AREAS]);
+        }
+        if (filter instanceof DefaultQueryFilter) {
+            return CompiledQueryFilter.readAreaCosts((DefaultQueryFilter) filter, new float[MAX_AREAS]);
+        }
+        return null;
+    }
+    
+    /**
+     * @return True if every poly is of an area with the cheapest cost.
+     */
+    private static boolean isCheapest(NavMesh navMesh, List<Long> polys, float[] costs) {
+        float min = Float.MAX_VALUE;
+        for (float cost: costs) {
+            min = Math.min(min, cost);
+        }
+        for (long ref: polys) {
+            MeshTile tile = navMesh.getTile(navMesh.decodePolyIdTile(ref));
+            if (tile == null || tile.data == null || costs[tile.data.polys[navMesh.decodePolyIdPoly(ref)].getArea()] > min) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Searches with the ALT heuristic. An empty path means the tables saw 
+     * every poly the search could reach and the end isn't one of them, so 
+     * the other searches wouldn't find it either.
+     * 
+     * @param scale The heuristic scale for the filter's costs, the counting 
+     * wrapper hides them so it's read from the filter it wraps.
+     * @return The path, empty if there is none or null if the other searches 
+     * should be used.
+     */
+    private Result<List<Long>> findLandmarkPath(NavMeshSnapshots.Snapshot snapshot, long startRef, long endRef, QueryFilter filter, float scale) {
+        LandmarkTables tables = landmarks;
+        //No scale means filter costs that can't be read, so no bound to trust.
+        if (!useLandmarks || tables == null || !(scale > 0)) {
+            return null;
+        }
+        
+        AltPathFinder finder = altFinder.get();
+        if (finder == null || finder.getTables() != tables) {
+            finder = new AltPathFinder(tables);
+            altFinder.set(finder);
+        }
+        
+        List<Long> polys = finder.findPath(snapshot.getNavMesh(), startRef, endRef, filter, AltPathFinder.HEURISTIC_LANDMARKS, scale);
+        return polys == null ? null : Result.success(polys);
+    }
+    
+    /**
+     * Searches only the tiles along the coarse tile path.
+     * 
+     * @return The path or null if the full search should be used.
+     */
+    private Result<List<Long>> findCorridorPath(NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot, long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter) {
+        TileGraph graph = tileGraph;
+        if (graph == null) {
+            return null;
+        }
+        
+        int startTile = snapshot.getNavMesh().decodePolyIdTile(startRef);
+        int endTile = snapshot.getNavMesh().decodePolyIdTile(endRef);
+        int[] tilePath = graph.findTilePath(startTile, endTile);
+        if (tilePath == null || tilePath.length < MIN_HIERARCHICAL_TILES) {
+            return null;
+        }
+        
+        BitSet tiles = graph.getCorridorTiles(tilePath);
+        Result<List<Long>> fpr = query.findPath(startRef, endRef, startPos, endPos, new TileGraph.CorridorFilter(filter, tiles));
+        //A partial path means the corridor was blocked, not the end unreachable.
+        if (!fpr.succeeded() || fpr.result.isEmpty() || fpr.status.isPartial()) {
+            return null;
+        }
+        return fpr;
+    }
+    
+    /**
+     * A poly request waiting for its batch to be searched.
+     */
+    private static class Coalesced {
+        private final long startRef;
+        private final float[] startPos;
+        private final float[] endPos;
+        private final QueryFilter filter;
+        private final CompletableFuture<PathResult> future = new CompletableFuture<>();
+
+        private Coalesced(long startRef, float[] startPos, float[] endPos, QueryFilter filter) {
+            this.startRef = startRef;
+            this.startPos = startPos;
+            this.endPos = endPos;
+            this.filter = filter;
+        }
+    }
+    
+    /**
+     * Requests are batched by end poly and filter fingerprint. Requests with 
+     * filters that can't be fingerprinted are never batched together.
+     */
+    private static class GoalKey {
+        private final long endRef;
+        private final long filterKey;
+
+        private GoalKey(long endRef, long filterKey) {
+            this.endRef = endRef;
+            this.filterKey = filterKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof GoalKey)) {
+                return false;
+            }
+            if (filterKey == PathCache.UNCACHEABLE) {
+                return this == obj;
+            }
+            GoalKey other = (GoalKey) obj;
+            return endRef == other.endRef && filterKey == other.filterKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(endRef) * 31 + Long.hashCode(filterKey);
+        }
+    }
+    
+    private interface PathTask<T> {
+        T run(NavMeshQuery query, NavMeshSnapshots.Snapshot snapshot);
+    }
+    
+    /**
+     * Counts the neighbours the search looks at. Every expansion passes each 
+     * neighbour through passFilter so this is the cost a cache hit saves.
+     */
+    private static class CountingFilter implements QueryFilter {
+        private final QueryFilter filter;
+        private int expansions;
+
+        private CountingFilter(QueryFilter filter) {
+            this.filter = filter;
+        }
+        
+        @Override
+        public boolean passFilter(long ref, MeshTile tile, Poly poly) {
+            expansions++;
+            return filter.passFilter(ref, tile, poly);
+        }
+
+        @Override
+        public float getCost(float[] pa, float[] pb, long prevRef, MeshTile prevTile, Poly prevPoly, long curRef,
+                MeshTile curTile, Poly curPoly, long nextRef, MeshTile nextTile, Poly nextPoly) {
+            return filter.getCost(pa, pb, prevRef, prevTile, prevPoly, curRef, curTile, curPoly, nextRef, nextTile, nextPoly);
+        }
+    }
+    
+    /**
+     * The polys and straight path of a finished request.
+     */
+    public static class PathResult {
+        
+        public static final PathResult FAILED = new PathResult(Collections.emptyList(), Collections.emptyList(), false);
+        
+        private final List<Long> polys;
+        private final List<StraightPathItem> straightPath;
+        private final boolean partial;
+
+        public PathResult(List<Long> polys, List<StraightPathItem> straightPath, boolean partial) {
+            this.polys = polys;
+            this.straightPath = straightPath;
+            this.partial = partial;
+        }
+        
+        /**
+         * @return True if a path was found.
+         */
+        public boolean succeeded() {
+            return !straightPath.isEmpty();
+        }
+        
+        /**
+         * @return True if the end could not be reached and the path leads to 
+         * the closest poly instead.
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+
+        /**
+         * @return The poly corridor of the path.
+         */
+        public List<Long> getPolys() {
+            return polys;
+        }
+
+        /**
+         * @return The straight path.
+         */
+        public List<StraightPathItem> getStraightPath() {
+            return straightPath;
+        }
+        
+        /**
+         * @return The straight path positions.
+         */
+        public List<Vector3f> getPoints() {
+            List<Vector3f> points = new ArrayList<>(straightPath.size());
+            for (StraightPathItem item: straightPath) {
+                points.add(DetourUtils.createVector3f(item.getPos()));
+            }
+            return points;
+        }
+        
+        /**
+         * Copies the corridor and straight path into a buffer the caller 
+         * keeps, so walking the path doesn't allocate a Vector3f per point.
+         * 
+         * @param out The buffer to fill.
+         * @return out.
+         */
+        public PathBuffer getPath(PathBuffer out) {
+            out.setPolys(polys);
+            out.setStraightPath(straightPath);
+            return out;
+        }
+    }
+}
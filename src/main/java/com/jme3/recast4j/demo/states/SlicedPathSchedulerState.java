@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 .
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * MODELS/DUNE.J3O:
+ * Converted from http://quadropolis.us/node/2584 [Public Domain according to the Tags of this Map]
+ */
+
+package com.jme3.recast4j.demo.states;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.BaseAppState;
+import com.jme3.recast4j.demo.NavMeshQueryPool;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.recast4j.detour.NavMesh;
+import org.recast4j.detour.NavMeshQuery;
+import org.recast4j.detour.QueryFilter;
+import org.recast4j.detour.Result;
+import org.recast4j.detour.Status;
+import org.recast4j.detour.StraightPathItem;
+
+/**
+ * Runs sliced path finding for every agent under a single per frame time 
+ * budget. Each running request borrows a NavMeshQuery from the NavState 
+ * pool, since the sliced search state lives in the query. Every frame the 
+ * scheduler hands out small slices of iterations to the highest priority 
+ * request that has been served the least, round robin within a priority, 
+ * until the budget in microseconds is spent.
+ * 
+ * Runs on the render thread against the live NavState navMesh. Reports queue 
+ * depth and request latency percentiles.
+ */
+public class SlicedPathSchedulerState extends BaseAppState {
+
+    //Iterations per slice. Small enough to check the clock often.
+    private static final int ITERS_PER_SLICE = 16;
+    //Number of latencies kept for the percentiles.
+    private static final int LATENCY_SAMPLES = 1024;
+    //Max number of straight path points returned.
+    private static final int MAX_STRAIGHT_PATH = 256;
+    
+    private long budgetMicros;
+    private final PriorityQueue<SlicedRequest> queue;
+    private NavMeshQueryPool queryPool;
+    private long sequence;
+    //Ring buffer of request latencies in nanoseconds.
+    private final long[] latencies;
+    private int latencyCount;
+    private int latencyNext;
+
+    /**
+     * @param budgetMicros The time spent on path finding every frame.
+     */
+    public SlicedPathSchedulerState(long budgetMicros) {
+        this.budgetMicros = budgetMicros;
+        this.queue = new PriorityQueue<>(Comparator
+                .comparingInt((SlicedRequest r) -> -r.priority)
+                .thenComparingInt(r -> r.slices)
+                .thenComparingLong(r -> r.sequence));
+        this.latencies = new long[LATENCY_SAMPLES];
+    }
+    
+    /**
+     * Uses a 2 millisecond budget.
+     */
+    public SlicedPathSchedulerState() {
+        this(2000);
+    }
+    
+    @Override
+    protected void initialize(Application app) {
+        queryPool = getState(NavState.class).getQueryPool();
+    }
+
+    @Override
+    protected void cleanup(Application app) {
+        for (SlicedRequest request: queue) {
+            request.cancel();
+        }
+        queue.clear();
+    }
+
+    @Override
+    protected void onEnable() {
+    }
+
+    @Override
+    protected void onDisable() {
+    }
+    
+    @Override
+    public void update(float tpf) {
+        NavMesh navMesh = getState(NavState.class).getNavMesh();
+        if (navMesh == null) {
+            return;
+        }
+        
+        //Idle, so only keep as many free queries as are still out.
+        if (queue.isEmpty()) {
+            if (queryPool.getFreeCount() > 0) {
+                queryPool.trim();
+            }
+            return;
+        }
+        
+        long deadline = System.nanoTime() + budgetMicros * 1000;
+        
+        while (!queue.isEmpty() && System.nanoTime() < deadline) {
+            SlicedRequest request = queue.poll();
+            
+            if (request.state == SlicedRequest.CANCELLED) {
+                release(request);
+                continue;
+            }
+            
+            if (request.query == null) {
+                request.navMesh = navMesh;
+                request.query = queryPool.borrow(navMesh);
+                Status status = request.query.initSlicedFindPath(request.startRef, request.endRef, 
+                        request.startPos, request.endPos, request.filter, 0);
+                if (status.isFailed()) {
+                    finish(request, Collections.emptyList(), false);
+                    continue;
+                }
+            }
+            
+            int iters = ITERS_PER_SLICE;
+            if (request.maxIterations > 0) {
+                iters = Math.min(iters, request.maxIterations - request.iterations);
+            }
+            
+            Result<Integer> res = request.query.updateSlicedFindPath(iters);
+            request.iterations += res.result;
+            request.slices++;
+            
+            boolean capped = request.maxIterations > 0 && request.iterations >= request.maxIterations;
+            if (res.status.isInProgress() && !capped) {
+                queue.add(request);
+            } else {
+                /**
+                 * Finalizing an unfinished search returns the corridor to the 
+                 * node closest to the end so far, as a partial result.
+                 */
+                Result<List<Long>> fpr = request.query.finalizeSlicedFindPath();
+                boolean partial = !fpr.succeeded() || fpr.status.isPartial() || res.status.isInProgress();
+                finish(request, fpr.succeeded() ? fpr.result : Collections.emptyList(), partial);
+            }
+        }
+    }
+    
+    /**
+     * Queues a sliced path request.
+     * 
+     * @param startRef The start poly.
+     * @param endRef The end poly.
+     * @param startPos The position in the start poly.
+     * @param endPos The position in the end poly.
+     * @param filter The filter to use.
+     * @param priority Higher priorities are served first.
+     * @param maxIterations Stop after this many iterations and return the 
+     * best partial corridor, 0 for no limit.
+     * @param listener Notified on the render thread when done, can be null.
+     * @return The request, which can be polled or cancelled.
+     */
+    public SlicedRequest request(long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter, 
+            int priority, int maxIterations, SlicedPathListener listener) {
+        SlicedRequest request = new SlicedRequest(startRef, endRef, startPos, endPos, filter, priority, maxIterations, listener);
+        request.sequence = sequence++;
+        request.requestTime = System.nanoTime();
+        queue.add(request);
+        return request;
+    }
+    
+    /**
+     * Finds the straight path along a corridor on the live navMesh, for 
+     * corridors that were changed after their search finished.
+     * 
+     * @param startPos The position in the first poly.
+     * @param endPos The position in the last poly, clamped to it if outside.
+     * @param polys The corridor.
+     * @return The straight path, empty if it couldn't be found.
+     */
+    public List<StraightPathItem> findStraightPath(float[] startPos, float[] endPos, List<Long> polys) {
+        NavMesh navMesh = getState(NavState.class).getNavMesh();
+        if (navMesh == null || polys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        NavMeshQuery query = queryPool.borrow(navMesh);
+        try {
+            Result<List<StraightPathItem>> list = query.findStraightPath(startPos, endPos, polys, MAX_STRAIGHT_PATH, 0);
+            return list.succeeded() ? list.result : Collections.emptyList();
+        } finally {
+            queryPool.release(navMesh, query);
+        }
+    }
+    
+    private void finish(SlicedRequest request, List<Long> polys, boolean partial) {
+        request.polys = polys;
+        request.partial = partial;
+        
+        if (!polys.isEmpty()) {
+            /**
+             * The straight path clamps the end position to the last poly so 
+             * this works for partial corridors too.
+             */
+            Result<List<StraightPathItem>> list = request.query.findStraightPath(request.startPos, request.endPos, polys, MAX_STRAIGHT_PATH, 0);
+            if (list.succeeded()) {
+                request.straightPath = list.result;
+            }
+        }
+        
+        release(request);
+        request.state = SlicedRequest.DONE;
+        
+        latencies[latencyNext] = System.nanoTime() - request.requestTime;
+        latencyNext = (latencyNext + 1) % latencies.length;
+        latencyCount = Math.min(latencyCount + 1, latencies.length);
+        
+        if (request.listener != null) {
+            request.listener.onPathDone(request);
+        }
+    }
+    
+    private void release(SlicedRequest request) {
+        if (request.query != null) {
+            queryPool.release(request.navMesh, request.query);
+            request.query = null;
+            request.navMesh = null;
+        }
+    }
+    
+    /**
+     * @return The number of requests waiting or running.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    /**
+     * @param percentile The percentile, 0 to 100, e.g. 50, 95 or 99.
+     * @return The request latency in milliseconds at the percentile, over the 
+     * most recent requests.
+     */
+    public float getLatencyPercentile(float percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = Math.min(latencyCount - 1, (int) Math.ceil(percentile / 100f * latencyCount) - 1);
+        return sorted[Math.max(0, index)] / 1000000f;
+    }
+    
+    /**
+     * @param budgetMicros The time spent on path finding every frame.
+     */
+    public void setBudgetMicros(long budgetMicros) {
+        this.budgetMicros = budgetMicros;
+    }
+    
+    /**
+     * @return The time spent on path finding every frame.
+     */
+    public long getBudgetMicros() {
+        return budgetMicros;
+    }
+    
+    /**
+     * Notified on the render thread when a request is done.
+     */
+    public interface SlicedPathListener {
+        void onPathDone(SlicedRequest request);
+    }
+    
+    /**
+     * A queued sliced path search.
+     */
+    public static class SlicedRequest {
+        private static final int QUEUED = 0;
+        private static final int DONE = 1;
+        private static final int CANCELLED = 2;
+        
+        private final long startRef;
+        private final long endRef;
+        private final float[] startPos;
+        private final float[] endPos;
+        private final QueryFilter filter;
+        private final int priority;
+        private final int maxIterations;
+        private final SlicedPathListener listener;
+        private NavMeshQuery query;
+        //The navMesh the query was borrowed for.
+        private NavMesh navMesh;
+        private long sequence;
+        private long requestTime;
+        private int iterations;
+        private int slices;
+        private int state = QUEUED;
+        private List<Long> polys = Collections.emptyList();
+        private List<StraightPathItem> straightPath = Collections.emptyList();
+        private boolean partial;
+
+        private SlicedRequest(long startRef, long endRef, float[] startPos, float[] endPos, QueryFilter filter, 
+                int priority, int maxIterations, SlicedPathListener listener) {
+            this.startRef = startRef;
+            this.endRef = endRef;
+            this.startPos = startPos;
+            this.endPos = endPos;
+            this.filter = filter;
+            this.priority = priority;
+            this.maxIterations = maxIterations;
+            this.listener = listener;
+        }
+        
+        /**
+         * Stops the search. The listener is not notified.
+         */
+        public void cancel() {
+            if (state == QUEUED) {
+                state = CANCELLED;
+            }
+        }
+        
+        public boolean isDone() {
+            return state == DONE;
+        }
+        
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+        
+        /**
+         * @return True if the corridor does not reach the end poly.
+         */
+        public boolean isPartial() {
+            return partial;
+        }
+        
+        /**
+         * @return The corridor, empty if none was found.
+         */
+        public List<Long> getPolys() {
+            return polys;
+        }
+
+        /**
+         * @return The straight path, empty if none was found.
+         */
+        public List<StraightPathItem> getStraightPath() {
+            return straightPath;
+        }
+        
+        public float[] getEndPos() {
+            return endPos;
+        }
+        
+        public long getEndRef() {
+            return endRef;
+        }
+        
+        public QueryFilter getFilter() {
+            return filter;
+        }
+        
+        /**
+         * @return The iterations spent on the search.
+         */
+        public int getIterations() {
+            return iterations;
+        }
+    }
+}
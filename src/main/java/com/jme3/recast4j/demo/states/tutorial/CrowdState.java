@@ -41,6 +41,7 @@ import com.jme3.recast4j.Detour.Crowd.MovementApplicationType;
 import com.jme3.recast4j.Recast.*;
 import com.jme3.recast4j.Recast.Utils.RecastUtils;
 import static com.jme3.recast4j.demo.AreaModifications.*;
+import com.jme3.recast4j.demo.NavMeshJournal;
 import com.jme3.recast4j.demo.controls.CrowdDebugControl;
 import com.jme3.recast4j.demo.states.CrowdBuilderState;
 import com.jme3.scene.Geometry;
@@ -53,7 +54,6 @@ import org.recast4j.detour.crowd.CrowdAgentParams;
 import org.recast4j.detour.crowd.ObstacleAvoidanceQuery.ObstacleAvoidanceParams;
 import org.recast4j.detour.io.MeshDataReader;
 import org.recast4j.detour.io.MeshDataWriter;
-import org.recast4j.detour.io.MeshSetReader;
 import org.recast4j.detour.io.MeshSetWriter;
 import org.recast4j.recast.*;
 import org.recast4j.recast.RecastBuilder.RecastBuilderResult;
@@ -133,15 +133,7 @@ public class CrowdState extends BaseAppState {
         //Update poly flags from areas. Set any flags here.
         PolyMesh pmesh = paramBuilder.getPolyMesh();
         for (int i = 0; i < pmesh.npolys; ++i) {
-            if (pmesh.areas[i] == POLYAREA_TYPE_GROUND
-              || pmesh.areas[i] == POLYAREA_TYPE_GRASS
-              || pmesh.areas[i] == POLYAREA_TYPE_ROAD) {
-                paramBuilder.withPolyFlag(i, POLYFLAGS_WALK);
-            } else if (pmesh.areas[i] == POLYAREA_TYPE_WATER) {
-                paramBuilder.withPolyFlag(i, POLYFLAGS_SWIM);
-            } else if (pmesh.areas[i] == POLYAREA_TYPE_DOOR) {
-                paramBuilder.withPolyFlags(i, POLYFLAGS_WALK | POLYFLAGS_DOOR);
-            }
+            paramBuilder.withPolyFlags(i, getAreaFlags(pmesh.areas[i]));
         }
         //Build the parameter object. 
         NavMeshDataCreateParams params = paramBuilder.build(bcfg);
@@ -224,15 +216,7 @@ public class CrowdState extends BaseAppState {
 
                 //Update poly flags from areas.
                 for (int i = 0; i < pmesh.npolys; ++i) {
-                    if (pmesh.areas[i] == POLYAREA_TYPE_GROUND
-                            || pmesh.areas[i] == POLYAREA_TYPE_GRASS
-                            || pmesh.areas[i] == POLYAREA_TYPE_ROAD) {
-                        pmesh.flags[i] = POLYFLAGS_WALK;
-                    } else if (pmesh.areas[i] == POLYAREA_TYPE_WATER) {
-                        pmesh.flags[i] = POLYFLAGS_SWIM;
-                    } else if (pmesh.areas[i] == POLYAREA_TYPE_DOOR) {
-                        pmesh.flags[i] = POLYFLAGS_WALK | POLYFLAGS_DOOR;
-                    }
+                    pmesh.flags[i] = getAreaFlags(pmesh.areas[i]);
                     if (pmesh.areas[i] > 0) {
                         pmesh.areas[i]--;
                     }
@@ -272,9 +256,8 @@ public class CrowdState extends BaseAppState {
             //Native format using tiles.
             MeshSetWriter msw = new MeshSetWriter();
             msw.write(new FileOutputStream(new File("myNavMesh.nm")), navMesh, ByteOrder.BIG_ENDIAN, false);
-            //Or read in saved NavMesh.
-            MeshSetReader msr = new MeshSetReader();
-            NavMesh navMeshFromSaved = msr.read(new FileInputStream("myNavMesh.nm"), 3);
+            //Or read in saved NavMesh with any journaled edits.
+            NavMesh navMeshFromSaved = NavMeshJournal.load(new File("myNavMesh.nm"), new File("myNavMesh.nm.journal"), 3);
 
             int maxTiles = navMeshFromSaved.getMaxTiles();
             for (int i = 0; i < maxTiles; i++) {
@@ -297,9 +280,8 @@ public class CrowdState extends BaseAppState {
             MeshData savedMeshData = mdr.read(new FileInputStream("myMeshData.md"), 3);
             NavMesh navMeshFromData = new NavMesh(savedMeshData, 3, 0);
             showDebugMeshes(savedMeshData, true);
-            //Or read in saved NavMesh.
-            MeshSetReader msr = new MeshSetReader();
-            NavMesh navMeshFromSaved = msr.read(new FileInputStream("myNavMesh.nm"), 3);
+            //Or read in saved NavMesh with any journaled edits.
+            NavMesh navMeshFromSaved = NavMeshJournal.load(new File("myNavMesh.nm"), new File("myNavMesh.nm.journal"), 3);
             
             //Create the query object for pathfinding in this Crowd. 
             query = new NavMeshQuery(navMeshFromSaved);
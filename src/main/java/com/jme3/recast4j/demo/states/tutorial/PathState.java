@@ -32,8 +32,8 @@ import com.jme3.app.state.BaseAppState;
 import com.jme3.math.Vector3f;
 import com.jme3.recast4j.Detour.DetourUtils;
 import static com.jme3.recast4j.demo.AreaModifications.*;
+import com.jme3.recast4j.demo.PathBuffer;
 import com.jme3.scene.Spatial;
-import java.util.ArrayList;
 import java.util.List;
 import org.recast4j.detour.DefaultQueryFilter;
 import org.recast4j.detour.FindNearestPolyResult;
@@ -49,6 +49,9 @@ import org.recast4j.detour.StraightPathItem;
 public class PathState extends BaseAppState {
 
     private final NavMeshQuery query;
+    //Buffer for the waypoints, reused for every path. Once it has grown to 
+    //the longest path it allocates nothing.
+    private final PathBuffer wayPoints = new PathBuffer(256);
     private Spatial spatial;
     
     public PathState(NavMeshQuery query) {
@@ -121,14 +124,9 @@ public class PathState extends BaseAppState {
         //Calculate corners within the path corridor.
         Result<List<StraightPathItem>> pathStr = query.findStraightPath(startPos, endPos, path.result, maxStraightPath, options);
         
-        //Provide list for waypoints.
-        List<Vector3f> wayPoints = new ArrayList<>(pathStr.result.size());
-        
-        //Add waypoints to the list
-        for (StraightPathItem p: pathStr.result) {
-            Vector3f vector = DetourUtils.createVector3f(p.getPos());
-            wayPoints.add(vector);
-        }
+        //Copy the waypoints into the buffer. Read them back with 
+        //wayPoints.getPoint(i, store) into a vector you own.
+        wayPoints.setStraightPath(pathStr.result);
     }
 
     //Empty method to allow compiling.